@@ -0,0 +1,92 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * ベンチマーク用の架空のゲーム情報を作る.同じシードからは常に同じ内容が作られる.
+ */
+final class CatalogGenerator {
+    private final Random random;
+
+    CatalogGenerator(long seed){
+        random = new Random(seed);
+    }
+
+    /**
+     * 全てのフィールドが正しく設定されたドキュメントを作る.
+     * @param index 作品番号などに使う通し番号
+     */
+    JSONObject validDocument(int index){
+        final String root = "games/" + index + '/';
+        return new JSONObject()
+                .put("UUID", new UUID(random.nextLong(), random.nextLong()).toString())
+                .put("exe", root + "game.exe")
+                .put("name", "ゲーム" + index)
+                .put("desc", String.join("", Collections.nCopies(1 + random.nextInt(8),
+                        "これはベンチマーク用のゲーム" + index + "の説明です. ")))
+                .put("panel", root + "panel.png")
+                .put("imageList", new JSONArray()
+                        .put(root + "image/0.png")
+                        .put(root + "image/1.png")
+                        .put(root + "image/2.png"))
+                .put("movieList", new JSONArray()
+                        .put(root + "movie/0.mp4"))
+                .put("gameID", index + 1)
+                .put("lastMod", Instant.ofEpochSecond(1_500_000_000L + random.nextInt(100_000_000)).toString());
+    }
+
+    /**
+     * 多くのフィールドが欠けているか,不正な値を持つドキュメントを作る.
+     * @param index 作品番号などに使う通し番号
+     */
+    JSONObject invalidDocument(int index){
+        return new JSONObject()
+                .put("UUID", "not-a-uuid-" + index)
+                .put("exe", "")
+                .put("name", index)
+                .put("lastMod", "yesterday")
+                .put("panel", new JSONArray())
+                .put("gameID", -index);
+    }
+
+    /**
+     * 正しいドキュメントを並べたJSONファイルを書き出す.
+     * @param filePath 書き出し先
+     * @param count ドキュメントの件数
+     */
+    void writeCatalog(Path filePath, int count) throws IOException {
+        try(final BufferedWriter writer = Files.newBufferedWriter(filePath)){
+            writer.write('[');
+            for (int i = 0; i < count; i++){
+                if(i > 0)writer.write(",\n");
+                validDocument(i).write(writer);
+            }
+            writer.write(']');
+        }
+    }
+}
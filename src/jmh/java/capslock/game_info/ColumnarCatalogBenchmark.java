@@ -0,0 +1,97 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link GameCatalog}と{@link ColumnarCatalog}で,作成とカタログ全体の走査にかかる時間を比べる.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xlog:gc")
+public class ColumnarCatalogBenchmark {
+    private static final Instant SINCE = Instant.ofEpochSecond(1_550_000_000L);
+
+    @Param({"10000", "300000"})
+    public int documentCount;
+
+    private List<GameDocument> documents;
+    private GameCatalog catalog;
+    private ColumnarCatalog columnar;
+
+    @Setup
+    public void createCatalogs(){
+        final CatalogGenerator generator = new CatalogGenerator(documentCount);
+        documents = new ArrayList<>(documentCount);
+        for (int i = 0; i < documentCount; i++){
+            documents.add(new GameDocument(generator.validDocument(i)));
+        }
+        catalog = new GameCatalog(documents);
+        columnar = new ColumnarCatalog(documents);
+    }
+
+    @Benchmark
+    public ColumnarCatalog buildColumnar(){
+        return new ColumnarCatalog(documents);
+    }
+
+    @Benchmark
+    public List<Game> updatedSince(){
+        return catalog.getUpdatedSince(SINCE);
+    }
+
+    @Benchmark
+    public List<Game> updatedSinceColumnar(){
+        return columnar.getUpdatedSince(SINCE);
+    }
+
+    @Benchmark
+    public long sumGameIDs(){
+        long sum = 0;
+        for (final Game game : catalog.getGameList()){
+            sum += game.getGameID();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long sumGameIDsColumnar(){
+        long sum = 0;
+        for (final Game game : columnar.asList()){
+            sum += game.getGameID();
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,61 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link GameDocument#GameDocument(JSONObject)}の1件あたりの時間を,正しいドキュメントと不正なドキュメントで測る.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GameDocumentBenchmark {
+    private JSONObject validDocument;
+    private JSONObject invalidDocument;
+
+    @Setup
+    public void createDocuments(){
+        final CatalogGenerator generator = new CatalogGenerator(0);
+        validDocument = generator.validDocument(1);
+        invalidDocument = generator.invalidDocument(1);
+    }
+
+    @Benchmark
+    public GameDocument validFields(){
+        return new GameDocument(validDocument);
+    }
+
+    @Benchmark
+    public GameDocument invalidFields(){
+        return new GameDocument(invalidDocument);
+    }
+}
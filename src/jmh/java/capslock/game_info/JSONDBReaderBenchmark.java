@@ -0,0 +1,98 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * {@link JSONDBReader}の各読み出し方法で,カタログ全体を読み出す時間を測る.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JSONDBReaderBenchmark {
+    @Param({"100", "10000", "100000"})
+    public int documentCount;
+
+    private Path catalog;
+
+    @Setup(Level.Trial)
+    public void writeCatalog() throws IOException {
+        catalog = Files.createTempFile("catalog", ".json");
+        new CatalogGenerator(documentCount).writeCatalog(catalog, documentCount);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteCatalog() throws IOException {
+        Files.deleteIfExists(catalog);
+    }
+
+    @Benchmark
+    public List<GameDocument> constructor() throws IOException {
+        return new JSONDBReader(catalog).getDocumentList();
+    }
+
+    @Benchmark
+    public long stream() throws IOException {
+        try(final Stream<GameDocument> stream = JSONDBReader.stream(catalog)){
+            return stream.count();
+        }
+    }
+
+    @Benchmark
+    public List<GameDocument> mapped() throws IOException {
+        return JSONDBReader.mapped(catalog).getDocumentList();
+    }
+
+    @Benchmark
+    public List<GameDocument> parallel() throws IOException {
+        return JSONDBReader.parallel(catalog).getDocumentList();
+    }
+
+    /**
+     * 一覧画面と同じく,名前とパネル画像のみを参照する.
+     */
+    @Benchmark
+    public void lazyGrid(Blackhole blackhole) throws IOException {
+        for (final Game game : JSONDBReader.lazy(catalog)){
+            blackhole.consume(game.getName());
+            blackhole.consume(game.getPanel());
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link JSONDBWriter}と{@link JSONDBStreamWriter}でカタログ全体を書き出す時間を測る.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JSONDBWriterBenchmark {
+    @Param({"100", "10000"})
+    public int documentCount;
+
+    private List<GameDocument> documents;
+    private Path output;
+
+    @Setup(Level.Trial)
+    public void readCatalog() throws IOException {
+        final Path catalog = Files.createTempFile("catalog", ".json");
+        try {
+            new CatalogGenerator(documentCount).writeCatalog(catalog, documentCount);
+            documents = new JSONDBReader(catalog).getDocumentList();
+        }finally {
+            Files.delete(catalog);
+        }
+        output = Files.createTempFile("output", ".json");
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteOutput() throws IOException {
+        Files.deleteIfExists(output);
+    }
+
+    @Benchmark
+    public void addAndFlush() throws IOException {
+        final JSONDBWriter writer = new JSONDBWriter();
+        for (final GameDocument document : documents){
+            writer.add(document);
+        }
+        writer.flush(output);
+    }
+
+    @Benchmark
+    public void addAndFlushAtomically() throws IOException {
+        final JSONDBWriter writer = new JSONDBWriter();
+        for (final GameDocument document : documents){
+            writer.add(document);
+        }
+        writer.flushAtomically(output);
+    }
+
+    @Benchmark
+    public void stream() throws IOException {
+        try(final JSONDBStreamWriter writer = JSONDBStreamWriter.open(output, Compression.NONE)){
+            for (final GameDocument document : documents){
+                writer.add(document);
+            }
+        }
+    }
+
+    @Benchmark
+    public void streamGzip() throws IOException {
+        try(final JSONDBStreamWriter writer = JSONDBStreamWriter.open(output, Compression.GZIP)){
+            for (final GameDocument document : documents){
+                writer.add(document);
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Game#query(EnumSet)}と{@link Game#query(String)}の1件あたりの時間を測る.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class QueryBenchmark {
+    private static final String JSON_QUERY = "{\"name\" : true, \"desc\" : true, \"gameID\" : true}";
+
+    private GameDocument document;
+    private final EnumSet<Field> allFields = EnumSet.allOf(Field.class);
+    private final StringBuilder output = new StringBuilder();
+
+    @Setup
+    public void createDocument(){
+        document = new GameDocument(new CatalogGenerator(0).validDocument(1));
+    }
+
+    @Benchmark
+    public String enumSet(){
+        return document.query(allFields);
+    }
+
+    @Benchmark
+    public StringBuilder enumSetToAppendable() throws IOException {
+        output.setLength(0);
+        document.query(allFields, output);
+        return output;
+    }
+
+    @Benchmark
+    public String jsonQuery(){
+        return document.query(JSON_QUERY);
+    }
+}
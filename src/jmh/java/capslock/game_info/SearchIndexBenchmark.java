@@ -0,0 +1,87 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 検索欄への1回の入力に相当する{@link SearchIndex}の検索時間を,線形探索と比べる.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SearchIndexBenchmark {
+    private static final int LIMIT = 50;
+
+    @Param({"1000", "50000"})
+    public int documentCount;
+
+    @Param({"ゲ", "ゲーム12", "ベンチマーク"})
+    public String query;
+
+    private List<GameDocument> documents;
+    private SearchIndex index;
+
+    @Setup
+    public void buildIndex(){
+        final CatalogGenerator generator = new CatalogGenerator(documentCount);
+        documents = new ArrayList<>(documentCount);
+        for (int i = 0; i < documentCount; i++){
+            documents.add(new GameDocument(generator.validDocument(i)));
+        }
+        index = new SearchIndex(documents);
+    }
+
+    @Benchmark
+    public List<Game> indexed(){
+        return index.search(query, LIMIT);
+    }
+
+    @Benchmark
+    public List<Game> complete(){
+        return index.complete(query, LIMIT);
+    }
+
+    /**
+     * 従来の検索欄と同じく,全てのゲームの名前と説明を{@link String#contains(CharSequence)}で調べる.
+     */
+    @Benchmark
+    public List<Game> linear(){
+        final List<Game> result = new ArrayList<>();
+        for (final GameDocument document : documents){
+            if(result.size() == LIMIT)break;
+            if(document.getName().contains(query) || document.getDesc().contains(query))result.add(document);
+        }
+        return result;
+    }
+}
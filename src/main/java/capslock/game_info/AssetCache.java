@@ -0,0 +1,208 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 画像などのファイルの中身を,合計の大きさに上限を設けて保持するLRUキャッシュ.
+ * <p>
+ *     上限を超えたときは,最も長く参照されていないファイルから捨てる.上限より大きいファイルは読み出すが保持しない.
+ *     ヒープ外のダイレクトバッファに保持することもできる.捨てたダイレクトバッファの領域はGCで解放される.
+ *     このクラスはスレッドセーフである.
+ * </p>
+ */
+public final class AssetCache {
+    private final long capacityBytes;
+    private final boolean isDirect;
+
+    // アクセス順に並べ,先頭が最も長く参照されていない
+    private final LinkedHashMap<Path, ByteBuffer> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long sizeBytes = 0;
+    private long hitCount = 0;
+    private long missCount = 0;
+
+    /**
+     * ヒープ上に保持するキャッシュを作る.
+     * @param capacityBytes 保持するファイルの合計の大きさの上限
+     * @throws IllegalArgumentException 上限が負である
+     */
+    public AssetCache(long capacityBytes) throws IllegalArgumentException {
+        this(capacityBytes, false);
+    }
+
+    /**
+     * @param capacityBytes 保持するファイルの合計の大きさの上限
+     * @param isDirect {@code true}のとき,ヒープ外のダイレクトバッファに保持する.
+     * @throws IllegalArgumentException 上限が負である
+     */
+    public AssetCache(long capacityBytes, boolean isDirect) throws IllegalArgumentException {
+        if(capacityBytes < 0)throw new IllegalArgumentException("Capacity must not be negative.");
+        this.capacityBytes = capacityBytes;
+        this.isDirect = isDirect;
+    }
+
+    /**
+     * 保持しているファイルの中身を返す.ファイルは読み出さない.
+     * @param file ファイルのパス
+     * @return 読み出し専用のバッファ. 保持していないとき {@code null}.
+     */
+    public ByteBuffer get(Path file){
+        final Path key = keyOf(file);
+        synchronized (entries){
+            final ByteBuffer buffer = entries.get(key);
+            if(buffer == null){
+                missCount++;
+                return null;
+            }
+            hitCount++;
+            return buffer.duplicate();
+        }
+    }
+
+    /**
+     * ファイルの中身を返す.保持していないときはファイルを読み出して保持する.
+     * @param file ファイルのパス
+     * @return 読み出し専用のバッファ
+     * @throws IOException ファイルを読み出せなかった
+     */
+    public ByteBuffer load(Path file) throws IOException {
+        final ByteBuffer cached = get(file);
+        if(cached != null)return cached;
+
+        final ByteBuffer buffer = read(file);
+        put(keyOf(file), buffer);
+        return buffer.duplicate();
+    }
+
+    /**
+     * @return ファイルを保持しているとき {@code true}. 参照順は変わらない.
+     */
+    public boolean contains(Path file){
+        final Path key = keyOf(file);
+        synchronized (entries){
+            return entries.containsKey(key);
+        }
+    }
+
+    /**
+     * ファイルの中身を捨てる.ファイルが書き換えられたときに呼び出す.
+     */
+    public void invalidate(Path file){
+        final Path key = keyOf(file);
+        synchronized (entries){
+            final ByteBuffer removed = entries.remove(key);
+            if(removed != null)sizeBytes -= removed.capacity();
+        }
+    }
+
+    /**
+     * 保持している全てのファイルの中身を捨てる.
+     */
+    public void clear(){
+        synchronized (entries){
+            entries.clear();
+            sizeBytes = 0;
+        }
+    }
+
+    /**
+     * @return 保持しているファイルの数
+     */
+    public int size(){
+        synchronized (entries){
+            return entries.size();
+        }
+    }
+
+    /**
+     * @return 保持しているファイルの合計の大きさ
+     */
+    public long getSizeBytes(){
+        synchronized (entries){
+            return sizeBytes;
+        }
+    }
+
+    /**
+     * @return 保持するファイルの合計の大きさの上限
+     */
+    public long getCapacityBytes(){
+        return capacityBytes;
+    }
+
+    /**
+     * @return {@link #get(Path)}と{@link #load(Path)}で保持していたファイルを返した回数
+     */
+    public long getHitCount(){
+        synchronized (entries){
+            return hitCount;
+        }
+    }
+
+    /**
+     * @return {@link #get(Path)}と{@link #load(Path)}で保持していなかった回数
+     */
+    public long getMissCount(){
+        synchronized (entries){
+            return missCount;
+        }
+    }
+
+    private void put(Path key, ByteBuffer buffer){
+        final long length = buffer.capacity();
+        if(length > capacityBytes)return;
+
+        synchronized (entries){
+            final ByteBuffer replaced = entries.put(key, buffer);
+            if(replaced != null)sizeBytes -= replaced.capacity();
+            sizeBytes += length;
+
+            final Iterator<Map.Entry<Path, ByteBuffer>> iterator = entries.entrySet().iterator();
+            while (sizeBytes > capacityBytes && iterator.hasNext()){
+                final Map.Entry<Path, ByteBuffer> eldest = iterator.next();
+                if(eldest.getKey().equals(key))continue;
+                sizeBytes -= eldest.getValue().capacity();
+                iterator.remove();
+            }
+        }
+    }
+
+    private ByteBuffer read(Path file) throws IOException {
+        try(final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+            final long size = channel.size();
+            if(size > Integer.MAX_VALUE)throw new IOException("Too large asset file : " + file);
+
+            final ByteBuffer buffer = isDirect ? ByteBuffer.allocateDirect((int) size) : ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining()){
+                if(channel.read(buffer) < 0)break;
+            }
+            buffer.flip();
+            return buffer.asReadOnlyBuffer();
+        }
+    }
+
+    private static Path keyOf(Path file){
+        return file.toAbsolutePath().normalize();
+    }
+}
@@ -0,0 +1,286 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 選択中のゲームの前後にあるゲームの画像を,選択が移る前に{@link AssetCache}へ読み出しておく.
+ * <p>
+ *     {@link #select(List, int)}を呼び出すと,選択中のゲームに近い順にパネル画像を読み出し,
+ *     続いて選択中のゲームの画像を読み出し,動画の先頭を読んでOSのページキャッシュに載せる.
+ *     読み出しはバックグラウンドのスレッドで行われ,選択が変わると古い選択の読み出しは打ち切られる.
+ * </p>
+ * <p>
+ *     読み出せなかったファイルは{@link MissingAsset}として記録され,{@link #getMissingAssets()}で取得できる.
+ *     {@link #verify(Collection)}で全てのファイルの有無をまとめて確かめることもできる.
+ *     使用後は{@link #close()}を呼び出すこと.
+ * </p>
+ */
+public final class AssetPrefetcher implements Closeable {
+    /**
+     * 選択中のゲームの前後それぞれで,パネル画像を読み出すゲームの数の既定値.
+     */
+    public static final int DEFAULT_RADIUS = 4;
+
+    /**
+     * 動画ファイルの先頭からページキャッシュに載せる大きさの既定値.
+     */
+    public static final long DEFAULT_MOVIE_WARM_BYTES = 8 << 20;
+
+    /**
+     * 専用のスレッドの数.{@link #verify(Collection)}の実行中も選択中のゲームの読み出しを進められるよう2本とする.
+     * スレッドごとに{@link #WARM_CHUNK_BYTES}のダイレクトバッファを持つため,選択の回数に応じて増やさない.
+     */
+    private static final int OWNED_THREADS = 2;
+
+    private static final int WARM_CHUNK_BYTES = 1 << 20;
+    private static final ThreadLocal<ByteBuffer> WARM_BUFFER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(WARM_CHUNK_BYTES));
+
+    private final AssetCache cache;
+    private final Path baseDirectory;
+    private final int radius;
+    private final long movieWarmBytes;
+    private final Executor executor;
+    private final ExecutorService ownedExecutor;
+
+    // 選択が変わるたびに増え,古い選択の読み出しを打ち切るのに使う
+    private final AtomicLong generation = new AtomicLong();
+    private final Map<Path, MissingAsset> missingAssets = new ConcurrentHashMap<>();
+    private volatile boolean isClosed = false;
+
+    /**
+     * 既定の設定でインスタンスを作る.読み出しは専用のデーモンスレッドで行われる.
+     * @param cache 画像を保持する{@link AssetCache}
+     * @param baseDirectory ゲーム情報に書かれた相対パスの基準とするディレクトリ
+     */
+    public AssetPrefetcher(AssetCache cache, Path baseDirectory){
+        this(cache, baseDirectory, DEFAULT_RADIUS, DEFAULT_MOVIE_WARM_BYTES, null);
+    }
+
+    /**
+     * @param cache 画像を保持する{@link AssetCache}
+     * @param baseDirectory ゲーム情報に書かれた相対パスの基準とするディレクトリ
+     * @param radius 選択中のゲームの前後それぞれで,パネル画像を読み出すゲームの数
+     * @param movieWarmBytes 動画ファイルの先頭からページキャッシュに載せる大きさ. {@code 0}のときは動画を読まない.
+     * @param executor 読み出しを行う{@link Executor}. {@code null}のときは専用のデーモンスレッドを使い,{@link #close()}で終了する.
+     * @throws IllegalArgumentException {@code radius}か{@code movieWarmBytes}が負である
+     */
+    public AssetPrefetcher(AssetCache cache, Path baseDirectory, int radius, long movieWarmBytes, Executor executor)
+            throws IllegalArgumentException {
+        if(radius < 0)throw new IllegalArgumentException("Radius must not be negative.");
+        if(movieWarmBytes < 0)throw new IllegalArgumentException("Movie warm bytes must not be negative.");
+
+        this.cache = cache;
+        this.baseDirectory = baseDirectory.toAbsolutePath().normalize();
+        this.radius = radius;
+        this.movieWarmBytes = movieWarmBytes;
+
+        if(executor != null){
+            this.executor = executor;
+            ownedExecutor = null;
+        }else {
+            ownedExecutor = Executors.newFixedThreadPool(OWNED_THREADS, runnable -> {
+                final Thread thread = new Thread(runnable, "AssetPrefetcher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.executor = ownedExecutor;
+        }
+    }
+
+    /**
+     * 選択中のゲームを知らせ,その前後のゲームの読み出しを始める.実行中の古い選択の読み出しは打ち切られる.
+     * 選択が続けて変わったときに待っている古い選択の読み出しは,実行されずに終わる.
+     * {@link #close()}の後に呼び出したときは何もしない.
+     * @param order 画面に並んでいる順のゲームの一覧
+     * @param selectedIndex 選択中のゲームの{@code order}内での位置
+     * @throws IndexOutOfBoundsException {@code selectedIndex}が{@code order}の範囲外である
+     */
+    public void select(List<? extends Game> order, int selectedIndex) throws IndexOutOfBoundsException {
+        final Game selected = order.get(selectedIndex);
+        if(isClosed)return;
+
+        // 呼び出し元が一覧を書き換えても影響しないよう,近い順に並べた複製を渡す
+        final List<Game> neighbors = new ArrayList<>(radius * 2 + 1);
+        neighbors.add(selected);
+        for (int distance = 1; distance <= radius; distance++){
+            if(selectedIndex + distance < order.size())neighbors.add(order.get(selectedIndex + distance));
+            if(selectedIndex - distance >= 0)neighbors.add(order.get(selectedIndex - distance));
+        }
+
+        final long current = generation.incrementAndGet();
+        try {
+            executor.execute(() -> prefetch(current, selected, neighbors));
+        }catch (RejectedExecutionException ex){
+            // 先読みは省いても表示には影響しない
+        }
+    }
+
+    /**
+     * 全てのゲームのパネル画像,画像,動画のファイルがあるかをバックグラウンドで確かめる.
+     * 見つからなかったファイルは{@link #getMissingAssets()}にも記録される.
+     * @param games 確かめるゲーム
+     * @return 見つからなかったファイルの一覧を返す{@link CompletableFuture}.
+     *         {@link #close()}の後に呼び出したときは{@link RejectedExecutionException}で失敗する.
+     */
+    public CompletableFuture<List<MissingAsset>> verify(Collection<? extends Game> games){
+        if(isClosed)return CompletableFuture.failedFuture(new RejectedExecutionException("AssetPrefetcher is closed."));
+
+        final List<Game> snapshot = new ArrayList<>(games);
+        return CompletableFuture.supplyAsync(() -> {
+            final List<MissingAsset> result = new ArrayList<>();
+            for (final Game game : snapshot){
+                if(game.getPanel() != null)verify(game, Field.PANEL, game.getPanel(), result);
+                for (final Path image : game.getImageList()){
+                    verify(game, Field.IMAGE_LIST, image, result);
+                }
+                for (final Path movie : game.getMovieList()){
+                    verify(game, Field.MOVIE_LIST, movie, result);
+                }
+            }
+            return result;
+        }, executor);
+    }
+
+    /**
+     * @return これまでに見つからなかった,または読み出せなかったファイルの一覧. 後から見つかったファイルは含まない.
+     */
+    public List<MissingAsset> getMissingAssets(){
+        return new ArrayList<>(missingAssets.values());
+    }
+
+    /**
+     * ゲーム情報に書かれたパスを,読み出しに使うパスに変換する.
+     * @param path ゲーム情報に書かれたパス
+     * @return 相対パスは基準のディレクトリからのパスとして解決したパス
+     */
+    public Path resolve(Path path){
+        return baseDirectory.resolve(path).normalize();
+    }
+
+    /**
+     * 実行中の読み出しを打ち切る.専用のスレッドを使っているときは終了させる.
+     */
+    @Override
+    public void close() {
+        isClosed = true;
+        generation.incrementAndGet();
+        if(ownedExecutor != null)ownedExecutor.shutdownNow();
+    }
+
+    private void prefetch(long current, Game selected, List<Game> neighbors){
+        // 待っている間に選択が変わっていれば,ファイルに触れずに終わる
+        for (final Game game : neighbors){
+            if(generation.get() != current)return;
+            if(game.getPanel() != null)cacheAsset(game, Field.PANEL, game.getPanel());
+        }
+
+        for (final Path image : selected.getImageList()){
+            if(generation.get() != current)return;
+            cacheAsset(selected, Field.IMAGE_LIST, image);
+        }
+
+        if(movieWarmBytes == 0)return;
+        for (final Path movie : selected.getMovieList()){
+            if(generation.get() != current)return;
+            warm(current, selected, movie);
+        }
+    }
+
+    private void cacheAsset(Game game, Field field, Path path){
+        final Path file = resolve(path);
+        if(cache.contains(file))return;
+
+        try {
+            cache.load(file);
+            missingAssets.remove(file);
+        }catch (IOException ex){
+            final MissingAsset missing = check(game, field, path);
+            missingAssets.put(file, missing != null ? missing : new MissingAsset(game, field, path, MissingAsset.Reason.UNREADABLE));
+        }
+    }
+
+    /**
+     * 動画ファイルの先頭を読み捨て,OSのページキャッシュに載せる.選択が変わったときは途中で打ち切る.
+     */
+    private void warm(long current, Game game, Path path){
+        final Path file = resolve(path);
+        final ByteBuffer buffer = WARM_BUFFER.get();
+        try(final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+            long remaining = Math.min(movieWarmBytes, channel.size());
+            while (remaining > 0 && generation.get() == current){
+                buffer.clear();
+                if(remaining < buffer.capacity())buffer.limit((int) remaining);
+                final int read = channel.read(buffer);
+                if(read < 0)break;
+                remaining -= read;
+            }
+            missingAssets.remove(file);
+        }catch (IOException ex){
+            final MissingAsset missing = check(game, Field.MOVIE_LIST, path);
+            missingAssets.put(file, missing != null ? missing : new MissingAsset(game, Field.MOVIE_LIST, path, MissingAsset.Reason.UNREADABLE));
+        }
+    }
+
+    private void verify(Game game, Field field, Path path, List<MissingAsset> result){
+        final Path file = resolve(path);
+        final MissingAsset missing = check(game, field, path);
+        if(missing == null){
+            missingAssets.remove(file);
+            return;
+        }
+        missingAssets.put(file, missing);
+        result.add(missing);
+    }
+
+    /**
+     * @return ファイルを使えるとき {@code null}.
+     */
+    private MissingAsset check(Game game, Field field, Path path){
+        final Path file = resolve(path);
+        try {
+            final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            if(!attributes.isRegularFile())return new MissingAsset(game, field, path, MissingAsset.Reason.NOT_REGULAR_FILE);
+            if(!Files.isReadable(file))return new MissingAsset(game, field, path, MissingAsset.Reason.UNREADABLE);
+            return null;
+        }catch (NoSuchFileException ex){
+            return new MissingAsset(game, field, path, MissingAsset.Reason.NOT_FOUND);
+        }catch (IOException ex){
+            return new MissingAsset(game, field, path, MissingAsset.Reason.UNREADABLE);
+        }
+    }
+}
@@ -0,0 +1,421 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * カタログとシグネチャファイルを,呼び出したスレッドを止めずに読み書きする.
+ * <p>
+ *     各メソッドは処理を{@link Executor}に投入し,結果を{@link CompletableFuture}で返す.
+ *     返された{@link CompletableFuture}を{@link CompletableFuture#cancel(boolean)}で取り消すと,
+ *     処理は次のドキュメントの区切りで打ち切られる.書き込みを打ち切ったときは元のファイルは変更されない.
+ * </p>
+ * <p>
+ *     シグネチャファイルの読み出しは{@link AsynchronousFileChannel}で行い,読み出しの完了を待つスレッドを必要としない.
+ * </p>
+ */
+public final class AsyncCatalogIO {
+    /**
+     * 進み具合を通知する間隔のドキュメント数.
+     */
+    private static final int PROGRESS_INTERVAL = 256;
+
+    /**
+     * {@link #publish(Path, Flow.Subscriber, int, ValidationReport, ProgressListener)}で空きを待つ間,
+     * 取り消されていないか確かめる間隔のミリ秒数.
+     */
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+
+    private final Executor executor;
+    private final Executor deliveryExecutor;
+
+    /**
+     * {@link ForkJoinPool#commonPool()}で読み書きするインスタンスを作る.
+     */
+    public AsyncCatalogIO(){
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * {@link Flow.Subscriber}への通知は{@link ForkJoinPool#commonPool()}から行う.
+     * @param executor 読み書きを行う{@link Executor}
+     */
+    public AsyncCatalogIO(Executor executor){
+        this(executor, defaultDeliveryExecutor());
+    }
+
+    /**
+     * @param executor 読み書きを行う{@link Executor}
+     * @param deliveryExecutor {@link Flow.Subscriber}へ通知する{@link Executor}.
+     *                         読み出しのスレッドは通知を待つことがあるため,{@code executor}とは別のスレッドで実行しなければならない.
+     */
+    public AsyncCatalogIO(Executor executor, Executor deliveryExecutor){
+        this.executor = executor;
+        this.deliveryExecutor = deliveryExecutor;
+    }
+
+    /**
+     * {@link SubmissionPublisher}の既定と同じく,共有プールが並列に実行できないときは通知ごとにスレッドを作る.
+     */
+    private static Executor defaultDeliveryExecutor(){
+        if(ForkJoinPool.getCommonPoolParallelism() > 1)return ForkJoinPool.commonPool();
+        return runnable -> {
+            final Thread thread = new Thread(runnable, "AsyncCatalogIO");
+            thread.setDaemon(true);
+            thread.start();
+        };
+    }
+
+    /**
+     * JSONファイルの全てのゲーム情報を読み出す.
+     * @param filePath JSONファイルのパス.gzip形式で圧縮されていてもよい.
+     * @return ファイル内の順序で{@link GameDocument}のリストを返す{@link CompletableFuture}
+     */
+    public CompletableFuture<List<GameDocument>> read(Path filePath){
+        return read(filePath, ValidationReport.printing(), ProgressListener.NONE);
+    }
+
+    /**
+     * 不正なフィールドを{@link ValidationReport}に記録しながら,JSONファイルの全てのゲーム情報を読み出す.
+     * @param filePath JSONファイルのパス.gzip形式で圧縮されていてもよい.
+     * @param report 不正なフィールドを記録する{@link ValidationReport}
+     * @param progress 読み出したバイト数とドキュメント数の通知先
+     * @return ファイル内の順序で{@link GameDocument}のリストを返す{@link CompletableFuture}
+     */
+    public CompletableFuture<List<GameDocument>> read(Path filePath, ValidationReport report, ProgressListener progress){
+        final CompletableFuture<List<GameDocument>> future = new CompletableFuture<>();
+        submit(future, () -> {
+            final CountingInputStream counter = new CountingInputStream(Files.newInputStream(filePath));
+            final List<GameDocument> documents = new ArrayList<>();
+            try(final JSONDBIterator iterator = new JSONDBIterator(newReader(counter), report)){
+                while (iterator.hasNext()){
+                    if(future.isDone())return;
+
+                    documents.add(iterator.next());
+                    if(documents.size() % PROGRESS_INTERVAL == 0)progress.onProgress(counter.count, documents.size());
+                }
+            }
+            progress.onProgress(counter.count, documents.size());
+            future.complete(documents);
+        });
+        return future;
+    }
+
+    /**
+     * JSONファイルのゲーム情報を読み出しながら,1件ずつ{@link Flow.Subscriber}に渡す.
+     * 受け渡しを待つゲーム情報の最大件数は{@link Flow#defaultBufferSize()}である.
+     * @param filePath JSONファイルのパス.gzip形式で圧縮されていてもよい.
+     * @param subscriber ゲーム情報を受け取る{@link Flow.Subscriber}
+     * @return 読み出しが終わったときに完了する{@link CompletableFuture}. 値は読み出したドキュメント数.
+     * @see #publish(Path, Flow.Subscriber, int, ValidationReport, ProgressListener)
+     */
+    public CompletableFuture<Long> publish(Path filePath, Flow.Subscriber<? super GameDocument> subscriber){
+        return publish(filePath, subscriber, Flow.defaultBufferSize(), ValidationReport.printing(), ProgressListener.NONE);
+    }
+
+    /**
+     * JSONファイルのゲーム情報を読み出しながら,1件ずつ{@link Flow.Subscriber}に渡す.
+     * <p>
+     *     {@code subscriber}が要求した件数を超えて{@code bufferCapacity}件が溜まると,読み出しは要求されるまで待つ.
+     *     このためファイル全体がメモリ上に置かれることはない.
+     *     {@code subscriber}が購読を取り消したとき,または返された{@link CompletableFuture}を取り消したときは,
+     *     空きを待っている間でも読み出しを打ち切る.
+     * </p>
+     * @param filePath JSONファイルのパス.gzip形式で圧縮されていてもよい.
+     * @param subscriber ゲーム情報を受け取る{@link Flow.Subscriber}.通知は通知用の{@link Executor}から行われる.
+     * @param bufferCapacity 受け渡しを待つゲーム情報の最大件数
+     * @param report 不正なフィールドを記録する{@link ValidationReport}
+     * @param progress 読み出したバイト数とドキュメント数の通知先
+     * @return ファイルの終端まで読み出した,または読み出しを打ち切ったときに完了する{@link CompletableFuture}.
+     *         値は読み出したドキュメント数.
+     */
+    public CompletableFuture<Long> publish(Path filePath, Flow.Subscriber<? super GameDocument> subscriber,
+                                           int bufferCapacity, ValidationReport report, ProgressListener progress){
+        final SubmissionPublisher<GameDocument> publisher = new SubmissionPublisher<>(deliveryExecutor, bufferCapacity);
+        publisher.subscribe(subscriber);
+
+        final CompletableFuture<Long> future = new CompletableFuture<>();
+        future.whenComplete((count, ex) -> {
+            if(ex != null){
+                publisher.closeExceptionally(ex);
+            }else {
+                publisher.close();
+            }
+        });
+
+        submit(future, () -> {
+            final CountingInputStream counter = new CountingInputStream(Files.newInputStream(filePath));
+            long count = 0;
+            try(final JSONDBIterator iterator = new JSONDBIterator(newReader(counter), report)){
+                reading:
+                while (iterator.hasNext()){
+                    final GameDocument document = iterator.next();
+
+                    // 受け渡しを待つ件数が上限に達しているときは空きを待つ.待つ間も一定時間ごとに取り消しを確かめる
+                    do {
+                        if(future.isDone())return;
+                        if(publisher.getNumberOfSubscribers() == 0)break reading;
+                    }while (publisher.offer(document, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS, (s, d) -> false) < 0);
+
+                    if(++count % PROGRESS_INTERVAL == 0)progress.onProgress(counter.count, count);
+                }
+            }
+            progress.onProgress(counter.count, count);
+            future.complete(count);
+        });
+        return future;
+    }
+
+    /**
+     * ゲーム情報を圧縮せずにJSONファイルに原子的に書き込む.
+     * @param filePath 書き込み先のファイルのパス
+     * @param games 書き込むゲーム情報.書き込みが完了するまで変更してはならない.
+     * @return 書き込みが完了したときに完了する{@link CompletableFuture}
+     */
+    public CompletableFuture<Void> write(Path filePath, Collection<? extends Game> games){
+        return write(filePath, games, Compression.NONE, ProgressListener.NONE);
+    }
+
+    /**
+     * ゲーム情報をJSONファイルに原子的に書き込む.
+     * @param filePath 書き込み先のファイルのパス
+     * @param games 書き込むゲーム情報.書き込みが完了するまで変更してはならない.
+     * @param compression 圧縮形式
+     * @param progress 書き込んだバイト数とドキュメント数の通知先
+     * @return 書き込みが完了したときに完了する{@link CompletableFuture}
+     */
+    public CompletableFuture<Void> write(Path filePath, Collection<? extends Game> games,
+                                         Compression compression, ProgressListener progress){
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        submit(future, () -> {
+            final long[] written = new long[2];
+            AtomicFiles.write(filePath, out -> {
+                final CountingOutputStream counter = new CountingOutputStream(out);
+                final JSONDBStreamWriter writer = new JSONDBStreamWriter(counter, compression);
+                for (final Game game : games){
+                    // 例外で抜けると一時ファイルは削除され,元のファイルは変更されない
+                    if(future.isDone())throw new CancellationException();
+
+                    writer.add(game);
+                    if(++written[1] % PROGRESS_INTERVAL == 0)progress.onProgress(counter.count, written[1]);
+                }
+                writer.finish();
+                written[0] = counter.count;
+            });
+            progress.onProgress(written[0], written[1]);
+            future.complete(null);
+        });
+        return future;
+    }
+
+    /**
+     * シグネチャファイルを読み出す.
+     * @param filePath シグネチャファイルのパス.gzip形式で圧縮されていてもよい.
+     * @return 読み出した{@link GameDocument}を返す{@link CompletableFuture}
+     */
+    public CompletableFuture<GameDocument> readSignature(Path filePath){
+        final long start = System.nanoTime();
+        final CompletableFuture<GameDocument> future = new CompletableFuture<>();
+
+        final AsynchronousFileChannel channel;
+        final ByteBuffer buffer;
+        try {
+            channel = AsynchronousFileChannel.open(filePath, StandardOpenOption.READ);
+            final long size = channel.size();
+            if(size > Integer.MAX_VALUE){
+                channel.close();
+                throw new IOException("Too large signature file : " + filePath);
+            }
+            buffer = ByteBuffer.allocate((int) size);
+        }catch (IOException ex){
+            future.completeExceptionally(ex);
+            return future;
+        }
+
+        channel.read(buffer, 0, future, new CompletionHandler<>() {
+            @Override
+            public void completed(Integer read, CompletableFuture<GameDocument> future) {
+                if(future.isDone()){
+                    close();
+                    return;
+                }
+                if(buffer.hasRemaining()){
+                    if(read < 0){
+                        // 大きさを調べた後でファイルが切り詰められた
+                        close();
+                        future.completeExceptionally(new EOFException("Unexpected end of " + filePath));
+                        return;
+                    }
+                    channel.read(buffer, buffer.position(), future, this);
+                    return;
+                }
+                close();
+
+                // 解析はI/Oのスレッドを塞がないように読み書き用のExecutorで行う
+                submit(future, () -> future.complete(Signature.parseSignature(filePath, buffer.array(), start)));
+            }
+
+            @Override
+            public void failed(Throwable ex, CompletableFuture<GameDocument> future) {
+                close();
+                future.completeExceptionally(ex);
+            }
+
+            private void close(){
+                try {
+                    channel.close();
+                }catch (IOException ex){
+                    // 読み出しは完了しているため無視する
+                }
+            }
+        });
+        return future;
+    }
+
+    /**
+     * シグネチャファイルを原子的に書き込む.
+     * @param filePath 書き込み先のファイルのパス
+     * @param document 書き込むゲーム情報
+     * @param compression 圧縮形式
+     * @return 書き込みが完了したときに完了する{@link CompletableFuture}
+     */
+    public CompletableFuture<Void> writeSignature(Path filePath, GameDocument document, Compression compression){
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        submit(future, () -> {
+            if(!Signature.writeSignatureAtomically(filePath, document, compression)){
+                throw new IOException("Failed to write on " + filePath);
+            }
+            future.complete(null);
+        });
+        return future;
+    }
+
+    /**
+     * 例外を投げうる処理.
+     */
+    @FunctionalInterface
+    private interface Task {
+        void run() throws Exception;
+    }
+
+    /**
+     * 処理を{@link Executor}に投入し,投げられた例外で{@code future}を完了させる.
+     */
+    private void submit(CompletableFuture<?> future, Task task){
+        try {
+            executor.execute(() -> {
+                if(future.isDone())return;
+                try {
+                    task.run();
+                }catch (Throwable ex){
+                    future.completeExceptionally(ex);
+                }
+            });
+        }catch (RejectedExecutionException ex){
+            future.completeExceptionally(ex);
+        }
+    }
+
+    private static BufferedReader newReader(InputStream in) throws IOException {
+        try {
+            return new BufferedReader(new InputStreamReader(Compression.decompress(in), StandardCharsets.UTF_8.newDecoder()));
+        }catch (IOException ex){
+            in.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * 読み出したバイト数を数える.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        long count = 0;
+
+        CountingInputStream(InputStream in){
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if(b >= 0)count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final int read = super.read(b, off, len);
+            if(read > 0)count += read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            final long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    /**
+     * 書き込んだバイト数を数える.
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count = 0;
+
+        CountingOutputStream(OutputStream out){
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
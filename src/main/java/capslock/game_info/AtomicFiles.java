@@ -0,0 +1,146 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * ファイルを原子的に置き換えるユーティリティクラス.
+ * <p>
+ *     同じディレクトリの一時ファイルに書き込んでディスクへ同期した後,対象のファイルへ名前を変更する.
+ *     書き込み中にプロセスが停止しても,対象のファイルは古い内容か新しい内容のどちらかのままである.
+ *     置き換えたファイルは元のファイルのPOSIXの権限と,可能であれば所有者を引き継ぐ.
+ *     新しく作るファイルの権限は,通常のファイル作成と同じくumaskを適用した既定値になる.
+ * </p>
+ */
+final class AtomicFiles {
+    private AtomicFiles(){
+    }
+
+    /**
+     * 一時ファイルへ内容を書き込む処理.
+     */
+    @FunctionalInterface
+    interface Content {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * ファイルの内容を原子的に置き換える.
+     * @param target 置き換えるファイル.存在しないときは作成する.
+     * @param content 書き込む内容
+     * @throws IOException 書き込みに失敗した.このとき対象のファイルは変更されない.
+     */
+    static void write(Path target, Content content) throws IOException {
+        final Path absoluteTarget = target.toAbsolutePath();
+        final Path directory = absoluteTarget.getParent();
+        final Path temporary = createTemporary(directory, absoluteTarget.getFileName().toString());
+
+        boolean isMoved = false;
+        try {
+            copyPermissions(absoluteTarget, temporary);
+            try(final FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)){
+                final OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel));
+                content.writeTo(out);
+                out.flush();
+                channel.force(true);
+            }
+
+            try {
+                Files.move(temporary, absoluteTarget, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }catch (AtomicMoveNotSupportedException ex){
+                Files.move(temporary, absoluteTarget, StandardCopyOption.REPLACE_EXISTING);
+            }
+            isMoved = true;
+        }finally {
+            if(!isMoved)Files.deleteIfExists(temporary);
+        }
+
+        syncDirectory(directory);
+    }
+
+    /**
+     * 対象と同じディレクトリに一時ファイルを作る.
+     * {@link Files#createTempFile}は権限を所有者のみに絞るため,置き換えた後に他のユーザーが読めなくなる.
+     * このため既定の権限で作成する.
+     */
+    private static Path createTemporary(Path directory, String prefix) throws IOException {
+        while (true){
+            final Path candidate = directory.resolve(
+                    prefix + '.' + Long.toUnsignedString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+            try {
+                return Files.createFile(candidate);
+            }catch (FileAlreadyExistsException ex){
+                // 名前が衝突したときは別の名前で作り直す
+            }
+        }
+    }
+
+    /**
+     * 置き換えるファイルの権限と所有者を一時ファイルに写す.
+     * 所有者の変更には特権が必要なため,変更できないときは作成したユーザーのままにする.
+     */
+    private static void copyPermissions(Path source, Path temporary) throws IOException {
+        final PosixFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(source, PosixFileAttributes.class);
+        }catch (NoSuchFileException ex){
+            return;
+        }catch (UnsupportedOperationException ex){
+            // POSIXの権限を持たないファイルシステム
+            return;
+        }
+
+        final PosixFileAttributeView view = Files.getFileAttributeView(temporary, PosixFileAttributeView.class);
+        try {
+            view.setOwner(attributes.owner());
+        }catch (IOException ex){
+            // 特権が無い
+        }
+        try {
+            view.setGroup(attributes.group());
+        }catch (IOException ex){
+            // 所属していないグループ
+        }
+        // 所有者の変更でsetuidなどのビットが落ちるため,権限は最後に設定する
+        view.setPermissions(attributes.permissions());
+    }
+
+    /**
+     * 名前の変更をディスクへ同期する.ディレクトリを開けないプラットフォームでは何もしない.
+     */
+    static void syncDirectory(Path directory){
+        try(final FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)){
+            channel.force(true);
+        }catch (IOException ex){
+            // Windowsではディレクトリを開けない
+        }
+    }
+}
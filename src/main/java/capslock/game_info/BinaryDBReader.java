@@ -0,0 +1,183 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * {@link BinaryDBWriter}で書き出したスナップショットからゲーム情報を読み出して{@link GameDocument}オブジェクトを作成する.
+ */
+public final class BinaryDBReader {
+    private final List<GameDocument> gameList;
+    private final long sourceSize;
+    private final FileTime sourceLastModified;
+
+    /**
+     * スナップショットのパスを指定してインスタンスを作成する.ファイル内容は直ちに読み出される.
+     * @param filePath スナップショットのパス.
+     * @throws IOException ファイル読み込み中にエラーが発生した,またはスナップショットが壊れている
+     */
+    public BinaryDBReader(Path filePath) throws IOException {
+        final byte[] bytes = Files.readAllBytes(filePath);
+        if(bytes.length < Long.BYTES)throw new IOException("Snapshot is too short: " + filePath);
+
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        final CRC32 checksum = new CRC32();
+        checksum.update(bytes, 0, bytes.length - Long.BYTES);
+        if(checksum.getValue() != buffer.getLong(bytes.length - Long.BYTES)){
+            throw new IOException("Snapshot checksum mismatch: " + filePath);
+        }
+        buffer.limit(bytes.length - Long.BYTES);
+
+        try {
+            if(buffer.getInt() != BinaryDBWriter.MAGIC)throw new IOException("Not a snapshot: " + filePath);
+
+            final int version = buffer.getInt();
+            if(version != BinaryDBWriter.VERSION){
+                throw new IOException("Unsupported snapshot version " + version + ": " + filePath);
+            }
+            sourceSize = buffer.getLong();
+            sourceLastModified = FileTime.from(Instant.ofEpochSecond(buffer.getLong(), buffer.getInt()));
+
+            final String[] strings = new String[buffer.getInt()];
+            for (int i = 0; i < strings.length; i++){
+                final int length = buffer.getInt();
+                strings[i] = new String(bytes, buffer.position(), length, StandardCharsets.UTF_8);
+                buffer.position(buffer.position() + length);
+            }
+
+            // 文字列表の要素ごとにパスを1つだけ作り,同じ文字列を参照するドキュメントの間で共有する
+            final Path[] paths = new Path[strings.length];
+            final int documentCount = buffer.getInt();
+            gameList = new ArrayList<>(documentCount);
+            for (int i = 0; i < documentCount; i++){
+                gameList.add(readGame(buffer, strings, paths));
+            }
+        }catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException | DateTimeException ex){
+            throw new IOException("Broken snapshot: " + filePath, ex);
+        }
+    }
+
+    private static GameDocument readGame(ByteBuffer buffer, String[] strings, Path[] paths){
+        final UUID uuid = buffer.get() != 0 ? new UUID(buffer.getLong(), buffer.getLong()) : null;
+        final GameDocument document = new GameDocument(uuid);
+
+        document.exe = path(strings, paths, buffer.getInt());
+        document.name = string(strings, buffer.getInt());
+        if(buffer.get() != 0){
+            document.lastMod = Instant.ofEpochSecond(buffer.getLong(), buffer.getInt());
+        }
+        document.desc = string(strings, buffer.getInt());
+        document.panel = path(strings, paths, buffer.getInt());
+        document.imageList = pathList(buffer, strings, paths);
+        document.movieList = pathList(buffer, strings, paths);
+        document.gameID = buffer.getInt();
+
+        return document;
+    }
+
+    private static List<Path> pathList(ByteBuffer buffer, String[] strings, Path[] paths){
+        final int size = buffer.getInt();
+        final List<Path> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++){
+            list.add(path(strings, paths, buffer.getInt()));
+        }
+        return list;
+    }
+
+    private static String string(String[] strings, int index){
+        return index == BinaryDBWriter.NO_VALUE ? null : strings[index];
+    }
+
+    private static Path path(String[] strings, Path[] paths, int index){
+        if(index == BinaryDBWriter.NO_VALUE)return null;
+        if(paths[index] != null)return paths[index];
+        try {
+            return paths[index] = Paths.get(strings[index]);
+        }catch (InvalidPathException ex){
+            throw new IllegalArgumentException(ex);
+        }
+    }
+
+    /**
+     * スナップショットから読みだした{@link GameDocument}を返す.
+     * {@link GameDocument}のリストを返す.
+     */
+    public final List<GameDocument> getDocumentList(){
+        return gameList;
+    }
+
+    /**
+     * @return スナップショットを作ったときのJSONファイルと,大きさと更新日時が一致するとき {@code true}.
+     */
+    private boolean isSnapshotOf(BasicFileAttributes source){
+        return sourceSize == source.size() && sourceLastModified.equals(source.lastModifiedTime());
+    }
+
+    /**
+     * JSONファイルの最新の内容を,可能であればスナップショットから読み出す.
+     * <p>
+     *     スナップショットに記録したJSONファイルの大きさと更新日時が,現在のJSONファイルと一致するときはスナップショットを読み出す.
+     *     更新日時の精度が粗いファイルシステムや時計の巻き戻りでも書き換えを見逃さないよう,前後ではなく一致で比べる.
+     *     スナップショットが存在しない,古い,または壊れているときはJSONファイルを読み出し,
+     *     次回のためにスナップショットを作り直す.スナップショットの書き込みに失敗しても読み出しは成功する.
+     * </p>
+     * @param jsonPath JSONファイルのパス
+     * @param snapshotPath スナップショットのパス
+     * @return 読み出した{@link GameDocument}のリスト
+     * @throws IOException JSONファイルの読み込み中にエラーが発生した
+     */
+    public static List<GameDocument> readWithSnapshot(Path jsonPath, Path snapshotPath) throws IOException {
+        // 読み出し中にJSONファイルが書き換えられても次回に読み直すよう,読み出す前の大きさと更新日時を記録する
+        final BasicFileAttributes source = Files.readAttributes(jsonPath, BasicFileAttributes.class);
+        try {
+            final BinaryDBReader snapshot = new BinaryDBReader(snapshotPath);
+            if(snapshot.isSnapshotOf(source))return snapshot.getDocumentList();
+        }catch (NoSuchFileException ex){
+            // スナップショットがまだ無い
+        }catch (IOException ex){
+            System.err.println("Failed to read snapshot " + snapshotPath + ". Falls back to " + jsonPath);
+        }
+
+        final List<GameDocument> documents = JSONDBReader.mapped(jsonPath).getDocumentList();
+
+        final BinaryDBWriter writer = new BinaryDBWriter().setSource(source.size(), source.lastModifiedTime());
+        documents.forEach(writer::add);
+        try {
+            writer.flush(snapshotPath);
+        }catch (IOException ex){
+            // 読み出し自体は成功しているので,スナップショットの作成失敗は無視する
+        }
+
+        return documents;
+    }
+}
@@ -0,0 +1,192 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * ゲームの登録情報を受け取ってバイナリ形式のスナップショットをファイルに書き込む.
+ * <p>
+ *     スナップショットは{@link BinaryDBReader}で読み出す.形式は以下の通り.
+ *     整数はすべてビッグエンディアンである.
+ * </p>
+ * <pre>
+ *     int    MAGIC
+ *     int    VERSION
+ *     long   元のJSONファイルの大きさ. 不明なとき {@code -1}.
+ *     long   元のJSONファイルの更新日時のエポック秒
+ *     int    元のJSONファイルの更新日時のナノ秒
+ *     int    文字列表の件数, 続いて各文字列の(int バイト長, UTF-8バイト列)
+ *     int    ドキュメントの件数, 続いて各ドキュメント
+ *     long   ここまでのCRC32
+ * </pre>
+ * 文字列とパスは文字列表の添字で参照し,値が無いときは{@code -1}とする.
+ */
+public final class BinaryDBWriter {
+    static final int MAGIC = 0x47494442; // "GIDB"
+    static final int VERSION = 2;
+    static final int NO_VALUE = -1;
+
+    private final List<Game> gameList = new ArrayList<>();
+    private long sourceSize = NO_VALUE;
+    private FileTime sourceLastModified = FileTime.fromMillis(0);
+
+    /**
+     * 書き込むゲーム情報を追加する.
+     * @param game 追加するゲーム情報
+     */
+    public final BinaryDBWriter add(Game game){
+        gameList.add(game);
+        return this;
+    }
+
+    /**
+     * スナップショットの元になったJSONファイルの大きさと更新日時を記録する.
+     * {@link BinaryDBReader#readWithSnapshot(Path, Path)}はこれらが一致するときのみスナップショットを使う.
+     * @param size JSONファイルの大きさ
+     * @param lastModified JSONファイルの更新日時
+     */
+    final BinaryDBWriter setSource(long size, FileTime lastModified){
+        sourceSize = size;
+        sourceLastModified = lastModified;
+        return this;
+    }
+
+    /**
+     * {@link #add(Game)}で追加した全てのゲーム情報をスナップショットとして原子的に書き出す.
+     * @param filePath 書き出すファイルのパス
+     * @throws IOException ファイル書き込みに失敗した.このとき既存のファイルは変更されない.
+     */
+    public final void flush(Path filePath) throws IOException {
+        final StringTable table = new StringTable();
+        for (final Game game : gameList){
+            table.register(game);
+        }
+
+        try {
+            AtomicFiles.write(filePath, out -> write(out, table));
+        } catch (IOException ex) {
+            System.err.println("Failed to write on " + filePath);
+            throw ex;
+        }
+    }
+
+    /**
+     * 出力先は{@link AtomicFiles}が同期してから閉じるため,ここでは閉じない.
+     */
+    private void write(OutputStream out, StringTable table) throws IOException {
+        final CRC32 checksum = new CRC32();
+        final DataOutputStream output = new DataOutputStream(new CheckedOutputStream(out, checksum));
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeLong(sourceSize);
+        output.writeLong(sourceLastModified.toInstant().getEpochSecond());
+        output.writeInt(sourceLastModified.toInstant().getNano());
+
+        output.writeInt(table.strings.size());
+        for (final String string : table.strings){
+            final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+
+        output.writeInt(gameList.size());
+        for (final Game game : gameList){
+            writeGame(output, table, game);
+        }
+
+        output.flush();
+        output.writeLong(checksum.getValue());
+        output.flush();
+    }
+
+    private static void writeGame(DataOutputStream output, StringTable table, Game game) throws IOException {
+        if(game.getUUID() == null){
+            output.writeBoolean(false);
+        }else {
+            output.writeBoolean(true);
+            output.writeLong(game.getUUID().getMostSignificantBits());
+            output.writeLong(game.getUUID().getLeastSignificantBits());
+        }
+
+        output.writeInt(table.indexOf(game.getExe()));
+        output.writeInt(table.indexOf(game.getName()));
+
+        if(game.getLastMod() == null){
+            output.writeBoolean(false);
+        }else {
+            output.writeBoolean(true);
+            output.writeLong(game.getLastMod().getEpochSecond());
+            output.writeInt(game.getLastMod().getNano());
+        }
+
+        output.writeInt(table.indexOf(game.getDesc()));
+        output.writeInt(table.indexOf(game.getPanel()));
+
+        output.writeInt(game.getImageList().size());
+        for (final Path path : game.getImageList()){
+            output.writeInt(table.indexOf(path));
+        }
+
+        output.writeInt(game.getMovieList().size());
+        for (final Path path : game.getMovieList()){
+            output.writeInt(table.indexOf(path));
+        }
+
+        output.writeInt(game.getGameID());
+    }
+
+    /**
+     * 重複を除いた文字列表.パスは文字列に変換して登録する.
+     */
+    private static final class StringTable {
+        private final List<String> strings = new ArrayList<>();
+        private final Map<String, Integer> indexes = new HashMap<>();
+
+        void register(Game game){
+            add(game.getExe());
+            add(game.getName());
+            add(game.getDesc());
+            add(game.getPanel());
+            game.getImageList().forEach(this::add);
+            game.getMovieList().forEach(this::add);
+        }
+
+        private void add(Object value){
+            if(value == null)return;
+            indexes.computeIfAbsent(value.toString(), string -> {
+                strings.add(string);
+                return strings.size() - 1;
+            });
+        }
+
+        int indexOf(Object value){
+            if(value == null)return NO_VALUE;
+            return indexes.get(value.toString());
+        }
+    }
+}
@@ -0,0 +1,502 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * UTF-8でエンコードされたJSONを{@link ByteBuffer}から直接読み出す字句解析器.
+ * <p>
+ *     文字列のデコードは値が実際に必要になったときのみ行う.
+ *     {@link GameDocument}が扱わないキーの値は,文字列を作らずにバイト列のまま読み飛ばす.
+ *     読み飛ばす値も,デコードする値と同じく構文を検査する.
+ *     {@link org.json}と異なり,引用符の無い値は{@code true},{@code false},{@code null}と数値のみを受け付ける.
+ *     このクラスはスレッドセーフでない.
+ * </p>
+ */
+final class ByteJSONScanner {
+    private static final byte[][] FIELD_KEYS;
+    private static final byte[] TRUE = "true".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FALSE = "false".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+
+    static {
+        final Field[] fields = Field.values();
+        FIELD_KEYS = new byte[fields.length][];
+        for (final Field field : fields){
+            FIELD_KEYS[field.ordinal()] = field.toString().getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    private final ByteBuffer buffer;
+    private final int limit;
+    private int position;
+
+    /**
+     * @param buffer 読み出すバッファ.バッファ自身の位置は変更されない.
+     */
+    ByteJSONScanner(ByteBuffer buffer){
+        this(buffer, buffer.position(), buffer.limit());
+    }
+
+    /**
+     * バッファの一部分のみを読み出す.
+     * @param buffer 読み出すバッファ
+     * @param start 読み出しを開始する位置
+     * @param end 読み出しを終了する位置(この位置は含まない)
+     */
+    ByteJSONScanner(ByteBuffer buffer, int start, int end){
+        this.buffer = buffer;
+        this.position = start;
+        this.limit = end;
+    }
+
+    int position(){
+        return position;
+    }
+
+    /**
+     * 空白を読み飛ばし,次の1バイトを消費せずに返す.
+     * @return 次のバイト. 終端に達したとき {@code -1}.
+     */
+    int peekClean(){
+        while (position < limit){
+            final byte b = buffer.get(position);
+            if(b != ' ' && b != '\t' && b != '\n' && b != '\r')return b;
+            position++;
+        }
+        return -1;
+    }
+
+    /**
+     * 空白を読み飛ばし,次の1バイトが期待した文字であることを確かめて消費する.
+     */
+    void expect(char c){
+        if(peekClean() != c)throw syntaxError("Expected '" + c + "'");
+        position++;
+    }
+
+    /**
+     * 配列の要素やオブジェクトのメンバーの区切りを読む.
+     * @param close 配列なら{@code ']'}, オブジェクトなら{@code '}'}
+     * @return 次の要素が存在するとき {@code true}. 閉じ括弧を読んだとき {@code false}.
+     */
+    boolean nextSeparator(char close){
+        final int c = peekClean();
+        if(c == ','){
+            position++;
+            if(peekClean() == close){
+                position++;
+                return false;
+            }
+            return true;
+        }
+        if(c == close){
+            position++;
+            return false;
+        }
+        throw syntaxError("Expected a ',' or '" + close + "'");
+    }
+
+    /**
+     * 配列の開き括弧を読む.
+     * @return 要素が1つ以上存在するとき {@code true}.
+     */
+    boolean beginArray(){
+        expect('[');
+        if(peekClean() == ']'){
+            position++;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 値を1つ,デコードせずに読み飛ばす.
+     */
+    void skipValue(){
+        final int c = peekClean();
+        switch (c){
+            case '"':
+                skipString();
+                return;
+            case '{':
+                skipObject();
+                return;
+            case '[':
+                skipArray();
+                return;
+            case -1:
+                throw syntaxError("Unexpected end of input");
+            default:
+                skipLiteral();
+        }
+    }
+
+    /**
+     * 値を1つデコードする.値の型は{@link org.json}のパーサーと同じ規則に従う.
+     */
+    Object nextValue(){
+        final int c = peekClean();
+        switch (c){
+            case '"':
+                return nextString();
+            case '{':
+                return nextObject();
+            case '[':
+                return nextArray();
+            case -1:
+                throw syntaxError("Unexpected end of input");
+            default:
+                final int start = position;
+                skipLiteral();
+                return JSONObject.stringToValue(ascii(start, position));
+        }
+    }
+
+    /**
+     * {@link GameDocument}が読み出すキーのみを保持した{@link JSONObject}を作る.
+     * 未知のキーは文字列を作らずに読み飛ばす.
+     */
+    JSONObject nextDocumentObject(){
+        final JSONObject document = new JSONObject();
+        expect('{');
+        if(peekClean() == '}'){
+            position++;
+            return document;
+        }
+
+        do {
+            final Field field = nextFieldKey();
+            expect(':');
+            if(field == null){
+                skipValue();
+            }else {
+                document.put(field.toString(), nextValue());
+            }
+        }while (nextSeparator('}'));
+
+        return document;
+    }
+
+    /**
+     * {@link GameDocument}が読み出すキーの値の位置を記録しながら,オブジェクトを1つ読み飛ばす.
+     * 値はデコードしないが,構文は検査する.
+     * @return {@link Field#ordinal()}を添字とする値の開始位置の配列. キーが無いとき {@code -1}.
+     */
+    int[] nextDocumentOffsets(){
+        final int[] offsets = new int[FIELD_KEYS.length];
+        Arrays.fill(offsets, -1);
+        expect('{');
+        if(peekClean() == '}'){
+            position++;
+            return offsets;
+        }
+
+        do {
+            final Field field = nextFieldKey();
+            expect(':');
+            // 同じキーが複数あるときは,JSONObjectと同じく最後の値を使う
+            peekClean();
+            if(field != null)offsets[field.ordinal()] = position;
+            skipValue();
+        }while (nextSeparator('}'));
+
+        return offsets;
+    }
+
+    /**
+     * オブジェクトのキーを読み,対応する{@link Field}を返す.
+     * @return 対応する{@link Field}が存在しないとき {@code null}.
+     */
+    Field nextFieldKey(){
+        if(peekClean() != '"')throw syntaxError("A JSONObject key must be a string");
+        final int start = position + 1;
+        skipString();
+        final int end = position - 1;
+
+        for (final Field field : Field.values()){
+            if(regionEquals(start, end, FIELD_KEYS[field.ordinal()]))return field;
+        }
+
+        // エスケープを含むキーはデコードしてから比較する
+        for (int i = start; i < end; i++){
+            if(buffer.get(i) == '\\'){
+                final String key = decodeString(start, end);
+                for (final Field field : Field.values()){
+                    if(field.toString().equals(key))return field;
+                }
+                return null;
+            }
+        }
+        return null;
+    }
+
+    String nextString(){
+        if(peekClean() != '"')throw syntaxError("Expected a string");
+        final int start = position + 1;
+        skipString();
+        return decodeString(start, position - 1);
+    }
+
+    private JSONObject nextObject(){
+        final JSONObject object = new JSONObject();
+        expect('{');
+        if(peekClean() == '}'){
+            position++;
+            return object;
+        }
+
+        do {
+            final String key = nextString();
+            expect(':');
+            object.put(key, nextValue());
+        }while (nextSeparator('}'));
+
+        return object;
+    }
+
+    private JSONArray nextArray(){
+        final JSONArray array = new JSONArray();
+        if(!beginArray())return array;
+
+        do {
+            array.put(nextValue());
+        }while (nextSeparator(']'));
+
+        return array;
+    }
+
+    private boolean regionEquals(int start, int end, byte[] expected){
+        if(end - start != expected.length)return false;
+        for (int i = 0; i < expected.length; i++){
+            if(buffer.get(start + i) != expected[i])return false;
+        }
+        return true;
+    }
+
+    /**
+     * 開きクォートの位置から閉じクォートの直後まで読み進める.エスケープは{@link org.json}と同じ規則で検査する.
+     */
+    private void skipString(){
+        position++;
+        while (position < limit){
+            final byte b = buffer.get(position++);
+            switch (b){
+                case '"':
+                    return;
+                case 0:
+                case '\n':
+                case '\r':
+                    throw syntaxError("Unterminated string");
+                case '\\':
+                    skipEscape();
+                    break;
+                default:
+                    break;
+            }
+        }
+        throw syntaxError("Unterminated string");
+    }
+
+    private void skipEscape(){
+        if(position >= limit)throw syntaxError("Unterminated string");
+        switch (buffer.get(position++)){
+            case 'b':
+            case 't':
+            case 'n':
+            case 'f':
+            case 'r':
+            case '"':
+            case '\'':
+            case '\\':
+            case '/':
+                return;
+            case 'u':
+                for (int i = 0; i < 4; i++){
+                    if(position >= limit || Character.digit(buffer.get(position++), 16) < 0){
+                        throw syntaxError("Illegal escape.");
+                    }
+                }
+                return;
+            default:
+                throw syntaxError("Illegal escape.");
+        }
+    }
+
+    private void skipObject(){
+        expect('{');
+        if(peekClean() == '}'){
+            position++;
+            return;
+        }
+
+        do {
+            if(peekClean() != '"')throw syntaxError("A JSONObject key must be a string");
+            skipString();
+            expect(':');
+            skipValue();
+        }while (nextSeparator('}'));
+    }
+
+    private void skipArray(){
+        if(!beginArray())return;
+
+        do {
+            skipValue();
+        }while (nextSeparator(']'));
+    }
+
+    /**
+     * 引用符の無い値を読み進め,{@code true},{@code false},{@code null}または数値であることを確かめる.
+     */
+    private void skipLiteral(){
+        final int start = position;
+        while (position < limit){
+            final byte b = buffer.get(position);
+            if(b == ',' || b == '}' || b == ']' || b == ':' || b == ' ' || b == '\t' || b == '\n' || b == '\r')break;
+            position++;
+        }
+        if(start == position)throw syntaxError("Missing value");
+        if(!regionEquals(start, position, TRUE) && !regionEquals(start, position, FALSE)
+                && !regionEquals(start, position, NULL) && !isNumber(start, position)){
+            throw syntaxError("Invalid literal " + ascii(start, position));
+        }
+    }
+
+    /**
+     * JSONの数値の文法 {@code -?(0|[1-9][0-9]*)(\.[0-9]+)?([eE][+-]?[0-9]+)?} に一致するか調べる.
+     */
+    private boolean isNumber(int start, int end){
+        int i = start;
+        if(i < end && buffer.get(i) == '-')i++;
+        if(i < end && buffer.get(i) == '0'){
+            i++;
+        }else {
+            final int digits = i;
+            i = skipDigits(i, end);
+            if(i == digits)return false;
+        }
+        if(i < end && buffer.get(i) == '.'){
+            final int digits = ++i;
+            i = skipDigits(i, end);
+            if(i == digits)return false;
+        }
+        if(i < end && (buffer.get(i) == 'e' || buffer.get(i) == 'E')){
+            i++;
+            if(i < end && (buffer.get(i) == '+' || buffer.get(i) == '-'))i++;
+            final int digits = i;
+            i = skipDigits(i, end);
+            if(i == digits)return false;
+        }
+        return i == end;
+    }
+
+    private int skipDigits(int i, int end){
+        while (i < end && buffer.get(i) >= '0' && buffer.get(i) <= '9')i++;
+        return i;
+    }
+
+    private String ascii(int start, int end){
+        return new String(copy(start, end), StandardCharsets.ISO_8859_1);
+    }
+
+    private byte[] copy(int start, int end){
+        final byte[] bytes = new byte[end - start];
+        buffer.duplicate().position(start).get(bytes);
+        return bytes;
+    }
+
+    /**
+     * クォートを除いた文字列の中身をデコードする.
+     */
+    private String decodeString(int start, int end){
+        boolean hasEscape = false;
+        for (int i = start; i < end; i++){
+            if(buffer.get(i) == '\\'){
+                hasEscape = true;
+                break;
+            }
+        }
+        if(!hasEscape)return new String(copy(start, end), StandardCharsets.UTF_8);
+
+        final StringBuilder builder = new StringBuilder(end - start);
+        int runStart = start;
+        int i = start;
+        while (i < end){
+            if(buffer.get(i) != '\\'){
+                i++;
+                continue;
+            }
+            appendUTF8(builder, runStart, i);
+            i++;
+            if(i >= end)throw syntaxError("Illegal escape.");
+            final byte escaped = buffer.get(i++);
+            switch (escaped){
+                case 'b':
+                    builder.append('\b');
+                    break;
+                case 't':
+                    builder.append('\t');
+                    break;
+                case 'n':
+                    builder.append('\n');
+                    break;
+                case 'f':
+                    builder.append('\f');
+                    break;
+                case 'r':
+                    builder.append('\r');
+                    break;
+                case 'u':
+                    if(i + 4 > end)throw syntaxError("Illegal escape.");
+                    try {
+                        builder.append((char) Integer.parseInt(ascii(i, i + 4), 16));
+                    }catch (NumberFormatException ex){
+                        throw syntaxError("Illegal escape.");
+                    }
+                    i += 4;
+                    break;
+                case '"':
+                case '\'':
+                case '\\':
+                case '/':
+                    builder.append((char) escaped);
+                    break;
+                default:
+                    throw syntaxError("Illegal escape.");
+            }
+            runStart = i;
+        }
+        appendUTF8(builder, runStart, end);
+        return builder.toString();
+    }
+
+    private void appendUTF8(StringBuilder builder, int start, int end){
+        if(start == end)return;
+        builder.append(new String(copy(start, end), StandardCharsets.UTF_8));
+    }
+
+    JSONException syntaxError(String message){
+        return new JSONException(message + " at byte " + position);
+    }
+}
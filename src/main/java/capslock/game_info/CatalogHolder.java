@@ -0,0 +1,160 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/**
+ * 複数のスレッドから共有される{@link GameCatalog}を保持する.
+ * <p>
+ *     保持する{@link GameCatalog}の要素は全て{@link GameSnapshot}である.
+ *     更新は新しい{@link GameCatalog}を作って{@link AtomicReference}で差し替えるため,
+ *     読み出し側はロックを取らず,書き込み側が読み出し側を待たせることもない.
+ *     書き込み同士が競合したときは,後から差し替えようとした側がやり直す.
+ * </p>
+ */
+public final class CatalogHolder {
+    private final AtomicReference<Version> current;
+
+    /**
+     * 保持しているカタログとその版数の組.
+     */
+    private static final class Version {
+        final GameCatalog catalog;
+        final long number;
+
+        Version(GameCatalog catalog, long number){
+            this.catalog = catalog;
+            this.number = number;
+        }
+    }
+
+    /**
+     * 空のカタログを保持するインスタンスを作る.
+     */
+    public CatalogHolder(){
+        this(Collections.emptyList());
+    }
+
+    /**
+     * 初期状態のゲーム情報を指定してインスタンスを作る.
+     * @param games 初期状態のゲーム情報.{@link GameSnapshot}に複製して保持される.
+     * @throws IllegalArgumentException UUIDまたは作品番号が重複している
+     */
+    public CatalogHolder(Collection<? extends Game> games) throws IllegalArgumentException {
+        current = new AtomicReference<>(new Version(snapshotCatalog(games), 0));
+    }
+
+    private static GameCatalog snapshotCatalog(Collection<? extends Game> games){
+        final List<GameSnapshot> snapshots = new ArrayList<>(games.size());
+        for (final Game game : games){
+            snapshots.add(GameSnapshot.of(game));
+        }
+        return new GameCatalog(snapshots);
+    }
+
+    /**
+     * 現在のカタログを返す.ロックを取らない.
+     * @return 現在のカタログ.返したインスタンスは以後の更新の影響を受けない.
+     */
+    public GameCatalog get(){
+        return current.get().catalog;
+    }
+
+    /**
+     * 現在のカタログの版数を返す.カタログが差し替えられるたびに1増える.
+     * @return 版数
+     */
+    public long getVersion(){
+        return current.get().number;
+    }
+
+    /**
+     * カタログ全体を置き換える.
+     * @param games 新しいゲーム情報.{@link GameSnapshot}に複製して保持される.
+     * @return 新しいカタログ
+     * @throws IllegalArgumentException UUIDまたは作品番号が重複している
+     */
+    public GameCatalog publish(Collection<? extends Game> games) throws IllegalArgumentException {
+        final GameCatalog catalog = snapshotCatalog(games);
+        Version previous;
+        do {
+            previous = current.get();
+        }while (!current.compareAndSet(previous, new Version(catalog, previous.number + 1)));
+        return catalog;
+    }
+
+    /**
+     * 現在のカタログのゲーム情報の一覧に変更を加えて差し替える.
+     * 他のスレッドと競合したときは{@code updater}が再度呼び出されるため,{@code updater}は副作用を持つべきでない.
+     * @param updater 現在のゲーム情報の一覧から新しい一覧を作る関数.引数のリストは変更できない.
+     * @return 新しいカタログ
+     * @throws IllegalArgumentException UUIDまたは作品番号が重複している
+     */
+    public GameCatalog update(UnaryOperator<List<Game>> updater) throws IllegalArgumentException {
+        while (true){
+            final Version previous = current.get();
+            final GameCatalog catalog = snapshotCatalog(updater.apply(previous.catalog.getGameList()));
+            if(current.compareAndSet(previous, new Version(catalog, previous.number + 1)))return catalog;
+        }
+    }
+
+    /**
+     * ゲーム情報を追加する.同じUUIDのゲームが既にあるときは,その位置で置き換える.
+     * @param game 追加または更新するゲーム情報.UUIDが設定されていなければならない.
+     * @return 新しいカタログ
+     * @throws IllegalArgumentException UUIDが設定されていない,または作品番号が重複している
+     */
+    public GameCatalog upsert(Game game) throws IllegalArgumentException {
+        final UUID uuid = game.getUUID();
+        if(uuid == null)throw new IllegalArgumentException("There is no \"UUID\" field. This field is necessary.");
+
+        final GameSnapshot snapshot = GameSnapshot.of(game);
+        return update(games -> {
+            final List<Game> updated = new ArrayList<>(games.size() + 1);
+            boolean isReplaced = false;
+            for (final Game existing : games){
+                if(uuid.equals(existing.getUUID())){
+                    updated.add(snapshot);
+                    isReplaced = true;
+                }else {
+                    updated.add(existing);
+                }
+            }
+            if(!isReplaced)updated.add(snapshot);
+            return updated;
+        });
+    }
+
+    /**
+     * ゲーム情報を削除する.
+     * @param uuid 削除するゲームのUUID
+     * @return 新しいカタログ
+     */
+    public GameCatalog remove(UUID uuid){
+        return update(games -> {
+            final List<Game> updated = new ArrayList<>(games);
+            updated.removeIf(game -> uuid.equals(game.getUUID()));
+            return updated;
+        });
+    }
+}
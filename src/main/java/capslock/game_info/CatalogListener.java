@@ -0,0 +1,47 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info;
+
+/**
+ * カタログに加えられた変更の通知を受け取る.
+ * <p>
+ *     通知は変更を反映した{@link GameCatalog}が公開された後に行われる.
+ *     必要なメソッドのみを実装すればよい.
+ * </p>
+ */
+public interface CatalogListener {
+    /**
+     * ゲームが追加された.
+     * @param game 追加されたゲーム情報
+     */
+    default void onAdded(Game game){
+    }
+
+    /**
+     * ゲーム情報が更新された.
+     * @param before 更新前のゲーム情報
+     * @param after 更新後のゲーム情報
+     */
+    default void onUpdated(Game before, Game after){
+    }
+
+    /**
+     * ゲームが削除された.
+     * @param game 削除されたゲーム情報
+     */
+    default void onRemoved(Game game){
+    }
+}
@@ -0,0 +1,132 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info;
+
+import java.util.Objects;
+
+/**
+ * 読み書きと検索の計測値を受け取る.
+ * <p>
+ *     計測値は{@link #setGlobal(CatalogMetrics)}で設定したインスタンスに通知される.
+ *     既定では何もしない{@link #NOOP}が設定されている.
+ *     通知は読み書きを行ったスレッドから行われるため,実装はスレッドセーフでなければならず,また速やかに戻らなければならない.
+ *     必要なメソッドのみを実装すればよい.
+ * </p>
+ * @see InMemoryMetrics
+ */
+public interface CatalogMetrics {
+    /**
+     * 読み書きの処理段階.
+     * 1回の読み出しや書き込みごとに,各段階の合計時間が1回ずつ通知される.
+     */
+    enum Phase {
+        /**
+         * ファイルの読み出し,またはメモリマップ.
+         */
+        READ,
+        /**
+         * JSONの字句解析.
+         */
+        PARSE,
+        /**
+         * JSONの値からゲーム情報を作る処理.
+         */
+        CONSTRUCT,
+        /**
+         * {@link GameCatalog}の索引の作成.
+         */
+        INDEX,
+        /**
+         * ゲーム情報からJSONの値を作る処理.
+         */
+        SERIALIZE,
+        /**
+         * ファイルへの書き込み.
+         */
+        WRITE
+    }
+
+    /**
+     * 何もしないインスタンス.
+     */
+    CatalogMetrics NOOP = new CatalogMetrics() {};
+
+    /**
+     * 処理段階の所要時間を受け取る.
+     * @param phase 処理段階
+     * @param nanos 所要時間(ナノ秒)
+     */
+    default void recordPhase(Phase phase, long nanos){
+    }
+
+    /**
+     * 1回の読み出しで作ったゲーム情報の件数を受け取る.
+     * @param count 件数
+     */
+    default void recordDocumentsRead(int count){
+    }
+
+    /**
+     * 1回の書き込みで書き出したゲーム情報の件数を受け取る.
+     * @param count 件数
+     */
+    default void recordDocumentsWritten(int count){
+    }
+
+    /**
+     * 読み出したバイト数を受け取る.
+     * @param bytes バイト数
+     */
+    default void recordBytesRead(long bytes){
+    }
+
+    /**
+     * 書き込んだバイト数を受け取る.
+     * @param bytes バイト数
+     */
+    default void recordBytesWritten(long bytes){
+    }
+
+    /**
+     * 不正なフィールドが見つかったことを受け取る.
+     * @param field 不正なフィールド
+     */
+    default void recordValidationFailure(Field field){
+    }
+
+    /**
+     * {@link Game#query(java.util.EnumSet, Appendable)}の1回の所要時間を受け取る.
+     * 他のqueryメソッドもこのメソッドを経由する.
+     * @param nanos 所要時間(ナノ秒)
+     */
+    default void recordQuery(long nanos){
+    }
+
+    /**
+     * @return 現在設定されているインスタンス
+     */
+    static CatalogMetrics global(){
+        return MetricsRegistry.current;
+    }
+
+    /**
+     * 計測値を通知するインスタンスを設定する.
+     * @param metrics 新しいインスタンス.計測をやめるときは{@link #NOOP}.
+     */
+    static void setGlobal(CatalogMetrics metrics){
+        MetricsRegistry.current = Objects.requireNonNull(metrics);
+    }
+}
@@ -0,0 +1,392 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * 2つのゲーム情報の集合の差分.
+ * <p>
+ *     {@link #diff(Collection, Collection)}で作成し,{@link #writeTo(OutputStream)}でJSONとして書き出して配布する.
+ *     配布先では{@link #readFrom(InputStream)}で読み出し,{@link #apply(Collection)}で手元のゲーム情報に適用する.
+ *     更新されたゲームは変更されたフィールドの値のみを持つため,差分の大きさはカタログ全体ではなく変更の量に比例する.
+ * </p>
+ * <p>
+ *     ゲームはUUIDで対応付ける.UUIDが設定されていないゲームは対応付けられないため,差分に含まれない.
+ *     インスタンスは作成後に変更されない.
+ * </p>
+ */
+public final class CatalogPatch {
+    private static final int VERSION = 1;
+    private static final Field[] FIELDS = Field.values();
+
+    private final List<JSONObject> added;
+    private final List<UUID> removed;
+    private final Map<UUID, Change> changed;
+
+    /**
+     * 1つのゲームで変更されたフィールド.
+     */
+    private static final class Change {
+        /**
+         * 新しい値が設定されたフィールド.キーと値の形式は{@link Game#toJSON()}と同じ.
+         */
+        final JSONObject set;
+
+        /**
+         * 値が無くなったフィールド.
+         */
+        final EnumSet<Field> unset;
+
+        Change(JSONObject set, EnumSet<Field> unset){
+            this.set = set;
+            this.unset = unset;
+        }
+
+        EnumSet<Field> fields(){
+            final EnumSet<Field> fields = EnumSet.copyOf(unset);
+            for (final String key : set.keySet()){
+                fields.add(fieldOf(key));
+            }
+            return fields;
+        }
+    }
+
+    private CatalogPatch(List<JSONObject> added, List<UUID> removed, Map<UUID, Change> changed){
+        this.added = added;
+        this.removed = removed;
+        this.changed = changed;
+    }
+
+    /**
+     * 2つのゲーム情報の集合を比べ,{@code base}を{@code target}にする差分を作る.
+     * <p>
+     *     両方に含まれるゲームは,最終更新日時が両方に設定されていて等しいとき変更されていないとみなし,フィールドを比べない.
+     *     それ以外のときはフィールドごとに比べ,値が異なるフィールドのみを差分に含める.
+     * </p>
+     * @param base 配布先が持っているゲーム情報
+     * @param target 配布したいゲーム情報
+     * @return 作成した差分
+     * @throws IllegalArgumentException どちらかの集合でUUIDが重複している
+     */
+    public static CatalogPatch diff(Collection<? extends Game> base, Collection<? extends Game> target)
+            throws IllegalArgumentException {
+        final Map<UUID, Game> baseIndex = indexByUUID(base);
+        final Map<UUID, Game> targetIndex = indexByUUID(target);
+
+        final List<JSONObject> added = new ArrayList<>();
+        final Map<UUID, Change> changed = new LinkedHashMap<>();
+        for (final Game after : targetIndex.values()){
+            final Game before = baseIndex.get(after.getUUID());
+            if(before == null){
+                added.add(toJSON(after));
+                continue;
+            }
+
+            if(before.getLastMod() != null && before.getLastMod().equals(after.getLastMod()))continue;
+
+            final EnumSet<Field> differences = before.differingFields(after);
+            if(differences.isEmpty())continue;
+
+            final JSONObject json = toJSON(after);
+            final JSONObject set = new JSONObject();
+            final EnumSet<Field> unset = EnumSet.noneOf(Field.class);
+            for (final Field field : differences){
+                final Object value = json.opt(field.toString());
+                if(value != null){
+                    set.put(field.toString(), value);
+                }else {
+                    unset.add(field);
+                }
+            }
+            changed.put(after.getUUID(), new Change(set, unset));
+        }
+
+        final List<UUID> removed = new ArrayList<>();
+        for (final UUID uuid : baseIndex.keySet()){
+            if(!targetIndex.containsKey(uuid))removed.add(uuid);
+        }
+
+        return new CatalogPatch(added, removed, changed);
+    }
+
+    /**
+     * 2つのカタログを比べ,{@code base}を{@code target}にする差分を作る.
+     * @see #diff(Collection, Collection)
+     */
+    public static CatalogPatch diff(GameCatalog base, GameCatalog target){
+        return diff(base.getGameList(), target.getGameList());
+    }
+
+    private static Map<UUID, Game> indexByUUID(Collection<? extends Game> games) throws IllegalArgumentException {
+        final Map<UUID, Game> index = new LinkedHashMap<>();
+        for (final Game game : games){
+            final UUID uuid = game.getUUID();
+            if(uuid != null && index.putIfAbsent(uuid, game) != null){
+                throw new IllegalArgumentException("UUID " + uuid + " is duplicated.");
+            }
+        }
+        return index;
+    }
+
+    /**
+     * 手元のゲーム情報に差分を適用した一覧を作る.引数の一覧は変更しない.
+     * <p>
+     *     手元の順序を保ち,追加されたゲームは末尾に並ぶ.手元に既にある追加分は,その位置で置き換える.
+     *     手元に無いゲームの削除は無視する.
+     * </p>
+     * @param games 手元のゲーム情報
+     * @return 差分を適用したゲーム情報の一覧
+     * @throws IllegalArgumentException 更新するゲームが手元に無い,または適用後のゲーム情報に不正なフィールドがある
+     */
+    public List<Game> apply(Collection<? extends Game> games) throws IllegalArgumentException {
+        final Map<UUID, Game> replacements = new HashMap<>();
+        for (final JSONObject json : added){
+            final GameSnapshot snapshot = decode(json);
+            replacements.put(snapshot.getUUID(), snapshot);
+        }
+
+        final Set<UUID> found = new HashSet<>();
+        for (final Game game : games){
+            final UUID uuid = game.getUUID();
+            if(uuid == null)continue;
+
+            final Change change = changed.get(uuid);
+            if(change == null)continue;
+
+            final JSONObject json = toJSON(game);
+            for (final Field field : change.unset){
+                json.remove(field.toString());
+            }
+            for (final String key : change.set.keySet()){
+                json.put(key, change.set.get(key));
+            }
+            replacements.put(uuid, decode(json));
+            found.add(uuid);
+        }
+        if(found.size() != changed.size()){
+            throw new IllegalArgumentException("The patch updates games which do not exist in the catalog.");
+        }
+
+        final Set<UUID> removedSet = new HashSet<>(removed);
+        final List<Game> result = new ArrayList<>(games.size() + added.size());
+        for (final Game game : games){
+            final UUID uuid = game.getUUID();
+            if(uuid == null){
+                result.add(game);
+                continue;
+            }
+            if(removedSet.contains(uuid))continue;
+
+            final Game replacement = replacements.remove(uuid);
+            result.add(replacement != null ? replacement : game);
+        }
+
+        // 手元で置き換えなかった追加分を,差分内の順序で末尾に加える
+        for (final JSONObject json : added){
+            final Game replacement = replacements.remove(UUID.fromString(json.getString("UUID")));
+            if(replacement != null)result.add(replacement);
+        }
+        return result;
+    }
+
+    /**
+     * カタログに差分を適用した新しいカタログを作る.
+     * @throws IllegalArgumentException 更新するゲームがカタログに無い,または適用後に作品番号が重複している
+     * @see #apply(Collection)
+     */
+    public GameCatalog apply(GameCatalog catalog) throws IllegalArgumentException {
+        return new GameCatalog(apply(catalog.getGameList()));
+    }
+
+    /**
+     * {@link CatalogHolder}のカタログに差分を適用して差し替える.
+     * @return 新しいカタログ
+     * @throws IllegalArgumentException 更新するゲームがカタログに無い,または適用後に作品番号が重複している
+     * @see #apply(Collection)
+     */
+    public GameCatalog apply(CatalogHolder holder) throws IllegalArgumentException {
+        return holder.update(this::apply);
+    }
+
+    /**
+     * @return 追加,削除,更新のいずれも無いとき {@code true}.
+     */
+    public boolean isEmpty(){
+        return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+    }
+
+    /**
+     * @return 追加されたゲーム情報の一覧
+     */
+    public List<Game> getAdded(){
+        final List<Game> games = new ArrayList<>(added.size());
+        for (final JSONObject json : added){
+            games.add(decode(json));
+        }
+        return Collections.unmodifiableList(games);
+    }
+
+    /**
+     * @return 削除されたゲームのUUIDの一覧
+     */
+    public List<UUID> getRemoved(){
+        return Collections.unmodifiableList(removed);
+    }
+
+    /**
+     * @return 更新されたゲームのUUIDと,そのゲームで変更されたフィールドの対応
+     */
+    public Map<UUID, Set<Field>> getChangedFields(){
+        final Map<UUID, Set<Field>> fields = new LinkedHashMap<>();
+        changed.forEach((uuid, change) -> fields.put(uuid, Collections.unmodifiableSet(change.fields())));
+        return Collections.unmodifiableMap(fields);
+    }
+
+    /**
+     * 差分をUTF-8のJSONとして書き出す.ストリームは閉じない.
+     * @param out 書き出し先
+     * @throws IOException 書き込みに失敗した
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        final JSONArray changes = new JSONArray();
+        changed.forEach((uuid, change) -> {
+            final JSONArray unset = new JSONArray();
+            change.unset.forEach(field -> unset.put(field.toString()));
+            changes.put(new JSONObject()
+                    .put("UUID", uuid.toString())
+                    .put("set", change.set)
+                    .put("unset", unset));
+        });
+
+        final JSONArray removedArray = new JSONArray();
+        removed.forEach(uuid -> removedArray.put(uuid.toString()));
+
+        final JSONObject root = new JSONObject()
+                .put("version", VERSION)
+                .put("added", new JSONArray(added))
+                .put("removed", removedArray)
+                .put("changed", changes);
+
+        final Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        root.write(writer);
+        writer.flush();
+    }
+
+    /**
+     * {@link #writeTo(OutputStream)}で書き出した差分を読み出す.ストリームは閉じない.
+     * @param in 読み出し元
+     * @return 読み出した差分
+     * @throws IOException 読み出しに失敗した,または差分の形式が不正である
+     */
+    public static CatalogPatch readFrom(InputStream in) throws IOException {
+        try {
+            final JSONObject root = new JSONObject(new JSONTokener(new InputStreamReader(in, StandardCharsets.UTF_8)));
+            if(root.optInt("version") != VERSION)throw new IOException("Unsupported patch version : " + root.opt("version"));
+
+            final List<JSONObject> added = new ArrayList<>();
+            for (final Object unchecked : root.getJSONArray("added")){
+                final JSONObject json = (JSONObject) unchecked;
+                UUID.fromString(json.getString("UUID"));
+                decode(json);
+                added.add(json);
+            }
+
+            final List<UUID> removed = new ArrayList<>();
+            for (final Object unchecked : root.getJSONArray("removed")){
+                removed.add(UUID.fromString((String) unchecked));
+            }
+
+            final Map<UUID, Change> changed = new LinkedHashMap<>();
+            for (final Object unchecked : root.getJSONArray("changed")){
+                final JSONObject json = (JSONObject) unchecked;
+                final JSONObject set = json.getJSONObject("set");
+                for (final String key : set.keySet()){
+                    // UUIDを書き換えると,更新対象と異なるゲームとして扱われてしまう
+                    if(fieldOf(key) == Field.UUID)throw new IllegalArgumentException("\"UUID\" cannot be changed.");
+                }
+                final EnumSet<Field> unset = EnumSet.noneOf(Field.class);
+                for (final Object field : json.getJSONArray("unset")){
+                    unset.add(fieldOf((String) field));
+                }
+                changed.put(UUID.fromString(json.getString("UUID")), new Change(set, unset));
+            }
+
+            return new CatalogPatch(added, removed, changed);
+        }catch (JSONException | ClassCastException | IllegalArgumentException ex){
+            throw new IOException("Malformed catalog patch.", ex);
+        }
+    }
+
+    /**
+     * 値が全て文字列か数値のJSONオブジェクトを作る.{@link Game#toJSON()}はパスなどをそのまま保持するため,
+     * {@link GameDocument}の作成や値の比較に使えない.
+     */
+    private static JSONObject toJSON(Game game){
+        final StringBuilder json = new StringBuilder();
+        try {
+            game.appendJSON(json);
+        }catch (IOException ex){
+            throw new UncheckedIOException(ex);
+        }
+        return new JSONObject(json.toString());
+    }
+
+    /**
+     * 差分に含まれるゲーム情報を,不正なフィールドを読み飛ばさずに変換する.
+     * @throws IllegalArgumentException 不正なフィールドがある
+     */
+    private static GameSnapshot decode(JSONObject json) throws IllegalArgumentException {
+        try {
+            return GameSnapshot.of(new GameDocument(json, ValidationReport.failFast(), -1, null));
+        }catch (IllegalArgumentException ex){
+            throw new IllegalArgumentException("Malformed game in the catalog patch : " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException 対応する{@link Field}が無い
+     */
+    private static Field fieldOf(String key) throws IllegalArgumentException {
+        for (final Field field : FIELDS){
+            if(field.toString().equals(key))return field;
+        }
+        throw new IllegalArgumentException("Unknown field : " + key);
+    }
+}
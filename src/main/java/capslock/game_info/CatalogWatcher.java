@@ -0,0 +1,455 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info;
+
+import org.json.JSONException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * JSONファイルとシグネチャファイルの変更を監視し,{@link CatalogHolder}のカタログに反映する.
+ * <p>
+ *     短時間に続けて発生した変更は{@code debounceMillis}の間まとめてから処理する.
+ *     変更が途切れずに続いても,最初の変更から{@code maxDebounceMillis}が経てば処理する.
+ *     JSONファイルが変更されたときはJSONファイルを読み直し,シグネチャファイルが変更されたときはそのファイルのみを読み直す.
+ *     どちらの場合も内容が変わったゲームのみをカタログに反映し,{@link CatalogListener}に通知する.
+ *     JSONファイルとシグネチャファイルの両方にあるゲームは,両方から消えたときにのみカタログから取り除く.
+ * </p>
+ * <p>
+ *     監視は{@link #start()}で開始し,{@link #close()}で終了する.通知は監視用のスレッドから行われる.
+ * </p>
+ */
+public final class CatalogWatcher implements Closeable {
+    /**
+     * 変更をまとめる時間の既定値.
+     */
+    public static final long DEFAULT_DEBOUNCE_MILLIS = 200;
+
+    /**
+     * 変更をまとめる時間の上限の既定値.
+     */
+    public static final long DEFAULT_MAX_DEBOUNCE_MILLIS = 2000;
+
+    private final CatalogHolder holder;
+    private final Path dbFile;
+    private final Path gamesRoot;
+    private final String signatureFileName;
+    private final long debounceMillis;
+    private final long maxDebounceMillis;
+
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+    private final List<CatalogListener> listeners = new CopyOnWriteArrayList<>();
+    private final Thread thread;
+
+    // 以下は監視用のスレッドのみが扱う.カタログへの反映に成功したときのみ更新する
+    private Set<UUID> dbUUIDs = new HashSet<>();
+    private Map<Path, UUID> signatureUUIDs = new HashMap<>();
+    private boolean isRescanPending = false;
+
+    /**
+     * 既定の設定でインスタンスを作る.
+     * @param holder 変更を反映する{@link CatalogHolder}
+     * @param dbFile 監視するJSONファイル. {@code null}のときは監視しない.
+     * @param gamesRoot 監視するゲームのフォルダを並べたディレクトリ. {@code null}のときは監視しない.
+     * @throws IOException 監視を準備できなかった
+     */
+    public CatalogWatcher(CatalogHolder holder, Path dbFile, Path gamesRoot) throws IOException {
+        this(holder, dbFile, gamesRoot, SignatureScanner.DEFAULT_FILE_NAME, DEFAULT_DEBOUNCE_MILLIS);
+    }
+
+    /**
+     * 変更をまとめる時間の上限は{@link #DEFAULT_MAX_DEBOUNCE_MILLIS}と{@code debounceMillis}の大きい方を使う.
+     * @param holder 変更を反映する{@link CatalogHolder}
+     * @param dbFile 監視するJSONファイル. {@code null}のときは監視しない.
+     * @param gamesRoot 監視するゲームのフォルダを並べたディレクトリ. {@code null}のときは監視しない.
+     * @param signatureFileName シグネチャファイルのファイル名
+     * @param debounceMillis 変更をまとめる時間
+     * @throws IOException 監視を準備できなかった
+     */
+    public CatalogWatcher(CatalogHolder holder, Path dbFile, Path gamesRoot, String signatureFileName, long debounceMillis)
+            throws IOException {
+        this(holder, dbFile, gamesRoot, signatureFileName,
+                debounceMillis, Math.max(DEFAULT_MAX_DEBOUNCE_MILLIS, debounceMillis));
+    }
+
+    /**
+     * @param holder 変更を反映する{@link CatalogHolder}
+     * @param dbFile 監視するJSONファイル. {@code null}のときは監視しない.
+     * @param gamesRoot 監視するゲームのフォルダを並べたディレクトリ. {@code null}のときは監視しない.
+     * @param signatureFileName シグネチャファイルのファイル名
+     * @param debounceMillis 変更をまとめる時間
+     * @param maxDebounceMillis 変更が続くときに,最初の変更から処理するまで待つ時間の上限
+     * @throws IOException 監視を準備できなかった
+     */
+    public CatalogWatcher(CatalogHolder holder, Path dbFile, Path gamesRoot, String signatureFileName,
+                          long debounceMillis, long maxDebounceMillis) throws IOException {
+        if(dbFile == null && gamesRoot == null)throw new IllegalArgumentException("Nothing to watch.");
+        if(maxDebounceMillis < debounceMillis){
+            throw new IllegalArgumentException("maxDebounceMillis must not be less than debounceMillis.");
+        }
+
+        this.holder = holder;
+        this.dbFile = dbFile != null ? dbFile.toAbsolutePath().normalize() : null;
+        this.gamesRoot = gamesRoot != null ? gamesRoot.toAbsolutePath().normalize() : null;
+        this.signatureFileName = signatureFileName;
+        this.debounceMillis = debounceMillis;
+        this.maxDebounceMillis = maxDebounceMillis;
+
+        final Path anyWatched = this.dbFile != null ? this.dbFile : this.gamesRoot;
+        watchService = anyWatched.getFileSystem().newWatchService();
+
+        thread = new Thread(this::watchLoop, "CatalogWatcher");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * @param listener 変更の通知を受け取る{@link CatalogListener}
+     */
+    public void addListener(CatalogListener listener){
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listener 通知を止める{@link CatalogListener}
+     */
+    public void removeListener(CatalogListener listener){
+        listeners.remove(listener);
+    }
+
+    /**
+     * 監視を開始する.開始時点のファイルの内容がカタログに反映される.
+     * @throws IOException 監視対象のディレクトリを登録できなかった
+     */
+    public void start() throws IOException {
+        if(dbFile != null)register(dbFile.getParent());
+        if(gamesRoot != null)registerTree(gamesRoot);
+
+        final Changes changes = new Changes();
+        if(dbFile != null)reloadDatabase(changes);
+        if(gamesRoot != null)rescanSignatures(changes);
+        apply(changes);
+        commit(changes);
+
+        thread.start();
+    }
+
+    /**
+     * 監視を終了する.
+     * @throws IOException 監視を終了できなかった
+     */
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+    private void register(Path directory) throws IOException {
+        final WatchKey key = directory.register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+        synchronized (watchedDirectories){
+            watchedDirectories.put(key, directory);
+        }
+    }
+
+    /**
+     * ゲームのフォルダをシグネチャファイルを探索する深さまで登録する.
+     */
+    private void registerTree(Path directory) throws IOException {
+        final int depthFromRoot = directory.equals(gamesRoot) ? 0 : gamesRoot.relativize(directory).getNameCount();
+        final int remainingDepth = SignatureScanner.DEFAULT_MAX_DEPTH + 1 - depthFromRoot;
+        if(remainingDepth > 0)registerDirectories(directory, remainingDepth);
+    }
+
+    private void registerDirectories(Path directory, int depth) throws IOException {
+        try(final Stream<Path> stream = Files.walk(directory, depth - 1)){
+            for (final Path path : stream.filter(Files::isDirectory).collect(Collectors.toList())){
+                register(path);
+            }
+        }catch (UncheckedIOException ex){
+            throw ex.getCause();
+        }
+    }
+
+    private void watchLoop(){
+        try {
+            while (true){
+                final Set<Path> changedPaths = new HashSet<>();
+                boolean isOverflowed = collect(watchService.take(), changedPaths);
+
+                // 変更が途切れずに続いても反映が遅れ続けないよう,最初の変更から一定時間で打ち切る
+                final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDebounceMillis);
+                long remaining;
+                WatchKey next;
+                while ((remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())) > 0
+                        && (next = watchService.poll(Math.min(debounceMillis, remaining), TimeUnit.MILLISECONDS)) != null){
+                    isOverflowed |= collect(next, changedPaths);
+                }
+
+                try {
+                    // 前回の反映に失敗したときは,取りこぼした変更を拾うため全体を読み直す
+                    process(changedPaths, isOverflowed || isRescanPending);
+                    isRescanPending = false;
+                }catch (RuntimeException ex){
+                    System.err.println("Failed to reload the catalog. Everything is reloaded on the next change : " + ex);
+                    isRescanPending = true;
+                }
+            }
+        }catch (InterruptedException | ClosedWatchServiceException ex){
+            // 監視の終了
+        }
+    }
+
+    /**
+     * 1つの{@link WatchKey}に溜まったイベントを集める.
+     * @return イベントの取りこぼしが発生したとき {@code true}.
+     */
+    private boolean collect(WatchKey key, Set<Path> changedPaths){
+        final Path directory;
+        synchronized (watchedDirectories){
+            directory = watchedDirectories.get(key);
+        }
+
+        boolean isOverflowed = false;
+        for (final WatchEvent<?> event : key.pollEvents()){
+            if(event.kind() == StandardWatchEventKinds.OVERFLOW || directory == null){
+                isOverflowed = true;
+                continue;
+            }
+
+            final Path path = directory.resolve((Path) event.context());
+            changedPaths.add(path);
+
+            if(event.kind() == StandardWatchEventKinds.ENTRY_CREATE && gamesRoot != null
+                    && path.startsWith(gamesRoot) && Files.isDirectory(path)){
+                // 新しいフォルダ内のファイルは登録前に作られているかもしれないので,探索して変更として扱う
+                try {
+                    registerTree(path);
+                    try(final Stream<Path> stream = Files.walk(path, SignatureScanner.DEFAULT_MAX_DEPTH)){
+                        stream.filter(this::isSignatureFile).forEach(changedPaths::add);
+                    }
+                }catch (IOException | UncheckedIOException ex){
+                    isOverflowed = true;
+                }
+            }
+        }
+
+        if(!key.reset()){
+            synchronized (watchedDirectories){
+                watchedDirectories.remove(key);
+            }
+        }
+        return isOverflowed;
+    }
+
+    private boolean isSignatureFile(Path path){
+        return gamesRoot != null && path.startsWith(gamesRoot) && path.getFileName().toString().equals(signatureFileName);
+    }
+
+    private void process(Set<Path> changedPaths, boolean isOverflowed){
+        final Changes changes = new Changes();
+
+        if(isOverflowed){
+            if(dbFile != null)reloadDatabase(changes);
+            if(gamesRoot != null)rescanSignatures(changes);
+        }else {
+            for (final Path path : changedPaths){
+                if(path.equals(dbFile)){
+                    reloadDatabase(changes);
+                }else if(isSignatureFile(path)){
+                    reloadSignature(path, changes);
+                }else if(gamesRoot != null && path.startsWith(gamesRoot) && !Files.exists(path)){
+                    // ゲームのフォルダごと削除された
+                    final Iterator<Map.Entry<Path, UUID>> iterator = changes.signatureUUIDs.entrySet().iterator();
+                    while (iterator.hasNext()){
+                        final Map.Entry<Path, UUID> entry = iterator.next();
+                        if(entry.getKey().startsWith(path)){
+                            iterator.remove();
+                            changes.removeIfUnprovided(entry.getValue());
+                        }
+                    }
+                }
+            }
+        }
+
+        apply(changes);
+        commit(changes);
+    }
+
+    /**
+     * カタログへの反映に成功した変更の読み出し状態を確定する.
+     */
+    private void commit(Changes changes){
+        dbUUIDs = changes.dbUUIDs;
+        signatureUUIDs = changes.signatureUUIDs;
+    }
+
+    private void reloadDatabase(Changes changes){
+        final Set<UUID> newUUIDs = new HashSet<>();
+        if(Files.exists(dbFile)){
+            try {
+                for (final GameDocument document : new JSONDBReader(dbFile).getDocumentList()){
+                    if(document.uuid == null)continue;
+                    newUUIDs.add(document.uuid);
+                    changes.upsert(document);
+                }
+            }catch (IOException | JSONException ex){
+                // 書き込み途中のファイルを読んだ可能性がある.次の変更通知で読み直す
+                System.err.println("Failed to read from " + dbFile);
+                return;
+            }
+        }
+
+        final Set<UUID> oldUUIDs = changes.dbUUIDs;
+        changes.dbUUIDs = newUUIDs;
+        for (final UUID uuid : oldUUIDs){
+            changes.removeIfUnprovided(uuid);
+        }
+    }
+
+    private void rescanSignatures(Changes changes){
+        final Set<Path> found;
+        try(final Stream<Path> stream = Files.walk(gamesRoot, SignatureScanner.DEFAULT_MAX_DEPTH + 1)){
+            found = stream.filter(this::isSignatureFile).collect(Collectors.toSet());
+        }catch (IOException | UncheckedIOException ex){
+            System.err.println("Failed to list " + gamesRoot);
+            return;
+        }
+
+        for (final Path path : new ArrayList<>(changes.signatureUUIDs.keySet())){
+            if(!found.contains(path))reloadSignature(path, changes);
+        }
+        for (final Path path : found){
+            reloadSignature(path, changes);
+        }
+    }
+
+    private void reloadSignature(Path path, Changes changes){
+        if(!Files.exists(path)){
+            final UUID removed = changes.signatureUUIDs.remove(path);
+            if(removed != null)changes.removeIfUnprovided(removed);
+            return;
+        }
+
+        final GameDocument document;
+        try {
+            document = Signature.parseSignature(path, ValidationReport.printing());
+        }catch (IOException | JSONException ex){
+            System.err.println("Failed to read from " + path);
+            return;
+        }
+        if(document.uuid == null)return;
+
+        final UUID previous = changes.signatureUUIDs.put(path, document.uuid);
+        if(previous != null && !previous.equals(document.uuid))changes.removeIfUnprovided(previous);
+        changes.upsert(document);
+    }
+
+    /**
+     * 1回の処理でカタログに反映する変更と,反映に成功したときに確定する読み出し状態.
+     */
+    private final class Changes {
+        final Map<UUID, GameSnapshot> upserts = new LinkedHashMap<>();
+        final Set<UUID> removals = new HashSet<>();
+        Set<UUID> dbUUIDs = CatalogWatcher.this.dbUUIDs;
+        final Map<Path, UUID> signatureUUIDs = new HashMap<>(CatalogWatcher.this.signatureUUIDs);
+
+        void upsert(Game game){
+            removals.remove(game.getUUID());
+            upserts.put(game.getUUID(), GameSnapshot.of(game));
+        }
+
+        void remove(UUID uuid){
+            if(!upserts.containsKey(uuid))removals.add(uuid);
+        }
+
+        /**
+         * JSONファイルとシグネチャファイルのどちらからも提供されなくなったゲームのみを取り除く.
+         */
+        void removeIfUnprovided(UUID uuid){
+            if(!dbUUIDs.contains(uuid) && !signatureUUIDs.containsValue(uuid))remove(uuid);
+        }
+
+        boolean isEmpty(){
+            return upserts.isEmpty() && removals.isEmpty();
+        }
+    }
+
+    private void apply(Changes changes){
+        if(changes.isEmpty())return;
+
+        final List<Runnable> notifications = new ArrayList<>();
+        holder.update(games -> {
+            notifications.clear();
+            final Map<UUID, GameSnapshot> pending = new LinkedHashMap<>(changes.upserts);
+            final List<Game> updated = new ArrayList<>(games.size() + pending.size());
+
+            for (final Game existing : games){
+                final UUID uuid = existing.getUUID();
+                if(uuid != null && changes.removals.contains(uuid)){
+                    notifications.add(() -> listeners.forEach(listener -> listener.onRemoved(existing)));
+                    continue;
+                }
+
+                final GameSnapshot replacement = uuid != null ? pending.remove(uuid) : null;
+                if(replacement == null || replacement.differingFields(existing).isEmpty()){
+                    updated.add(existing);
+                }else {
+                    updated.add(replacement);
+                    notifications.add(() -> listeners.forEach(listener -> listener.onUpdated(existing, replacement)));
+                }
+            }
+
+            for (final GameSnapshot added : pending.values()){
+                updated.add(added);
+                notifications.add(() -> listeners.forEach(listener -> listener.onAdded(added)));
+            }
+            return updated;
+        });
+
+        for (final Runnable notification : notifications){
+            try {
+                notification.run();
+            }catch (RuntimeException ex){
+                // カタログは更新済みなので,他のリスナーへの通知を続ける
+                System.err.println("A catalog listener failed : " + ex);
+            }
+        }
+    }
+}
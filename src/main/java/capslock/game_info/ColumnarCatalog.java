@@ -0,0 +1,510 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * ゲーム情報を列ごとのプリミティブ配列とヒープ外の領域に格納したカタログ.
+ * <p>
+ *     UUIDは上位と下位の2つのlong列,作品番号はint列,最終更新日時は秒のlong列とナノ秒のint列に格納する.
+ *     文字列とパスはUTF-8にエンコードしてヒープ外の1つの領域に並べ,各列にはその位置のみを格納する.
+ *     このためゲームの件数に関わらずヒープ上のオブジェクトの数は一定であり,GCの負荷が小さい.
+ * </p>
+ * <p>
+ *     {@link #get(int)}などが返す{@link Game}は行番号を持つビューであり,各フィールドは最初に参照されたときにデコードされ,ビューに保持される.
+ *     最終更新日時と作品番号による検索は,ビューを作らずに列を走査または索引を引いて行う.
+ *     インスタンスは作成後に変更されず,複数のスレッドから同時に参照してよい.
+ * </p>
+ */
+public final class ColumnarCatalog {
+    private static final int HAS_UUID = 1;
+    private static final int HAS_LAST_MOD = 1 << 1;
+    private static final int INITIAL_ARENA_BYTES = 1 << 20;
+
+    /**
+     * 文字列またはリストが無いことを表す位置.
+     */
+    private static final int NONE = -1;
+
+    private final int size;
+    private final byte[] flags;
+    private final long[] uuidMost;
+    private final long[] uuidLeast;
+    private final int[] gameIDs;
+    private final long[] lastModSeconds;
+    private final int[] lastModNanos;
+    private final int[] exeOffsets;
+    private final int[] nameOffsets;
+    private final int[] descOffsets;
+    private final int[] panelOffsets;
+    private final int[] imageListOffsets;
+    private final int[] movieListOffsets;
+
+    /**
+     * 文字列は長さと,それに続くUTF-8のバイト列.リストは要素数と,それに続く各要素の文字列の位置.
+     */
+    private final ByteBuffer arena;
+
+    // 開番地法のハッシュ表.値は行番号+1で,0は空きを表す
+    private final int[] uuidTable;
+    private final int[] gameIDTable;
+
+    // 最終更新日時が設定された行を,最終更新日時の古い順に並べたもの.同じ日時の行は行番号の順
+    private final int[] lastModOrder;
+
+    /**
+     * ゲーム情報のコレクションからカタログを作成する.
+     * @param games 格納するゲーム情報.順序は{@link #asList()}で保たれる.
+     * @throws IllegalArgumentException UUIDまたは作品番号が重複している,または文字列の合計が大きすぎる
+     */
+    public ColumnarCatalog(Collection<? extends Game> games) throws IllegalArgumentException {
+        this(appendAll(new Builder(games.size()), games));
+    }
+
+    private ColumnarCatalog(Builder builder) throws IllegalArgumentException {
+        size = builder.size;
+        flags = Arrays.copyOf(builder.flags, size);
+        uuidMost = Arrays.copyOf(builder.uuidMost, size);
+        uuidLeast = Arrays.copyOf(builder.uuidLeast, size);
+        gameIDs = Arrays.copyOf(builder.gameIDs, size);
+        lastModSeconds = Arrays.copyOf(builder.lastModSeconds, size);
+        lastModNanos = Arrays.copyOf(builder.lastModNanos, size);
+        exeOffsets = Arrays.copyOf(builder.exeOffsets, size);
+        nameOffsets = Arrays.copyOf(builder.nameOffsets, size);
+        descOffsets = Arrays.copyOf(builder.descOffsets, size);
+        panelOffsets = Arrays.copyOf(builder.panelOffsets, size);
+        imageListOffsets = Arrays.copyOf(builder.imageListOffsets, size);
+        movieListOffsets = Arrays.copyOf(builder.movieListOffsets, size);
+
+        final ByteBuffer used = builder.arena.duplicate();
+        used.flip();
+        arena = ByteBuffer.allocateDirect(used.remaining()).put(used);
+        arena.flip();
+
+        uuidTable = new int[tableCapacityFor(size)];
+        gameIDTable = new int[tableCapacityFor(size)];
+        for (int row = 0; row < size; row++){
+            if((flags[row] & HAS_UUID) != 0 && !insert(uuidTable, row, uuidHash(uuidMost[row], uuidLeast[row]), true)){
+                throw new IllegalArgumentException("UUID " + new UUID(uuidMost[row], uuidLeast[row]) + " is duplicated.");
+            }
+            if(gameIDs[row] > 0 && !insert(gameIDTable, row, intHash(gameIDs[row]), false)){
+                throw new IllegalArgumentException("\"gameID\" field must be unique. But " + gameIDs[row] + " is duplicated.");
+            }
+        }
+
+        lastModOrder = sortByLastMod();
+    }
+
+    /**
+     * JSONファイルのゲーム情報を1件ずつ読み出して格納する.読み出した{@link GameDocument}は格納後すぐに不要になる.
+     * @param filePath JSONファイルのパス.gzip形式で圧縮されていてもよい.
+     * @return 作成したカタログ
+     * @throws IOException ファイルを読み出せなかった
+     * @throws IllegalArgumentException UUIDまたは作品番号が重複している,または文字列の合計が大きすぎる
+     */
+    public static ColumnarCatalog load(Path filePath) throws IOException, IllegalArgumentException {
+        final Builder builder = new Builder(16);
+        try(final Stream<GameDocument> stream = JSONDBReader.stream(filePath)){
+            stream.forEach(builder::add);
+        }
+        return new ColumnarCatalog(builder);
+    }
+
+    private static Builder appendAll(Builder builder, Collection<? extends Game> games){
+        for (final Game game : games){
+            builder.add(game);
+        }
+        return builder;
+    }
+
+    /**
+     * @return 格納しているゲームの件数
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * @return 文字列とパスを格納しているヒープ外の領域の大きさ
+     */
+    public long getArenaBytes(){
+        return arena.capacity();
+    }
+
+    /**
+     * 行番号に対応するゲームのビューを返す.
+     * @param row 0から始まる行番号
+     * @return 各フィールドを最初に参照されたときにデコードする{@link Game}
+     * @throws IndexOutOfBoundsException 行番号が範囲外である
+     */
+    public Game get(int row) throws IndexOutOfBoundsException {
+        if(row < 0 || row >= size)throw new IndexOutOfBoundsException("Row " + row + " is out of range.");
+        return new ColumnarGame(this, row);
+    }
+
+    /**
+     * 全てのゲームを作成時の順序で返す.要素のビューは{@link List#get(int)}のたびに作られる.
+     * @return 変更できないリスト
+     */
+    public List<Game> asList(){
+        return new GameList();
+    }
+
+    /**
+     * UUIDでゲームの行番号を検索する.
+     * @return 見つからなかったとき {@code -1}.
+     */
+    public int indexOf(UUID uuid){
+        if(uuid == null)return -1;
+
+        final long most = uuid.getMostSignificantBits();
+        final long least = uuid.getLeastSignificantBits();
+        final int mask = uuidTable.length - 1;
+        for (int slot = uuidHash(most, least) & mask; uuidTable[slot] != 0; slot = (slot + 1) & mask){
+            final int row = uuidTable[slot] - 1;
+            if(uuidMost[row] == most && uuidLeast[row] == least)return row;
+        }
+        return -1;
+    }
+
+    /**
+     * UUIDでゲームを検索する.
+     * @return 見つかったとき そのゲームのビュー, 見つからなかったとき {@code null}.
+     */
+    public Game getByUUID(UUID uuid){
+        final int row = indexOf(uuid);
+        return row >= 0 ? new ColumnarGame(this, row) : null;
+    }
+
+    /**
+     * 作品番号でゲームを検索する.
+     * @return 見つかったとき そのゲームのビュー, 見つからなかったとき {@code null}.
+     */
+    public Game getByGameID(int gameID){
+        if(gameID <= 0)return null;
+
+        final int mask = gameIDTable.length - 1;
+        for (int slot = intHash(gameID) & mask; gameIDTable[slot] != 0; slot = (slot + 1) & mask){
+            final int row = gameIDTable[slot] - 1;
+            if(gameIDs[row] == gameID)return new ColumnarGame(this, row);
+        }
+        return null;
+    }
+
+    /**
+     * 最終更新日時が指定した範囲にあるゲームを,最終更新日時の古い順に返す.
+     * 最終更新日時が設定されていないゲームは含まれない.
+     * @param from 範囲の開始(この日時を含む)
+     * @param to 範囲の終了(この日時を含まない)
+     * @return 該当するゲームのビューのリスト
+     */
+    public List<Game> getUpdatedBetween(Instant from, Instant to){
+        final int begin = lowerBound(from);
+        final int end = Math.max(begin, lowerBound(to));
+        final List<Game> result = new ArrayList<>(end - begin);
+        for (int i = begin; i < end; i++){
+            result.add(new ColumnarGame(this, lastModOrder[i]));
+        }
+        return result;
+    }
+
+    /**
+     * 最終更新日時が指定した日時以降のゲームを,最終更新日時の新しい順に返す.同じ日時のゲームは作成時の順序で返す.
+     * @param since この日時以降(この日時を含む)に更新されたゲームを返す
+     * @return 該当するゲームのビューのリスト
+     */
+    public List<Game> getUpdatedSince(Instant since){
+        final int begin = lowerBound(since);
+        final List<Game> result = new ArrayList<>(lastModOrder.length - begin);
+        int groupEnd = lastModOrder.length;
+        while (groupEnd > begin){
+            int groupBegin = groupEnd - 1;
+            while (groupBegin > begin && compareLastMod(lastModOrder[groupBegin - 1], lastModOrder[groupEnd - 1]) == 0){
+                groupBegin--;
+            }
+            for (int i = groupBegin; i < groupEnd; i++){
+                result.add(new ColumnarGame(this, lastModOrder[i]));
+            }
+            groupEnd = groupBegin;
+        }
+        return result;
+    }
+
+    UUID uuid(int row){
+        return (flags[row] & HAS_UUID) != 0 ? new UUID(uuidMost[row], uuidLeast[row]) : null;
+    }
+
+    int gameID(int row){
+        return gameIDs[row];
+    }
+
+    Instant lastMod(int row){
+        return (flags[row] & HAS_LAST_MOD) != 0 ? Instant.ofEpochSecond(lastModSeconds[row], lastModNanos[row]) : null;
+    }
+
+    String exe(int row){
+        return string(exeOffsets[row]);
+    }
+
+    String name(int row){
+        return string(nameOffsets[row]);
+    }
+
+    String desc(int row){
+        return string(descOffsets[row]);
+    }
+
+    String panel(int row){
+        return string(panelOffsets[row]);
+    }
+
+    List<Path> imageList(int row){
+        return pathList(imageListOffsets[row]);
+    }
+
+    List<Path> movieList(int row){
+        return pathList(movieListOffsets[row]);
+    }
+
+    private String string(int offset){
+        if(offset == NONE)return null;
+
+        final int length = arena.getInt(offset);
+        final byte[] bytes = new byte[length];
+        final ByteBuffer source = arena.duplicate();
+        source.position(offset + Integer.BYTES);
+        source.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private List<Path> pathList(int offset){
+        if(offset == NONE)return List.of();
+
+        final Path[] paths = new Path[arena.getInt(offset)];
+        for (int i = 0; i < paths.length; i++){
+            paths[i] = Paths.get(string(arena.getInt(offset + Integer.BYTES * (i + 1))));
+        }
+        return List.of(paths);
+    }
+
+    private int compareLastMod(int a, int b){
+        final int bySecond = Long.compare(lastModSeconds[a], lastModSeconds[b]);
+        return bySecond != 0 ? bySecond : Integer.compare(lastModNanos[a], lastModNanos[b]);
+    }
+
+    /**
+     * @return 最終更新日時が{@code instant}以降である最初の行の,{@code lastModOrder}内での位置
+     */
+    private int lowerBound(Instant instant){
+        final long seconds = instant.getEpochSecond();
+        final int nanos = instant.getNano();
+        int low = 0;
+        int high = lastModOrder.length;
+        while (low < high){
+            final int middle = (low + high) >>> 1;
+            final int row = lastModOrder[middle];
+            final boolean isBefore = lastModSeconds[row] < seconds
+                    || (lastModSeconds[row] == seconds && lastModNanos[row] < nanos);
+            if(isBefore){
+                low = middle + 1;
+            }else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int[] sortByLastMod(){
+        final List<Integer> rows = new ArrayList<>();
+        for (int row = 0; row < size; row++){
+            if((flags[row] & HAS_LAST_MOD) != 0)rows.add(row);
+        }
+        // 安定なソートのため,同じ日時の行は行番号の順に残る
+        rows.sort(this::compareLastMod);
+        return rows.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * @return 重複していたとき {@code false}.
+     */
+    private boolean insert(int[] table, int row, int hash, boolean isUUID){
+        final int mask = table.length - 1;
+        int slot = hash & mask;
+        while (table[slot] != 0){
+            final int other = table[slot] - 1;
+            final boolean isDuplicated = isUUID
+                    ? uuidMost[other] == uuidMost[row] && uuidLeast[other] == uuidLeast[row]
+                    : gameIDs[other] == gameIDs[row];
+            if(isDuplicated)return false;
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = row + 1;
+        return true;
+    }
+
+    /**
+     * @return 件数の2倍以上の2の冪
+     */
+    private static int tableCapacityFor(int size){
+        return Integer.highestOneBit(Math.max(size, 1) * 2 - 1) << 1;
+    }
+
+    private static int uuidHash(long most, long least){
+        return intHash(Long.hashCode(most * 31 + least));
+    }
+
+    private static int intHash(int value){
+        final int hash = value * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private final class GameList extends AbstractList<Game> implements RandomAccess {
+        @Override
+        public Game get(int index) {
+            return ColumnarCatalog.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * 列を伸ばしながら1件ずつ格納する.
+     * 文字列の領域はヒープ上で伸ばし,カタログの作成時に使った分だけを1度だけヒープ外へ複写する.
+     * ヒープ外の領域を倍々に確保し直すと,GCまで解放されない古い領域が積み重なるためである.
+     */
+    private static final class Builder {
+        int size = 0;
+        byte[] flags;
+        long[] uuidMost;
+        long[] uuidLeast;
+        int[] gameIDs;
+        long[] lastModSeconds;
+        int[] lastModNanos;
+        int[] exeOffsets;
+        int[] nameOffsets;
+        int[] descOffsets;
+        int[] panelOffsets;
+        int[] imageListOffsets;
+        int[] movieListOffsets;
+        ByteBuffer arena;
+
+        Builder(int capacity){
+            allocate(Math.max(capacity, 1));
+            arena = ByteBuffer.allocate(INITIAL_ARENA_BYTES);
+        }
+
+        void add(Game game){
+            if(size == flags.length)allocate(size * 2);
+
+            final UUID uuid = game.getUUID();
+            final Instant lastMod = game.getLastMod();
+            flags[size] = (byte) ((uuid != null ? HAS_UUID : 0) | (lastMod != null ? HAS_LAST_MOD : 0));
+            if(uuid != null){
+                uuidMost[size] = uuid.getMostSignificantBits();
+                uuidLeast[size] = uuid.getLeastSignificantBits();
+            }
+            if(lastMod != null){
+                lastModSeconds[size] = lastMod.getEpochSecond();
+                lastModNanos[size] = lastMod.getNano();
+            }
+            gameIDs[size] = game.getGameID();
+            exeOffsets[size] = putPath(game.getExe());
+            nameOffsets[size] = putString(game.getName());
+            descOffsets[size] = putString(game.getDesc());
+            panelOffsets[size] = putPath(game.getPanel());
+            imageListOffsets[size] = putPathList(game.getImageList());
+            movieListOffsets[size] = putPathList(game.getMovieList());
+            size++;
+        }
+
+        private void allocate(int capacity){
+            flags = flags == null ? new byte[capacity] : Arrays.copyOf(flags, capacity);
+            uuidMost = uuidMost == null ? new long[capacity] : Arrays.copyOf(uuidMost, capacity);
+            uuidLeast = uuidLeast == null ? new long[capacity] : Arrays.copyOf(uuidLeast, capacity);
+            gameIDs = gameIDs == null ? new int[capacity] : Arrays.copyOf(gameIDs, capacity);
+            lastModSeconds = lastModSeconds == null ? new long[capacity] : Arrays.copyOf(lastModSeconds, capacity);
+            lastModNanos = lastModNanos == null ? new int[capacity] : Arrays.copyOf(lastModNanos, capacity);
+            exeOffsets = exeOffsets == null ? new int[capacity] : Arrays.copyOf(exeOffsets, capacity);
+            nameOffsets = nameOffsets == null ? new int[capacity] : Arrays.copyOf(nameOffsets, capacity);
+            descOffsets = descOffsets == null ? new int[capacity] : Arrays.copyOf(descOffsets, capacity);
+            panelOffsets = panelOffsets == null ? new int[capacity] : Arrays.copyOf(panelOffsets, capacity);
+            imageListOffsets = imageListOffsets == null ? new int[capacity] : Arrays.copyOf(imageListOffsets, capacity);
+            movieListOffsets = movieListOffsets == null ? new int[capacity] : Arrays.copyOf(movieListOffsets, capacity);
+        }
+
+        private int putPath(Path path){
+            return path != null ? putString(path.toString()) : NONE;
+        }
+
+        private int putString(String string){
+            if(string == null)return NONE;
+
+            final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            final int offset = reserve(Integer.BYTES + bytes.length);
+            arena.putInt(bytes.length).put(bytes);
+            return offset;
+        }
+
+        private int putPathList(List<Path> list){
+            if(list.isEmpty())return NONE;
+
+            final int[] elements = new int[list.size()];
+            for (int i = 0; i < elements.length; i++){
+                elements[i] = putPath(list.get(i));
+            }
+
+            final int offset = reserve(Integer.BYTES * (elements.length + 1));
+            arena.putInt(elements.length);
+            for (final int element : elements){
+                arena.putInt(element);
+            }
+            return offset;
+        }
+
+        /**
+         * 領域に{@code length}バイトの空きを用意する.
+         * @return 書き込みを始める位置
+         * @throws IllegalArgumentException 領域の大きさが2GiBを超える
+         */
+        private int reserve(int length) throws IllegalArgumentException {
+            if(arena.remaining() < length){
+                final long required = (long) arena.position() + length;
+                if(required > Integer.MAX_VALUE)throw new IllegalArgumentException("Too many strings for a columnar catalog.");
+
+                final int capacity = (int) Math.min(Integer.MAX_VALUE, Math.max(required, arena.capacity() * 2L));
+                arena = ByteBuffer.wrap(Arrays.copyOf(arena.array(), capacity)).position(arena.position());
+            }
+            return arena.position();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * {@link ColumnarCatalog}の1行を表すビュー.カタログと行番号を持ち,フィールドは最初に参照されたときにデコードして保持する.
+ * <p>
+ *     保持する値は全て不変なので,複数のスレッドから参照されたときに同じフィールドを重ねてデコードすることはあっても,結果は変わらない.
+ *     値が無いフィールドは保持しないが,カタログの位置の列を見るだけなのでオブジェクトは作られない.
+ * </p>
+ */
+final class ColumnarGame extends Game {
+    private final ColumnarCatalog catalog;
+    private final int row;
+
+    private UUID uuid;
+    private Path exe;
+    private String name;
+    private Instant lastMod;
+    private String desc;
+    private Path panel;
+    private List<Path> imageList;
+    private List<Path> movieList;
+
+    ColumnarGame(ColumnarCatalog catalog, int row){
+        this.catalog = catalog;
+        this.row = row;
+    }
+
+    @Override
+    public UUID getUUID() {
+        UUID value = uuid;
+        if(value == null)uuid = value = catalog.uuid(row);
+        return value;
+    }
+
+    @Override
+    public Path getExe() {
+        Path value = exe;
+        if(value == null)exe = value = toPath(catalog.exe(row));
+        return value;
+    }
+
+    @Override
+    public String getName() {
+        String value = name;
+        if(value == null)name = value = catalog.name(row);
+        return value;
+    }
+
+    @Override
+    public Instant getLastMod() {
+        Instant value = lastMod;
+        if(value == null)lastMod = value = catalog.lastMod(row);
+        return value;
+    }
+
+    @Override
+    public String getDesc() {
+        String value = desc;
+        if(value == null)desc = value = catalog.desc(row);
+        return value;
+    }
+
+    @Override
+    public Path getPanel() {
+        Path value = panel;
+        if(value == null)panel = value = toPath(catalog.panel(row));
+        return value;
+    }
+
+    @Override
+    public List<Path> getImageList() {
+        List<Path> value = imageList;
+        if(value == null)imageList = value = catalog.imageList(row);
+        return value;
+    }
+
+    @Override
+    public List<Path> getMovieList() {
+        List<Path> value = movieList;
+        if(value == null)movieList = value = catalog.movieList(row);
+        return value;
+    }
+
+    @Override
+    public int getGameID() {
+        return catalog.gameID(row);
+    }
+
+    private static Path toPath(String path){
+        return path != null ? Paths.get(path) : null;
+    }
+}
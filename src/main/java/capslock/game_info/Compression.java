@@ -0,0 +1,136 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * ファイルの圧縮形式.
+ * <p>
+ *     読み出し時の圧縮形式は拡張子ではなく先頭のマジックナンバーで判定されるため,
+ *     圧縮したファイルを従来と同じ名前で置いてもよい.
+ * </p>
+ */
+public enum Compression {
+    /**
+     * 圧縮しない.
+     */
+    NONE {
+        @Override
+        OutputStream wrap(OutputStream out) {
+            return out;
+        }
+
+        @Override
+        void finish(OutputStream compressed) {
+        }
+    },
+    /**
+     * gzip形式で圧縮する.
+     */
+    GZIP {
+        @Override
+        OutputStream wrap(OutputStream out) throws IOException {
+            return new GZIPOutputStream(out, BUFFER_SIZE);
+        }
+
+        @Override
+        void finish(OutputStream compressed) throws IOException {
+            ((GZIPOutputStream) compressed).finish();
+        }
+    };
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int GZIP_MAGIC_0 = 0x1f;
+    private static final int GZIP_MAGIC_1 = 0x8b;
+
+    /**
+     * 書き込んだバイト列をこの形式で圧縮するストリームを作る.
+     * 返されたストリームを閉じると{@code out}も閉じられる.
+     */
+    abstract OutputStream wrap(OutputStream out) throws IOException;
+
+    /**
+     * {@link #wrap(OutputStream)}で作ったストリームの圧縮を終え,残りを書き出す.元のストリームは閉じない.
+     */
+    abstract void finish(OutputStream compressed) throws IOException;
+
+    /**
+     * ファイルの先頭のマジックナンバーから圧縮形式を判定する.
+     * @param filePath 判定するファイル
+     * @return 判定した圧縮形式.既知の形式でないとき {@link #NONE}.
+     * @throws IOException ファイルを読み出せなかった
+     */
+    public static Compression detect(Path filePath) throws IOException {
+        try(final InputStream in = Files.newInputStream(filePath)){
+            return isGzip(in.read(), in.read()) ? GZIP : NONE;
+        }
+    }
+
+    /**
+     * {@link #detect(Path)}と同じ判定を,既に開いているファイルに対して行う.チャネルの位置は変更しない.
+     */
+    static Compression detect(FileChannel channel) throws IOException {
+        final ByteBuffer head = ByteBuffer.allocate(2);
+        while (head.hasRemaining() && channel.read(head, head.position()) > 0);
+        return head.position() == 2 && isGzip(head.get(0) & 0xff, head.get(1) & 0xff) ? GZIP : NONE;
+    }
+
+    private static boolean isGzip(int first, int second){
+        return first == GZIP_MAGIC_0 && second == GZIP_MAGIC_1;
+    }
+
+    /**
+     * 先頭のマジックナンバーで圧縮形式を判定し,必要なら展開しながら読み出すストリームを作る.
+     * 展開は読み出しに合わせて少しずつ行われ,ファイル全体を展開したバッファは作らない.
+     * 返されたストリームを閉じると{@code in}も閉じられる.
+     */
+    static InputStream decompress(InputStream in) throws IOException {
+        final BufferedInputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+        buffered.mark(2);
+        final boolean isGzip = isGzip(buffered.read(), buffered.read());
+        buffered.reset();
+        return isGzip ? new GZIPInputStream(buffered, BUFFER_SIZE) : buffered;
+    }
+
+    /**
+     * 圧縮されていれば展開しながら,UTF-8のテキストとしてファイルを読み出す.
+     * {@link Files#newBufferedReader(Path)}と同じく,UTF-8として不正なバイト列は例外になる.
+     * @param filePath 読み出すファイル
+     * @throws IOException ファイルを開けなかった,または圧縮形式のヘッダーが壊れている
+     */
+    static BufferedReader newReader(Path filePath) throws IOException {
+        final InputStream in = Files.newInputStream(filePath);
+        try {
+            return new BufferedReader(new InputStreamReader(decompress(in), StandardCharsets.UTF_8.newDecoder()));
+        }catch (IOException ex){
+            in.close();
+            throw ex;
+        }
+    }
+}
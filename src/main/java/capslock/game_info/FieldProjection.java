@@ -0,0 +1,187 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 出力する{@link Field}の組をあらかじめ解釈しておき,複数の{@link Game}に繰り返し適用するためのクラス.
+ * <p>
+ *     JSON形式のクエリ文字列から作ったインスタンスは,最近使われたものから一定数がキャッシュされる.
+ *     インスタンスは不変であり,複数のスレッドから同時に使用できる.
+ * </p>
+ */
+public final class FieldProjection {
+    /**
+     * キャッシュするクエリ文字列の最大件数.
+     */
+    static final int CACHE_CAPACITY = 256;
+
+    private static final Map<String, FieldProjection> CACHE = new LinkedHashMap<>(CACHE_CAPACITY, 0.75f, true){
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, FieldProjection> eldest) {
+            return size() > CACHE_CAPACITY;
+        }
+    };
+
+    private final EnumSet<Field> fieldSet;
+
+    private FieldProjection(EnumSet<Field> fieldSet){
+        this.fieldSet = fieldSet;
+    }
+
+    /**
+     * 出力するフィールドの集合からインスタンスを作る.
+     * @param fieldSet 出力するフィールド.引数の集合は複製されるため,後から変更しても影響しない.
+     * @return 作成したインスタンス
+     */
+    public static FieldProjection of(EnumSet<Field> fieldSet){
+        return new FieldProjection(EnumSet.copyOf(fieldSet));
+    }
+
+    /**
+     * JSON形式のクエリ文字列を解釈してインスタンスを作る.同じ文字列に対してはキャッシュしたインスタンスを返す.
+     * <p>
+     *     クエリは{@code {"name" : true, "desc" : true}}のようにフィールド名と真偽値の組で表す.
+     *     UUIDは{@code "UUID" : false}で明示的に除外しない限り出力される.
+     * </p>
+     * @param jsonQuery JSON形式のクエリ文字列
+     * @return 解釈したインスタンス
+     * @throws IllegalArgumentException クエリ文字列が不正である
+     */
+    public static FieldProjection compile(String jsonQuery) throws IllegalArgumentException {
+        synchronized (CACHE){
+            final FieldProjection cached = CACHE.get(jsonQuery);
+            if(cached != null)return cached;
+        }
+
+        final FieldProjection projection = parse(jsonQuery);
+        synchronized (CACHE){
+            CACHE.put(jsonQuery, projection);
+        }
+        return projection;
+    }
+
+    private static FieldProjection parse(String jsonQuery) throws IllegalArgumentException {
+        final JSONObject jsonObject;
+        try {
+            jsonObject = new JSONObject(jsonQuery);
+        }catch (JSONException ex){
+            throw new IllegalArgumentException(ex);
+        }
+
+        final EnumSet<Field> fieldEnumSet = EnumSet.noneOf(Field.class);
+        boolean isUUIDOutExplicitly = false;
+
+        for(final var field : Field.values()){
+            if(!jsonObject.has(field.toString()))continue;
+            try {
+                if (jsonObject.getBoolean(field.toString())) {
+                    fieldEnumSet.add(field);
+                } else {
+                    if (field == Field.UUID) isUUIDOutExplicitly = true;
+                }
+            }catch (JSONException ex){
+                throw  new IllegalArgumentException(ex);
+            }
+        }
+
+        if(!isUUIDOutExplicitly)fieldEnumSet.add(Field.UUID);
+        return new FieldProjection(fieldEnumSet);
+    }
+
+    /**
+     * @return 出力するフィールドの集合の複製
+     */
+    public EnumSet<Field> getFields(){
+        return EnumSet.copyOf(fieldSet);
+    }
+
+    /**
+     * 1件のゲーム情報を射影する.
+     * @param game 射影するゲーム情報
+     * @return JSONオブジェクトの文字列
+     * @see Game#query(EnumSet)
+     */
+    public String project(Game game){
+        return game.query(fieldSet);
+    }
+
+    /**
+     * 1件のゲーム情報を射影して書き出す.
+     * @param game 射影するゲーム情報
+     * @param out 書き出し先
+     * @throws IOException 書き出し先への書き込みに失敗した
+     */
+    public void project(Game game, Appendable out) throws IOException {
+        game.query(fieldSet, out);
+    }
+
+    /**
+     * 1件のゲーム情報を射影し,UTF-8でエンコードしてバッファに書き込む.
+     * @param game 射影するゲーム情報
+     * @param buffer 書き込み先
+     * @throws BufferOverflowException 残り容量が足りない
+     */
+    public void project(Game game, ByteBuffer buffer) throws BufferOverflowException {
+        game.query(fieldSet, buffer);
+    }
+
+    /**
+     * 複数のゲーム情報を射影し,JSON配列として書き出す.
+     * @param games 射影するゲーム情報.この順序で出力される.
+     * @param out 書き出し先
+     * @throws IOException 書き出し先への書き込みに失敗した
+     */
+    public void projectAll(Collection<? extends Game> games, Appendable out) throws IOException {
+        out.append('[');
+        boolean isFirst = true;
+        for (final Game game : games){
+            if(isFirst){
+                isFirst = false;
+            }else {
+                out.append(',');
+            }
+            game.query(fieldSet, out);
+        }
+        out.append(']');
+    }
+
+    /**
+     * 複数のゲーム情報を射影し,JSON配列の文字列を作る.
+     * @param games 射影するゲーム情報.この順序で出力される.
+     * @return JSON配列の文字列
+     */
+    public String projectAll(Collection<? extends Game> games){
+        final StringBuilder builder = new StringBuilder();
+        try {
+            projectAll(games, builder);
+        }catch (IOException ex){
+            throw new UncheckedIOException(ex);
+        }
+        return builder.toString();
+    }
+}
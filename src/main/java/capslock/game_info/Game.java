@@ -15,14 +15,22 @@
 
 package capslock.game_info;
 
-import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import java.time.Instant;
 import java.util.*;
 
 public abstract class Game {
+    /**
+     * {@link Field#values()}は呼び出すたびに配列を複製するため,走査用に1つだけ保持する.
+     */
+    private static final Field[] FIELDS = Field.values();
+
     UUID uuid;
     Path exe;
     String name;
@@ -72,26 +80,75 @@ public abstract class Game {
 
     JSONObject toJSON() {
         final JSONObject json = new JSONObject()
-                .put("UUID", uuid)
-                .put("exe", exe);
+                .put("UUID", getUUID())
+                .put("exe", getExe());
 
+        final String name = getName();
         if (name != null && !name.isEmpty()) json.put("name", name);
 
+        final Instant lastMod = getLastMod();
         if (lastMod != null) json.put("lastMod", lastMod.toString());
 
+        final String desc = getDesc();
         if (desc != null && !desc.isEmpty()) json.put("desc", desc);
 
+        final Path panel = getPanel();
         if (panel != null) json.put("panel", panel);
 
+        final List<Path> imageList = getImageList();
         if (imageList.size() > 0) json.put("imageList", imageList);
 
+        final List<Path> movieList = getMovieList();
         if (movieList.size() > 0) json.put("movieList", movieList);
 
+        final int gameID = getGameID();
         if (gameID > 0) json.put("gameID", gameID);
 
         return json;
     }
 
+    /**
+     * {@link #toJSON()}と同じ内容のJSONオブジェクトを,{@link JSONObject}を作らずに書き出す.
+     * 空文字列の名前と説明は出力しない.キーの順序は{@link Field}の宣言順である.
+     * @param out 書き出し先
+     * @throws IOException 書き出し先への書き込みに失敗した
+     */
+    final void appendJSON(Appendable out) throws IOException {
+        out.append('{');
+
+        boolean isFirst = true;
+        for (final Field field : FIELDS){
+            if(!isSerialized(field))continue;
+
+            if(isFirst){
+                isFirst = false;
+            }else {
+                out.append(',');
+            }
+
+            out.append('"').append(field.toString()).append("\":");
+            appendFieldValue(field, out);
+        }
+
+        out.append('}');
+    }
+
+    /**
+     * {@link #toJSON()}がフィールドを出力するか調べる.
+     */
+    private boolean isSerialized(Field field){
+        switch (field){
+            case NAME:
+                final String name = getName();
+                return name != null && !name.isEmpty();
+            case DESC:
+                final String desc = getDesc();
+                return desc != null && !desc.isEmpty();
+            default:
+                return hasFieldValue(field);
+        }
+    }
+
     /**
      * {@link Field}に対応した値を取得する.
      * <p>
@@ -105,76 +162,190 @@ public abstract class Game {
         //Enumでswitchするのは設計ミスかもしれない
         switch (field){
             case UUID:
-                return uuid;
+                return getUUID();
             case EXE:
-                return exe;
+                return getExe();
             case NAME:
-                return name;
+                return getName();
             case DESC:
-                return desc;
+                return getDesc();
             case PANEL:
-                return panel;
+                return getPanel();
             case MOVIE_LIST:
+                final List<Path> movieList = getMovieList();
                 return movieList.isEmpty() ? null : movieList ;
             case IMAGE_LIST:
+                final List<Path> imageList = getImageList();
                 return imageList.isEmpty() ? null : imageList;
             case GAME_ID:
+                final int gameID = getGameID();
                 return gameID > 0 ? gameID : null;
             case LAST_MOD:
-                return lastMod;
+                return getLastMod();
             default:
                 throw new IllegalArgumentException();
         }
     }
 
+    /**
+     * 2つのゲーム情報で値が異なる{@link Field}を求める.値が設定されていないフィールド同士は等しいとみなす.
+     * @param other 比較するゲーム情報
+     * @return 値が異なるフィールドの集合.全て等しいとき空集合.
+     */
+    final EnumSet<Field> differingFields(Game other){
+        final EnumSet<Field> differences = EnumSet.noneOf(Field.class);
+        for (final Field field : FIELDS){
+            if(!Objects.equals(getFieldValue(field), other.getFieldValue(field)))differences.add(field);
+        }
+        return differences;
+    }
+
+    /**
+     * {@link Field}に対応した値が設定されているか調べる.
+     * {@link #getFieldValue(Field)}の戻り値が{@code null}でないことと同じだが,ボクシングを行わない.
+     */
+    final boolean hasFieldValue(Field field){
+        switch (field){
+            case MOVIE_LIST:
+                return !getMovieList().isEmpty();
+            case IMAGE_LIST:
+                return !getImageList().isEmpty();
+            case GAME_ID:
+                return getGameID() > 0;
+            default:
+                return getFieldValue(field) != null;
+        }
+    }
+
+    /**
+     * {@link Field}に対応した値をJSONの値として書き出す.値が設定されていることを呼び出し元で確認すること.
+     */
+    final void appendFieldValue(Field field, Appendable out) throws IOException {
+        switch (field){
+            case UUID:
+                JSONEmitter.uuid(out, getUUID());
+                break;
+            case EXE:
+                JSONEmitter.string(out, getExe().toString());
+                break;
+            case NAME:
+                JSONEmitter.string(out, getName());
+                break;
+            case DESC:
+                JSONEmitter.string(out, getDesc());
+                break;
+            case PANEL:
+                JSONEmitter.string(out, getPanel().toString());
+                break;
+            case MOVIE_LIST:
+                appendPathList(getMovieList(), out);
+                break;
+            case IMAGE_LIST:
+                appendPathList(getImageList(), out);
+                break;
+            case GAME_ID:
+                JSONEmitter.number(out, getGameID());
+                break;
+            case LAST_MOD:
+                JSONEmitter.instant(out, getLastMod());
+                break;
+            default:
+                throw new IllegalArgumentException();
+        }
+    }
+
+    private static void appendPathList(List<Path> list, Appendable out) throws IOException {
+        out.append('[');
+        for (int i = 0; i < list.size(); i++){
+            if(i > 0)out.append(',');
+            JSONEmitter.string(out, list.get(i).toString());
+        }
+        out.append(']');
+    }
+
+    /**
+     * 指定した{@link Field}の値のみを持つJSONオブジェクトの文字列を作る.値が設定されていないフィールドは出力しない.
+     * @param fieldSet 出力するフィールド
+     * @return JSONオブジェクトの文字列
+     */
     public final String query(EnumSet<Field> fieldSet){
-        final var builder = new StringBuilder("{");
+        final StringBuilder builder = JSONEmitter.threadLocalBuilder();
+        try {
+            query(fieldSet, builder);
+        }catch (IOException ex){
+            // StringBuilderへの書き込みは失敗しない
+            throw new UncheckedIOException(ex);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * {@link #query(EnumSet)}と同じJSONオブジェクトを,中間の文字列を作らずに書き出す.
+     * @param fieldSet 出力するフィールド
+     * @param out 書き出し先
+     * @throws IOException 書き出し先への書き込みに失敗した
+     */
+    public final void query(EnumSet<Field> fieldSet, Appendable out) throws IOException {
+        final CatalogMetrics metrics = CatalogMetrics.global();
+        if(metrics == CatalogMetrics.NOOP){
+            appendQuery(fieldSet, out);
+            return;
+        }
+
+        final long start = System.nanoTime();
+        try {
+            appendQuery(fieldSet, out);
+        }finally {
+            metrics.recordQuery(System.nanoTime() - start);
+        }
+    }
+
+    private void appendQuery(EnumSet<Field> fieldSet, Appendable out) throws IOException {
+        out.append('{');
 
         boolean isFirst = true;
-        for (final var field : fieldSet){
-            final var fieldValue = getFieldValue(field);
-            if(fieldValue == null)continue;
+        for (final Field field : FIELDS){
+            if(!fieldSet.contains(field) || !hasFieldValue(field))continue;
 
             if(isFirst){
                 isFirst = false;
             }else {
-                builder.append(", ");
+                out.append(',');
             }
 
-            builder.append(field);
-            builder.append(" : ");
-            builder.append(fieldValue.toString());
+            out.append('"').append(field.toString()).append("\":");
+            appendFieldValue(field, out);
         }
 
-        builder.append('}');
-        return builder.toString();
+        out.append('}');
     }
 
-    public final String query(String jsonQuery) throws IllegalArgumentException {
-        final JSONObject jsonObject;
+    /**
+     * {@link #query(EnumSet)}と同じJSONオブジェクトを,UTF-8でエンコードしてバッファに書き込む.
+     * 作業用の文字列バッファはスレッドごとに再利用される.
+     * @param fieldSet 出力するフィールド
+     * @param buffer 書き込み先
+     * @throws BufferOverflowException 残り容量が足りない.このときバッファには何も書き込まれない.
+     */
+    public final void query(EnumSet<Field> fieldSet, ByteBuffer buffer) throws BufferOverflowException {
+        final StringBuilder builder = JSONEmitter.threadLocalBuilder();
         try {
-            jsonObject = new JSONObject(jsonQuery);
-        }catch (JSONException ex){
-            throw new IllegalArgumentException(ex);
-        }
-
-        final EnumSet<Field> fieldEnumSet = EnumSet.noneOf(Field.class);
-        boolean isUUIDOutExplicitly = false;
-
-        for(final var field : Field.values()){
-            if(!jsonObject.has(field.toString()))continue;
-            try {
-                if (jsonObject.getBoolean(field.toString())) {
-                    fieldEnumSet.add(field);
-                } else {
-                    if (field == Field.UUID) isUUIDOutExplicitly = true;
-                }
-            }catch (JSONException ex){
-                throw  new IllegalArgumentException(ex);
-            }
+            query(fieldSet, builder);
+        }catch (IOException ex){
+            throw new UncheckedIOException(ex);
         }
+        JSONEmitter.encodeUTF8(builder, buffer);
+    }
 
-        if(!isUUIDOutExplicitly)fieldEnumSet.add(Field.UUID);
-        return query(fieldEnumSet);
+    /**
+     * JSON形式のクエリ文字列で指定したフィールドの値のみを持つJSONオブジェクトの文字列を作る.
+     * 解釈したクエリは{@link FieldProjection}にキャッシュされる.
+     * @param jsonQuery JSON形式のクエリ文字列
+     * @return JSONオブジェクトの文字列
+     * @throws IllegalArgumentException クエリ文字列が不正である
+     * @see FieldProjection#compile(String)
+     */
+    public final String query(String jsonQuery) throws IllegalArgumentException {
+        return FieldProjection.compile(jsonQuery).project(this);
     }
 }
@@ -0,0 +1,152 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * ゲーム情報の集合に索引を付けたもの.
+ * <p>
+ *     UUIDと作品番号による検索は件数に関わらず定数時間で行える.
+ *     最終更新日時による範囲検索のために,最終更新日時で整列した索引も保持する.
+ *     インスタンスは作成後に変更されない.
+ * </p>
+ */
+public final class GameCatalog {
+    private final List<Game> gameList;
+    private final Map<UUID, Game> uuidIndex;
+    private final Map<Integer, Game> gameIDIndex;
+    private final NavigableMap<Instant, List<Game>> lastModIndex = new TreeMap<>();
+
+    /**
+     * ゲーム情報のコレクションから索引を作成する.
+     * <p>
+     *     UUIDが設定されていないゲームは一覧には含まれるが,UUIDの索引には登録されない.
+     *     作品番号が設定されていない(0以下の)ゲームは作品番号の索引に登録されない.
+     * </p>
+     * @param games 索引を作成するゲーム情報.順序は{@link #getGameList()}で保たれる.
+     * @throws IllegalArgumentException UUIDまたは作品番号が重複している
+     */
+    public GameCatalog(Collection<? extends Game> games) throws IllegalArgumentException {
+        final long start = System.nanoTime();
+        gameList = Collections.unmodifiableList(new ArrayList<>(games));
+        uuidIndex = new HashMap<>(capacityFor(gameList.size()));
+        gameIDIndex = new HashMap<>(capacityFor(gameList.size()));
+
+        for (final Game game : gameList){
+            final UUID uuid = game.getUUID();
+            if(uuid != null && uuidIndex.putIfAbsent(uuid, game) != null){
+                throw new IllegalArgumentException("UUID " + uuid + " is duplicated.");
+            }
+
+            final int gameID = game.getGameID();
+            if(gameID > 0 && gameIDIndex.putIfAbsent(gameID, game) != null){
+                throw new IllegalArgumentException("\"gameID\" field must be unique. But " + gameID + " is duplicated.");
+            }
+
+            final Instant lastMod = game.getLastMod();
+            if(lastMod != null){
+                lastModIndex.computeIfAbsent(lastMod, key -> new ArrayList<>(1)).add(game);
+            }
+        }
+
+        CatalogMetrics.global().recordPhase(CatalogMetrics.Phase.INDEX, System.nanoTime() - start);
+    }
+
+    /**
+     * {@link JSONDBReader}が読み出したゲーム情報から索引を作成する.
+     * @param reader 読み出しが完了した{@link JSONDBReader}
+     * @return 作成した索引
+     * @throws IllegalArgumentException UUIDまたは作品番号が重複している
+     */
+    public static GameCatalog of(JSONDBReader reader) throws IllegalArgumentException {
+        return new GameCatalog(reader.getDocumentList());
+    }
+
+    private static int capacityFor(int size){
+        return (int) (size / 0.75f) + 1;
+    }
+
+    /**
+     * 全てのゲーム情報を作成時の順序で返す.
+     * @return 変更できないリスト
+     */
+    public List<Game> getGameList(){
+        return gameList;
+    }
+
+    /**
+     * @return 登録されているゲームの件数
+     */
+    public int size(){
+        return gameList.size();
+    }
+
+    /**
+     * UUIDでゲームを検索する.
+     * @param uuid 検索するUUID
+     * @return 見つかったとき そのゲーム, 見つからなかったとき {@code null}.
+     */
+    public Game getByUUID(UUID uuid){
+        return uuidIndex.get(uuid);
+    }
+
+    /**
+     * 作品番号でゲームを検索する.
+     * @param gameID 検索する作品番号
+     * @return 見つかったとき そのゲーム, 見つからなかったとき {@code null}.
+     */
+    public Game getByGameID(int gameID){
+        return gameIDIndex.get(gameID);
+    }
+
+    /**
+     * 最終更新日時が指定した範囲にあるゲームを,最終更新日時の古い順に返す.
+     * 最終更新日時が設定されていないゲームは含まれない.
+     * @param from 範囲の開始(この日時を含む)
+     * @param to 範囲の終了(この日時を含まない)
+     * @return 該当するゲームのリスト
+     */
+    public List<Game> getUpdatedBetween(Instant from, Instant to){
+        return flatten(lastModIndex.subMap(from, true, to, false));
+    }
+
+    /**
+     * 最終更新日時が指定した日時以降のゲームを,最終更新日時の新しい順に返す.
+     * @param since この日時以降(この日時を含む)に更新されたゲームを返す
+     * @return 該当するゲームのリスト
+     */
+    public List<Game> getUpdatedSince(Instant since){
+        return flatten(lastModIndex.tailMap(since, true).descendingMap());
+    }
+
+    private static List<Game> flatten(Map<Instant, List<Game>> range){
+        final List<Game> result = new ArrayList<>();
+        for (final List<Game> games : range.values()){
+            result.addAll(games);
+        }
+        return result;
+    }
+}
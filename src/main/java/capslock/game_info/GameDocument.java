@@ -15,13 +15,15 @@
 
 package capslock.game_info;
 
-import org.json.JSONException;
+import org.json.JSONArray;
 import org.json.JSONObject;
 
-import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.text.ParsePosition;
 import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.TemporalAccessor;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
@@ -35,117 +37,234 @@ public final class GameDocument extends Game {
         uuid = UUID.randomUUID();
     }
 
+    /**
+     * 保存済みのゲーム情報を復元するためのコンストラクタ.UUID以外のフィールドは呼び出し元で設定する.
+     * {@link UUID#randomUUID()}の呼び出しを避けるため,このコンストラクタはpackage-privateである.
+     * @param uuid 復元するUUID
+     */
+    GameDocument(UUID uuid){
+        this.uuid = uuid;
+    }
+
     /**
      * このコンストラクタは{@link JSONDBReader}からのみ呼び出される.
      * 依存ライブラリの型が外部に漏れることを防ぐため,このコンストラクタはpackage-privateである.
+     * 不正なフィールドは標準エラー出力に報告される.
      */
     GameDocument(JSONObject document){
-        try {
-            uuid = UUID.fromString(document.getString("UUID"));
-        }catch (JSONException ex){
-            if(document.has("UUID")) {
-                System.err.println("There is \"UUID\" key, but wrong value.");
-            }else {
-                System.err.println("There is no \"UUID\" field. This field is necessary.");
-            }
-            ex.printStackTrace();
-        }catch (IllegalArgumentException ex){
-            System.err.println("There is \"UUID\" key, but wrong value. This is not a UUID.");
-            ex.printStackTrace();
+        this(document, ValidationReport.printing(), -1, null);
+    }
+
+    /**
+     * 不正なフィールドを{@link ValidationReport}に記録しながらドキュメントを読み出す.
+     * <p>
+     *     値の型や書式は例外を使わずに事前に確かめるため,不正なフィールドが多いドキュメントでも正しいドキュメントと同程度の時間で読み出せる.
+     *     不正なフィールドには値が設定されない.
+     * </p>
+     * @param document 読み出すドキュメント
+     * @param report 問題を記録する{@link ValidationReport}
+     * @param documentIndex 問題に記録するドキュメントの位置
+     * @param interner 同じ読み出しのドキュメントとパスを共有するための{@link Interner}. {@code null}のときは共有しない.
+     * @throws IllegalArgumentException {@code report}が{@link ValidationReport#failFast()}で作られ,問題が見つかった
+     */
+    GameDocument(JSONObject document, ValidationReport report, int documentIndex, Interner interner)
+            throws IllegalArgumentException {
+        uuid = decodeUUID(document.opt("UUID"), report, documentIndex);
+        exe = decodeExe(document.opt("exe"), report, documentIndex, interner);
+        name = decodeString(Field.NAME, document.opt("name"), report, documentIndex);
+        lastMod = decodeLastMod(document.opt("lastMod"), report, documentIndex);
+        desc = decodeString(Field.DESC, document.opt("desc"), report, documentIndex);
+        panel = decodePath(Field.PANEL, document.opt("panel"), report, documentIndex, interner);
+
+        final List<Path> uncheckedImageList = decodePathList(Field.IMAGE_LIST, document.opt("imageList"), report, documentIndex, interner);
+        if(uncheckedImageList != null)imageList = uncheckedImageList;
+
+        final List<Path> uncheckedMovieList = decodePathList(Field.MOVIE_LIST, document.opt("movieList"), report, documentIndex, interner);
+        if(uncheckedMovieList != null)movieList = uncheckedMovieList;
+
+        final Integer uncheckedGameID = decodeGameID(document.opt("gameID"), report, documentIndex);
+        if(uncheckedGameID != null)gameID = uncheckedGameID;
+    }
+
+    // 以下のメソッドはJSONの値1つを対応するフィールドの値に変換する.
+    // 引数はキーが無いときnullであり,不正な値はValidationReportに報告してnullを返す.
+    // LazyGameと共有するため,package-privateである.
+
+    static UUID decodeUUID(Object unchecked, ValidationReport report, int documentIndex){
+        if(unchecked == null){
+            report.report(documentIndex, Field.UUID, "There is no \"UUID\" field. This field is necessary.");
+            return null;
+        }
+        if(!(unchecked instanceof String)){
+            report.report(documentIndex, Field.UUID, "There is \"UUID\" key, but wrong value.");
+            return null;
         }
 
-        ExeField: try {
-            final String uncheckedString = document.getString("exe");
-            if(uncheckedString.isEmpty()){
-                System.err.println("\"exe\" field is empty String.");
-                break ExeField;
-            }
+        final UUID parsed = parseUUID((String) unchecked);
+        if(parsed == null){
+            report.report(documentIndex, Field.UUID, "There is \"UUID\" key, but wrong value. This is not a UUID.");
+        }
+        return parsed;
+    }
 
-            exe = Paths.get(uncheckedString);
+    static Path decodeExe(Object unchecked, ValidationReport report, int documentIndex, Interner interner){
+        if(unchecked == null){
+            report.report(documentIndex, Field.EXE, "There is no \"exe\" key. \"exe\" field is necessary.");
+            return null;
+        }
+        if(!(unchecked instanceof String)){
+            report.report(documentIndex, Field.EXE, "There is \"exe\" key, but wrong value.");
+            return null;
+        }
+        if(((String) unchecked).isEmpty()){
+            report.report(documentIndex, Field.EXE, "\"exe\" field is empty String.");
+            return null;
+        }
 
-        }catch (JSONException ex){
-            if(document.has("exe")) {
-                System.err.println("There is \"exe\" key, but wrong value.");
-            }else {
-                System.err.println("There is no \"exe\" key. \"exe\" field is necessary.");
-            }
-            ex.printStackTrace();
-        }catch (InvalidPathException ex){
-            System.err.println("Wrong value is set in exe. This is not a Path.");
+        final Path path = Interner.path((String) unchecked, interner);
+        if(path == null)report.report(documentIndex, Field.EXE, "Wrong value is set in exe. This is not a Path.");
+        return path;
+    }
+
+    static String decodeString(Field field, Object unchecked, ValidationReport report, int documentIndex){
+        if(unchecked == null)return null;
+        if(unchecked instanceof String)return (String) unchecked;
+
+        report.report(documentIndex, field, "There is \"" + field + "\" key, but wrong value.");
+        return null;
+    }
+
+    static Instant decodeLastMod(Object unchecked, ValidationReport report, int documentIndex){
+        if(unchecked == null)return null;
+
+        final Instant parsed = unchecked instanceof String ? parseInstant((String) unchecked) : null;
+        if(parsed == null)report.report(documentIndex, Field.LAST_MOD, "There is \"lastMod\" key, but wrong value.");
+        return parsed;
+    }
+
+    static Path decodePath(Field field, Object unchecked, ValidationReport report, int documentIndex, Interner interner){
+        if(unchecked == null)return null;
+        if(!(unchecked instanceof String)){
+            report.report(documentIndex, field, "There is \"" + field + "\" key, but wrong value.");
+            return null;
         }
 
-        try {
-            name = document.getString("name");
-        }catch (JSONException ex){
-            if(document.has("name")) {
-                System.err.println("There is \"name\" key, but wrong value.");
-                ex.printStackTrace();
-            }
+        final Path path = Interner.path((String) unchecked, interner);
+        if(path == null)report.report(documentIndex, field, "Wrong value is set in " + field + ". This is not a Path.");
+        return path;
+    }
+
+    /**
+     * パスとして不正な要素は報告して読み飛ばす.
+     * @return 要素数ちょうどの容量で作った,変更できるリスト
+     */
+    static List<Path> decodePathList(Field field, Object unchecked, ValidationReport report, int documentIndex,
+                                     Interner interner){
+        if(unchecked == null)return null;
+        if(!(unchecked instanceof JSONArray)){
+            report.report(documentIndex, field, "There is \"" + field + "\" key, but wrong value.");
+            return null;
         }
 
-        try {
-            lastMod = Instant.parse(document.getString("lastMod"));
-        }catch (JSONException ex){
-            if(document.has("lastMod")) {
-                System.err.println("There is \"lastMod\" key, but wrong value.");
-                ex.printStackTrace();
+        final JSONArray array = (JSONArray) unchecked;
+        final ArrayList<Path> list = new ArrayList<>(array.length());
+        for (final Object element : array){
+            final Path path = element instanceof String ? Interner.path((String) element, interner) : null;
+            if(path == null){
+                report.report(documentIndex, field, "Wrong value is set in " + field + ". This is not a Path.");
+            }else {
+                list.add(path);
             }
         }
+        list.trimToSize();
+        return list;
+    }
 
-        try {
-            desc = document.getString("desc");
-        }catch (JSONException ex){
-            if(document.has("desc")) {
-                System.err.println("There is \"desc\" key, but wrong value.");
-                ex.printStackTrace();
-            }
+    /**
+     * 自然数でない値は報告するが,従来通りその値を返す.
+     */
+    static Integer decodeGameID(Object unchecked, ValidationReport report, int documentIndex){
+        if(unchecked == null)return null;
+
+        final Integer parsed = toInteger(unchecked);
+        if(parsed == null){
+            report.report(documentIndex, Field.GAME_ID, "There is \"gameID\" key, but wrong value.");
+        }else if(Integer.signum(parsed) != 1){
+            report.report(documentIndex, Field.GAME_ID,
+                    "\"gameID\" field must be natural number and unique. But the value is " + parsed + '.');
         }
+        return parsed;
+    }
 
-        try {
-            panel = Paths.get(document.getString(Field.PANEL.toString()));
-        }catch (JSONException ex){
-            if(document.has("panel")) {
-                System.err.println("There is \"panel\" key, but wrong value.");
-                ex.printStackTrace();
+    /**
+     * @return UUIDとして解釈できないとき {@code null}.
+     */
+    private static UUID parseUUID(String text){
+        if(!isCanonicalUUID(text)){
+            // UUID.fromStringは正規形以外も受け付けるため,まれな書式に限り例外で判定する
+            try {
+                return UUID.fromString(text);
+            }catch (IllegalArgumentException ex){
+                return null;
             }
-        } catch (InvalidPathException ex){
-            System.err.println("Wrong value is set in panel. This is not a Path.");
         }
+        return UUID.fromString(text);
+    }
 
-        if(document.has("imageList")){
-            imageList = new ArrayList<>();
-            for (final Object unchecked : document.getJSONArray("imageList")){
-                try {
-                    imageList.add(Paths.get((String)unchecked));
-                }catch (InvalidPathException ex){
-                    System.err.println("Wrong value is set in imageList. This is not a Path.");
-                }
+    private static boolean isCanonicalUUID(String text){
+        if(text.length() != 36)return false;
+        for (int i = 0; i < 36; i++){
+            final char c = text.charAt(i);
+            if(i == 8 || i == 13 || i == 18 || i == 23){
+                if(c != '-')return false;
+            }else if(Character.digit(c, 16) < 0){
+                return false;
             }
         }
+        return true;
+    }
 
+    /**
+     * @return ISO-8601形式の日時として解釈できないとき {@code null}.
+     */
+    private static Instant parseInstant(String text){
+        final ParsePosition position = new ParsePosition(0);
+        final TemporalAccessor parsed = DateTimeFormatter.ISO_INSTANT.parseUnresolved(text, position);
+        if(parsed == null || position.getErrorIndex() >= 0 || position.getIndex() != text.length())return null;
 
-        if(document.has("movieList")){
-            movieList = new ArrayList<>();
-            for (final Object unchecked : document.getJSONArray("movieList")){
-                try {
-                    movieList.add(Paths.get((String)unchecked));
-                }catch (InvalidPathException ex){
-                    System.err.println("Wrong value is set in movieList. This is not a Path.");
-                }
-            }
+        try {
+            return Instant.parse(text);
+        }catch (DateTimeParseException ex){
+            // 書式は正しいが範囲外の値
+            return null;
         }
+    }
 
-        try {
-            gameID = document.getInt("gameID");
-            if(Integer.signum(gameID) != 1){
-                System.err.println("\"gameID\" field must be natural number and unique. But the value is " + gameID + '.');
-            }
-        }catch (JSONException ex){
-            if(document.has("gameID")) {
-                System.err.println("There is \"gameID\" key, but wrong value.");
-                ex.printStackTrace();
-            }
+    /**
+     * {@link JSONObject#getInt(String)}と同じく,数値と数値を表す文字列を整数として解釈する.
+     * @return 整数として解釈できないとき {@code null}.
+     */
+    private static Integer toInteger(Object value){
+        if(value instanceof Number)return ((Number) value).intValue();
+        if(!(value instanceof String))return null;
+
+        final String text = (String) value;
+        if(text.isEmpty() || text.length() > 11)return null;
+        for (int i = 0; i < text.length(); i++){
+            final char c = text.charAt(i);
+            if(!(c >= '0' && c <= '9') && !(i == 0 && c == '-' && text.length() > 1))return null;
         }
+        final long parsed = Long.parseLong(text);
+        if(parsed < Integer.MIN_VALUE || parsed > Integer.MAX_VALUE)return null;
+        return (int) parsed;
+    }
+
+    /**
+     * 現在の値を複製した,変更できないゲーム情報を作る.
+     * @return 新しい{@link GameSnapshot}
+     */
+    public GameSnapshot snapshot(){
+        return GameSnapshot.of(this);
     }
 
     /**
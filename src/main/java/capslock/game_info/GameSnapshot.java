@@ -0,0 +1,162 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 変更できないゲーム情報.
+ * <p>
+ *     値を変えるときは{@code with}で始まるメソッドで新しいインスタンスを作る.
+ *     リストは作成時に複製されるため,元の{@link GameDocument}を後から変更しても影響しない.
+ *     {@link CatalogHolder}などを通じて安全に公開されたインスタンスは,同期なしに複数のスレッドから読み出せる.
+ * </p>
+ */
+public final class GameSnapshot extends Game {
+
+    private GameSnapshot(Game source){
+        uuid = source.getUUID();
+        exe = source.getExe();
+        name = source.getName();
+        lastMod = source.getLastMod();
+        desc = source.getDesc();
+        panel = source.getPanel();
+        imageList = List.copyOf(source.getImageList());
+        movieList = List.copyOf(source.getMovieList());
+        gameID = source.getGameID();
+    }
+
+    /**
+     * ゲーム情報の現在の値を複製して,変更できないインスタンスを作る.
+     * @param game 複製するゲーム情報
+     * @return 引数が既に{@link GameSnapshot}のとき 引数そのもの, そうでないとき 複製したインスタンス.
+     */
+    public static GameSnapshot of(Game game){
+        if(game instanceof GameSnapshot)return (GameSnapshot) game;
+        return new GameSnapshot(game);
+    }
+
+    /**
+     * 編集用に,同じ値を持つ{@link GameDocument}を作る.
+     * @return 新しい{@link GameDocument}
+     */
+    public GameDocument toDocument(){
+        final GameDocument document = new GameDocument(uuid);
+        document.exe = exe;
+        document.name = name;
+        document.lastMod = lastMod;
+        document.desc = desc;
+        document.panel = panel;
+        document.imageList = new ArrayList<>(imageList);
+        document.movieList = new ArrayList<>(movieList);
+        document.gameID = gameID;
+        return document;
+    }
+
+    /**
+     * @param newUUID 新しいUUID
+     * @return UUIDのみを置換した新しいインスタンス
+     */
+    public GameSnapshot withUUID(UUID newUUID){
+        final GameSnapshot copy = new GameSnapshot(this);
+        copy.uuid = newUUID;
+        return copy;
+    }
+
+    /**
+     * @param path 新しい実行ファイルのパス
+     * @return 実行ファイルのパスのみを置換した新しいインスタンス
+     */
+    public GameSnapshot withExe(Path path){
+        final GameSnapshot copy = new GameSnapshot(this);
+        copy.exe = path;
+        return copy;
+    }
+
+    /**
+     * @param newName 新しいゲーム名
+     * @return ゲーム名のみを置換した新しいインスタンス
+     */
+    public GameSnapshot withName(String newName){
+        final GameSnapshot copy = new GameSnapshot(this);
+        copy.name = newName;
+        return copy;
+    }
+
+    /**
+     * @param updateTime 新しい最終更新日時
+     * @return 最終更新日時のみを置換した新しいインスタンス
+     */
+    public GameSnapshot withLastMod(Instant updateTime){
+        final GameSnapshot copy = new GameSnapshot(this);
+        copy.lastMod = updateTime;
+        return copy;
+    }
+
+    /**
+     * @param newDesc 新しい説明
+     * @return 説明のみを置換した新しいインスタンス
+     */
+    public GameSnapshot withDesc(String newDesc){
+        final GameSnapshot copy = new GameSnapshot(this);
+        copy.desc = newDesc;
+        return copy;
+    }
+
+    /**
+     * @param newPanel 新しいパネル画像のパス
+     * @return パネル画像のパスのみを置換した新しいインスタンス
+     */
+    public GameSnapshot withPanel(Path newPanel){
+        final GameSnapshot copy = new GameSnapshot(this);
+        copy.panel = newPanel;
+        return copy;
+    }
+
+    /**
+     * @param newImageList 新しい紹介画像のパスのリスト.複製して保持される.
+     * @return 紹介画像のリストのみを置換した新しいインスタンス
+     */
+    public GameSnapshot withImageList(List<Path> newImageList){
+        final GameSnapshot copy = new GameSnapshot(this);
+        copy.imageList = List.copyOf(newImageList);
+        return copy;
+    }
+
+    /**
+     * @param newMovieList 新しい紹介映像のパスのリスト.複製して保持される.
+     * @return 紹介映像のリストのみを置換した新しいインスタンス
+     */
+    public GameSnapshot withMovieList(List<Path> newMovieList){
+        final GameSnapshot copy = new GameSnapshot(this);
+        copy.movieList = List.copyOf(newMovieList);
+        return copy;
+    }
+
+    /**
+     * @param newID 新しい作品番号
+     * @return 作品番号のみを置換した新しいインスタンス
+     */
+    public GameSnapshot withGameID(int newID){
+        final GameSnapshot copy = new GameSnapshot(this);
+        copy.gameID = newID;
+        return copy;
+    }
+}
@@ -0,0 +1,264 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 計測値をメモリ上に集計する{@link CatalogMetrics}.
+ * <p>
+ *     所要時間は2のべき乗ごとの区間に分けたヒストグラムとして保持するため,
+ *     記録の回数に関わらず使用するメモリは一定である.パーセンタイルは区間の上端で近似される.
+ *     このクラスはスレッドセーフである.
+ * </p>
+ */
+public final class InMemoryMetrics implements CatalogMetrics {
+    private final Map<Phase, Histogram> phases = new EnumMap<>(Phase.class);
+    private final Histogram queries = new Histogram();
+    private final LongAdder documentsRead = new LongAdder();
+    private final LongAdder documentsWritten = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final Map<Field, LongAdder> validationFailures = new EnumMap<>(Field.class);
+
+    public InMemoryMetrics(){
+        for (final Phase phase : Phase.values()){
+            phases.put(phase, new Histogram());
+        }
+        for (final Field field : Field.values()){
+            validationFailures.put(field, new LongAdder());
+        }
+    }
+
+    /**
+     * 所要時間のヒストグラム.区間{@code i}は{@code [2^(i-1), 2^i)}ナノ秒を表し,区間0は0ナノ秒のみを表す.
+     */
+    public static final class Histogram {
+        private static final int BUCKET_COUNT = 64;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        Histogram(){
+        }
+
+        void record(long nanos){
+            if(nanos < 0)nanos = 0;
+            buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(nanos));
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+
+        void reset(){
+            for (int i = 0; i < BUCKET_COUNT; i++){
+                buckets.set(i, 0);
+            }
+            count.reset();
+            totalNanos.reset();
+            maxNanos.reset();
+        }
+
+        /**
+         * @return 記録した回数
+         */
+        public long getCount(){
+            return count.sum();
+        }
+
+        /**
+         * @return 所要時間の合計(ナノ秒)
+         */
+        public long getTotalNanos(){
+            return totalNanos.sum();
+        }
+
+        /**
+         * @return 所要時間の最大値(ナノ秒)
+         */
+        public long getMaxNanos(){
+            return maxNanos.get();
+        }
+
+        /**
+         * @return 所要時間の平均値(ナノ秒). 記録が無いとき {@code 0}.
+         */
+        public double getMeanNanos(){
+            final long n = getCount();
+            return n == 0 ? 0 : (double) getTotalNanos() / n;
+        }
+
+        /**
+         * 所要時間のパーセンタイルを区間の上端で近似する.
+         * @param percentile 0より大きく100以下の値
+         * @return 近似値(ナノ秒). 記録が無いとき {@code 0}.
+         */
+        public long getPercentileNanos(double percentile){
+            if(!(percentile > 0 && percentile <= 100))throw new IllegalArgumentException("percentile must be in (0, 100].");
+
+            long total = 0;
+            final long[] snapshot = new long[BUCKET_COUNT];
+            for (int i = 0; i < BUCKET_COUNT; i++){
+                snapshot[i] = buckets.get(i);
+                total += snapshot[i];
+            }
+            if(total == 0)return 0;
+
+            final long rank = (long) Math.ceil(total * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++){
+                seen += snapshot[i];
+                if(seen >= rank)return Math.min((1L << i) - 1, getMaxNanos());
+            }
+            return getMaxNanos();
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + getCount()
+                    + ", mean=" + Math.round(getMeanNanos() / 1000) + "us"
+                    + ", p50=" + getPercentileNanos(50) / 1000 + "us"
+                    + ", p99=" + getPercentileNanos(99) / 1000 + "us"
+                    + ", max=" + getMaxNanos() / 1000 + "us";
+        }
+    }
+
+    @Override
+    public void recordPhase(Phase phase, long nanos) {
+        phases.get(phase).record(nanos);
+    }
+
+    @Override
+    public void recordDocumentsRead(int count) {
+        documentsRead.add(count);
+    }
+
+    @Override
+    public void recordDocumentsWritten(int count) {
+        documentsWritten.add(count);
+    }
+
+    @Override
+    public void recordBytesRead(long bytes) {
+        bytesRead.add(bytes);
+    }
+
+    @Override
+    public void recordBytesWritten(long bytes) {
+        bytesWritten.add(bytes);
+    }
+
+    @Override
+    public void recordValidationFailure(Field field) {
+        validationFailures.get(field).increment();
+    }
+
+    @Override
+    public void recordQuery(long nanos) {
+        queries.record(nanos);
+    }
+
+    /**
+     * @param phase 処理段階
+     * @return 処理段階の所要時間のヒストグラム
+     */
+    public Histogram getPhase(Phase phase){
+        return phases.get(phase);
+    }
+
+    /**
+     * @return queryの所要時間のヒストグラム
+     */
+    public Histogram getQueryLatency(){
+        return queries;
+    }
+
+    /**
+     * @return 読み出したゲーム情報の件数の合計
+     */
+    public long getDocumentsRead(){
+        return documentsRead.sum();
+    }
+
+    /**
+     * @return 書き出したゲーム情報の件数の合計
+     */
+    public long getDocumentsWritten(){
+        return documentsWritten.sum();
+    }
+
+    /**
+     * @return 読み出したバイト数の合計
+     */
+    public long getBytesRead(){
+        return bytesRead.sum();
+    }
+
+    /**
+     * @return 書き込んだバイト数の合計
+     */
+    public long getBytesWritten(){
+        return bytesWritten.sum();
+    }
+
+    /**
+     * @param field フィールド
+     * @return フィールドが不正だった回数
+     */
+    public long getValidationFailures(Field field){
+        return validationFailures.get(field).sum();
+    }
+
+    /**
+     * 全ての計測値を0に戻す.記録と同時に呼び出したとき,その記録が残るかは不定である.
+     */
+    public void reset(){
+        phases.values().forEach(Histogram::reset);
+        queries.reset();
+        documentsRead.reset();
+        documentsWritten.reset();
+        bytesRead.reset();
+        bytesWritten.reset();
+        validationFailures.values().forEach(LongAdder::reset);
+    }
+
+    /**
+     * 全ての計測値を複数行の文字列にまとめる.
+     */
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        for (final Phase phase : Phase.values()){
+            builder.append(phase).append(" : ").append(phases.get(phase)).append('\n');
+        }
+        builder.append("QUERY : ").append(queries).append('\n');
+        builder.append("documents read=").append(getDocumentsRead())
+                .append(", written=").append(getDocumentsWritten()).append('\n');
+        builder.append("bytes read=").append(getBytesRead())
+                .append(", written=").append(getBytesWritten()).append('\n');
+        builder.append("validation failures");
+        for (final Field field : Field.values()){
+            builder.append(' ').append(field).append('=').append(getValidationFailures(field));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,82 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info;
+
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 1回の読み出しの中で同じ内容のパスを1つのインスタンスにまとめる.
+ * <p>
+ *     多くのゲームが{@code game.exe}や{@code panel.png}のような同じ相対パスを持つため,
+ *     読み出したドキュメントの間で{@link Path}を共有するとカタログ全体のヒープ使用量が減る.
+ *     名前や説明のようにほとんど重複しない値はまとめない.
+ *     保持するパスの数には上限があり,上限に達すると保持していたパスを全て捨てる.
+ *     このため,ストリームで読み出すときもメモリ使用量はファイルの大きさに比例しない.
+ *     並列読み出しから呼び出されるため,このクラスはスレッドセーフである.
+ * </p>
+ */
+final class Interner {
+    /**
+     * 保持するパスの数の上限.
+     */
+    private static final int CAPACITY = 4096;
+
+    /**
+     * まとめるパスの文字列の長さの上限.長いパスは重複しにくいため保持しない.
+     */
+    private static final int MAX_LENGTH = 128;
+
+    private final ConcurrentHashMap<String, Path> paths = new ConcurrentHashMap<>();
+
+    /**
+     * 文字列をパスに変換する.既に同じ文字列から変換したパスがあればそれを返す.
+     * @return パスとして解釈できないとき {@code null}.
+     */
+    Path path(String text){
+        final Path cached = paths.get(text);
+        if(cached != null)return cached;
+
+        final Path path = parsePath(text);
+        if(path == null || text.length() > MAX_LENGTH)return path;
+
+        // 重複しないパスで埋まったときは,捨てて重複するパスが入り直すのを待つ
+        if(paths.size() >= CAPACITY)paths.clear();
+        final Path raced = paths.putIfAbsent(text, path);
+        return raced != null ? raced : path;
+    }
+
+    /**
+     * 文字列をパスに変換する.変換したパスは保持しない.
+     * @param interner 使用する{@link Interner}. {@code null}のときは共有しない.
+     * @return パスとして解釈できないとき {@code null}.
+     */
+    static Path path(String text, Interner interner){
+        return interner != null ? interner.path(text) : parsePath(text);
+    }
+
+    private static Path parsePath(String text){
+        if(text.indexOf('\0') >= 0)return null;
+        try {
+            return Paths.get(text);
+        }catch (InvalidPathException ex){
+            // Windowsで使えない文字を含む
+            return null;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info;
+
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * JSONファイルのトップレベル配列を先頭から順に読み進め,要素のオブジェクトが閉じるたびに{@link GameDocument}を作成する.
+ * <p>
+ *     ファイル全体を1つの文字列や{@link org.json.JSONArray}として保持しないため,
+ *     ファイルの大きさに関わらずメモリ上に存在するのは読み出し中の1件分のみである.
+ *     gzip形式で圧縮されたファイルは,読み進めるのに合わせて展開される.
+ *     使用後は必ず{@link #close()}を呼び出すこと.
+ * </p>
+ */
+public final class JSONDBIterator implements Iterator<GameDocument>, Closeable {
+    private final Reader reader;
+    private final JSONTokener tokener;
+    private final ValidationReport report;
+    private final Interner interner = new Interner();
+    private final CatalogMetrics metrics = CatalogMetrics.global();
+    private int documentIndex = 0;
+    private long parseNanos = 0;
+    private long constructNanos = 0;
+    private GameDocument nextDocument;
+    private boolean isFirstElement = true;
+    private boolean isFinished = false;
+
+    /**
+     * ゲーム情報を読み出すJSONファイルを開く.配列の中身は{@link #next()}の呼び出しに応じて読み出される.
+     * @param filePath JSONファイルのパス.
+     * @throws IOException ファイルを開けなかった
+     */
+    public JSONDBIterator(Path filePath) throws IOException {
+        this(filePath, ValidationReport.printing());
+    }
+
+    /**
+     * 不正なフィールドを{@link ValidationReport}に記録しながら読み出すJSONファイルを開く.
+     * @param filePath JSONファイルのパス.
+     * @param report 不正なフィールドを記録する{@link ValidationReport}
+     * @throws IOException ファイルを開けなかった
+     */
+    public JSONDBIterator(Path filePath, ValidationReport report) throws IOException {
+        this(Compression.newReader(filePath), report);
+        if(metrics == CatalogMetrics.NOOP)return;
+        try {
+            metrics.recordBytesRead(Files.size(filePath));
+        }catch (IOException ex){
+            // ファイルは開けているため,バイト数の通知のみを諦める
+        }
+    }
+
+    JSONDBIterator(Reader reader, ValidationReport report){
+        this.reader = reader;
+        this.report = report;
+        tokener = new JSONTokener(reader);
+
+        if(tokener.nextClean() != '['){
+            close();
+            throw tokener.syntaxError("A JSONArray text must start with '['");
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if(nextDocument == null && !isFinished){
+            nextDocument = readNextDocument();
+        }
+        return nextDocument != null;
+    }
+
+    @Override
+    public GameDocument next() {
+        if(!hasNext())throw new NoSuchElementException();
+
+        final GameDocument document = nextDocument;
+        nextDocument = null;
+        return document;
+    }
+
+    /**
+     * 次の{@link JSONObject}要素まで読み進める.オブジェクトでない要素は従来通り読み飛ばす.
+     * @return 配列の終端に達したとき {@code null}.
+     */
+    private GameDocument readNextDocument(){
+        while (true){
+            char c = tokener.nextClean();
+            if(isFirstElement){
+                isFirstElement = false;
+            }else {
+                if(c == ','){
+                    c = tokener.nextClean();
+                }else if(c != ']'){
+                    close();
+                    throw tokener.syntaxError("Expected a ',' or ']'");
+                }
+            }
+
+            if(c == ']' || c == 0){
+                close();
+                if(c == 0)throw tokener.syntaxError("Expected a ',' or ']'");
+                return null;
+            }
+            tokener.back();
+
+            final boolean isMeasured = metrics != CatalogMetrics.NOOP;
+            final long parseStart = isMeasured ? System.nanoTime() : 0;
+            final Object unchecked = tokener.nextValue();
+            if(unchecked instanceof JSONObject){
+                final long constructStart = isMeasured ? System.nanoTime() : 0;
+                if(isMeasured)parseNanos += constructStart - parseStart;
+                try {
+                    final GameDocument document = new GameDocument((JSONObject) unchecked, report, documentIndex++, interner);
+                    if(isMeasured)constructNanos += System.nanoTime() - constructStart;
+                    return document;
+                }catch (IllegalArgumentException ex){
+                    close();
+                    throw ex;
+                }
+            }
+            if(isMeasured)parseNanos += System.nanoTime() - parseStart;
+        }
+    }
+
+    /**
+     * 読み出し元のファイルを閉じる.初めて閉じたとき,それまでの計測値を{@link CatalogMetrics}に通知する.
+     */
+    @Override
+    public void close() {
+        if(!isFinished){
+            metrics.recordPhase(CatalogMetrics.Phase.PARSE, parseNanos);
+            metrics.recordPhase(CatalogMetrics.Phase.CONSTRUCT, constructNanos);
+            metrics.recordDocumentsRead(documentIndex);
+        }
+        isFinished = true;
+        try {
+            reader.close();
+        }catch (IOException ex){
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
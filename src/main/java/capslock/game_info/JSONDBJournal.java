@@ -0,0 +1,381 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * JSONファイルへの変更を1件ずつ追記する変更ログ.
+ * <p>
+ *     {@link #upsert(Game)}と{@link #delete(UUID)}は変更ログへ1行追記してディスクへ同期するだけなので,
+ *     カタログ全体の大きさに関わらず一定の入出力で済む.
+ *     変更ログは一定件数ごとにバックグラウンドでJSONファイルへ統合(コンパクション)される.
+ * </p>
+ * <p>
+ *     変更ログは{@code <JSONファイル名>.journal},コンパクション中の変更ログは{@code <JSONファイル名>.compacting}に置かれる.
+ *     コンパクション中に停止しても,次回の{@link #load()}とコンパクションで同じ変更が再適用されるため整合性は保たれる.
+ * </p>
+ */
+public final class JSONDBJournal implements Closeable {
+    /**
+     * コンパクションを開始する変更ログの件数の既定値.
+     */
+    public static final int DEFAULT_COMPACTION_THRESHOLD = 1000;
+
+    private static final String OPERATION = "op";
+    private static final String UPSERT = "upsert";
+    private static final String DELETE = "delete";
+    private static final String DOCUMENT = "document";
+
+    private final Path dbPath;
+    private final Path journalPath;
+    private final Path compactingPath;
+    private final int compactionThreshold;
+    private final Executor executor;
+
+    /**
+     * JSONファイルと退避中の変更ログを扱う間保持するロック.変更ログを扱うときは,このロックの後に{@code this}をロックする.
+     */
+    private final Object compactionLock = new Object();
+
+    /**
+     * {@link #compaction}を読み書きする間保持するロック.
+     */
+    private final Object compactionStateLock = new Object();
+
+    private FileChannel channel;
+    private int entryCount;
+    private CompletableFuture<Void> compaction = CompletableFuture.completedFuture(null);
+
+    /**
+     * 既定の件数で{@link ForkJoinPool#commonPool()}を使ってコンパクションする変更ログを開く.
+     * @param dbPath 変更を統合するJSONファイルのパス
+     * @throws IOException 変更ログを開けなかった
+     */
+    public JSONDBJournal(Path dbPath) throws IOException {
+        this(dbPath, DEFAULT_COMPACTION_THRESHOLD, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * 変更ログを開く.
+     * @param dbPath 変更を統合するJSONファイルのパス
+     * @param compactionThreshold 変更ログがこの件数に達したらコンパクションを開始する
+     * @param executor コンパクションを実行する{@link Executor}
+     * @throws IOException 変更ログを開けなかった
+     */
+    public JSONDBJournal(Path dbPath, int compactionThreshold, Executor executor) throws IOException {
+        if(compactionThreshold <= 0)throw new IllegalArgumentException("compactionThreshold must be positive.");
+
+        this.dbPath = dbPath.toAbsolutePath();
+        this.journalPath = this.dbPath.resolveSibling(this.dbPath.getFileName() + ".journal");
+        this.compactingPath = this.dbPath.resolveSibling(this.dbPath.getFileName() + ".compacting");
+        this.compactionThreshold = compactionThreshold;
+        this.executor = executor;
+
+        channel = openJournal();
+        try(final BufferedReader reader = Files.newBufferedReader(journalPath)){
+            entryCount = (int) reader.lines().count();
+        }
+    }
+
+    /**
+     * 変更ログを開き,末尾に追記できる位置まで進める.
+     * 追記中に停止して最後の行が途切れているときは,次の追記がその行に連結されないよう途切れた行を切り詰める.
+     * 途切れた行は{@link #append(JSONObject)}が同期を完了する前のものであり,呼び出し元には失敗が通知されている.
+     */
+    private FileChannel openJournal() throws IOException {
+        final FileChannel journal = FileChannel.open(journalPath,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            final long end = endOfLastLine(journal);
+            if(end < journal.size()){
+                System.err.println("Discarded a broken entry at the end of " + journalPath);
+                journal.truncate(end);
+                journal.force(false);
+            }
+            journal.position(end);
+            // 新しく作った変更ログへの追記を同期しても,ディレクトリに名前が残らなければ失われる
+            AtomicFiles.syncDirectory(journalPath.getParent());
+            return journal;
+        }catch (IOException ex){
+            journal.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * @return 最後の改行の直後の位置. 改行が無いとき {@code 0}.
+     */
+    private static long endOfLastLine(FileChannel journal) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(4096);
+        long end = journal.size();
+        while (end > 0){
+            final long start = Math.max(0, end - buffer.capacity());
+            buffer.clear().limit((int) (end - start));
+            while (buffer.hasRemaining()){
+                if(journal.read(buffer, start + buffer.position()) < 0)throw new IOException("Unexpected end of the journal.");
+            }
+            for (int i = buffer.limit() - 1; i >= 0; i--){
+                if(buffer.get(i) == '\n')return start + i + 1;
+            }
+            end = start;
+        }
+        return 0;
+    }
+
+    /**
+     * ゲーム情報の追加または更新を記録する.
+     * @param game 追加または更新したゲーム情報.UUIDが設定されていなければならない.
+     * @throws IOException 変更ログへの書き込みに失敗した
+     */
+    public void upsert(Game game) throws IOException {
+        if(game.getUUID() == null)throw new IllegalArgumentException("There is no \"UUID\" field. This field is necessary.");
+
+        append(new JSONObject()
+                .put(OPERATION, UPSERT)
+                .put(DOCUMENT, game.toJSON()));
+    }
+
+    /**
+     * ゲーム情報の削除を記録する.
+     * @param uuid 削除するゲームのUUID
+     * @throws IOException 変更ログへの書き込みに失敗した
+     */
+    public void delete(UUID uuid) throws IOException {
+        append(new JSONObject()
+                .put(OPERATION, DELETE)
+                .put("UUID", uuid.toString()));
+    }
+
+    private void append(JSONObject entry) throws IOException {
+        final ByteBuffer line = ByteBuffer.wrap((entry.toString() + '\n').getBytes(StandardCharsets.UTF_8));
+
+        final boolean needsCompaction;
+        synchronized (this){
+            final long start = channel.position();
+            try {
+                while (line.hasRemaining()){
+                    channel.write(line);
+                }
+                channel.force(false);
+            }catch (IOException ex){
+                // 書きかけの行に次の追記が連結されないよう,書き込み前の位置まで戻す
+                try {
+                    channel.truncate(start);
+                    channel.position(start);
+                }catch (IOException truncateException){
+                    ex.addSuppressed(truncateException);
+                }
+                throw ex;
+            }
+            needsCompaction = ++entryCount >= compactionThreshold;
+        }
+
+        if(needsCompaction)compact();
+    }
+
+    /**
+     * JSONファイルに変更ログを適用したゲーム情報を読み出す.
+     * @return 変更を反映した{@link GameDocument}のリスト.JSONファイル内の順序を保ち,新規追加分は末尾に並ぶ.
+     * @throws IOException ファイル読み込み中にエラーが発生した
+     */
+    public List<GameDocument> load() throws IOException {
+        synchronized (compactionLock){
+            final Map<Object, GameDocument> documents = readDB();
+            replay(compactingPath, documents);
+            synchronized (this){
+                channel.force(false);
+                replay(journalPath, documents);
+            }
+            return new ArrayList<>(documents.values());
+        }
+    }
+
+    /**
+     * 変更ログをJSONファイルへ統合する.既にコンパクションが実行中のときは,そのコンパクションを返す.
+     * @return コンパクションの完了を表す{@link CompletableFuture}
+     */
+    public CompletableFuture<Void> compact(){
+        final CompletableFuture<Void> next = new CompletableFuture<>();
+        synchronized (compactionStateLock){
+            if(!compaction.isDone())return compaction;
+            compaction = next;
+        }
+
+        // 同期的なExecutorが渡されても,ロックを保持したままコンパクションを実行しないようにロックの外で投入する
+        try {
+            executor.execute(() -> {
+                try {
+                    compactNow();
+                    next.complete(null);
+                }catch (IOException ex){
+                    System.err.println("Failed to compact " + journalPath + " into " + dbPath);
+                    next.completeExceptionally(ex);
+                }catch (RuntimeException ex){
+                    next.completeExceptionally(ex);
+                }
+            });
+        }catch (RejectedExecutionException ex){
+            System.err.println("Failed to start compaction of " + journalPath);
+            next.completeExceptionally(ex);
+        }
+        return next;
+    }
+
+    private void compactNow() throws IOException {
+        synchronized (compactionLock){
+            // 追記を止める時間を短くするため,現在の変更ログを退避して新しい変更ログに切り替える
+            synchronized (this){
+                channel.force(false);
+                channel.close();
+                if(entryCount > 0){
+                    if(Files.exists(compactingPath)){
+                        // 追記した内容を同期してから削除しないと,停止したときに記録済みの変更が失われる
+                        appendJournalToCompacting();
+                        Files.delete(journalPath);
+                    }else {
+                        Files.move(journalPath, compactingPath);
+                    }
+                }
+                // 名前の変更と削除は,新しい変更ログを開くときにディレクトリごと同期される
+                channel = openJournal();
+                entryCount = 0;
+            }
+
+            if(!Files.exists(compactingPath))return;
+
+            final Map<Object, GameDocument> documents = readDB();
+            replay(compactingPath, documents);
+
+            final JSONDBWriter writer = new JSONDBWriter();
+            documents.values().forEach(writer::add);
+            writer.flushAtomically(dbPath);
+
+            Files.delete(compactingPath);
+        }
+    }
+
+    private void appendJournalToCompacting() throws IOException {
+        try(final FileChannel journal = FileChannel.open(journalPath, StandardOpenOption.READ);
+            final FileChannel compacting = FileChannel.open(compactingPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND)){
+            final long size = journal.size();
+            long position = 0;
+            while (position < size){
+                position += journal.transferTo(position, size - position, compacting);
+            }
+            compacting.force(true);
+        }
+    }
+
+    private Map<Object, GameDocument> readDB() throws IOException {
+        final Map<Object, GameDocument> documents = new LinkedHashMap<>();
+        if(!Files.exists(dbPath))return documents;
+
+        for (final GameDocument document : new JSONDBReader(dbPath).getDocumentList()){
+            // UUIDの無いドキュメントは互いに区別できないが,失わないように別々のキーで保持する
+            documents.put(document.uuid != null ? document.uuid : new Object(), document);
+        }
+        return documents;
+    }
+
+    private static void replay(Path logPath, Map<Object, GameDocument> documents) throws IOException {
+        if(!Files.exists(logPath))return;
+
+        try(final BufferedReader reader = Files.newBufferedReader(logPath)){
+            String line;
+            while ((line = reader.readLine()) != null){
+                if(line.isEmpty())continue;
+
+                final JSONObject entry;
+                try {
+                    entry = new JSONObject(line);
+                }catch (JSONException ex){
+                    // 追記中に停止したときは最後の行が途切れている
+                    System.err.println("Skipped a broken entry in " + logPath);
+                    continue;
+                }
+
+                try {
+                    apply(entry, documents, logPath);
+                }catch (JSONException | IllegalArgumentException ex){
+                    // 1件の不正な変更のために,他の変更を読み出せなくならないようにする
+                    System.err.println("Skipped an invalid entry in " + logPath + " : " + ex.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * @throws JSONException 変更の形式が不正である
+     * @throws IllegalArgumentException 変更のゲーム情報またはUUIDが不正である
+     */
+    private static void apply(JSONObject entry, Map<Object, GameDocument> documents, Path logPath)
+            throws JSONException, IllegalArgumentException {
+        switch (entry.optString(OPERATION)){
+            case UPSERT:
+                final GameDocument document = new GameDocument(entry.getJSONObject(DOCUMENT));
+                if(document.uuid == null)throw new IllegalArgumentException("There is no \"UUID\" field.");
+                documents.put(document.uuid, document);
+                break;
+            case DELETE:
+                documents.remove(UUID.fromString(entry.getString("UUID")));
+                break;
+            default:
+                System.err.println("Unknown operation in " + logPath + " : " + entry.optString(OPERATION));
+        }
+    }
+
+    /**
+     * 実行中のコンパクションの完了を待ち,変更ログを閉じる.
+     * @throws IOException 変更ログを閉じられなかった
+     */
+    @Override
+    public void close() throws IOException {
+        final CompletableFuture<Void> running;
+        synchronized (compactionStateLock){
+            running = compaction;
+        }
+        try {
+            running.join();
+        }catch (RuntimeException ex){
+            // コンパクションの失敗は既に報告済みで,変更ログに変更が残っている
+        }
+
+        synchronized (this){
+            channel.close();
+        }
+    }
+}
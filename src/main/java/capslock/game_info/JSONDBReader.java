@@ -15,18 +15,33 @@
 
 package capslock.game_info;
 
-import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.io.IOException;
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * JSONファイルからゲーム情報を読み出して{@link GameDocument}オブジェクトを作成する.
+ * <p>
+ *     gzip形式で圧縮されたファイルは,先頭のマジックナンバーで判定して展開しながら読み出す.
+ *     圧縮されたファイルはメモリにマップできないため,メモリマップを使う読み出し方法でも{@link #JSONDBReader(Path)}と同じ方法で読み出す.
+ * </p>
  */
 public final class JSONDBReader {
     private final List<GameDocument> gameList;
@@ -38,19 +53,359 @@ public final class JSONDBReader {
      * @throws IOException ファイル読み込み中にエラーが発生した
      */
     public JSONDBReader(Path filePath) throws IllegalArgumentException, IOException {
-        final String JSONRawString = Files.newBufferedReader(filePath)
-                .lines()
-                .collect(Collectors.joining());
+        this(filePath, ValidationReport.printing());
+    }
 
+    /**
+     * 不正なフィールドを{@link ValidationReport}に記録しながらゲーム情報を読み出す.
+     * 不正なフィールドは標準エラー出力には書き出されない.
+     * @param filePath JSONファイルのパス.
+     * @param report 不正なフィールドを記録する{@link ValidationReport}
+     * @throws IllegalArgumentException {@code report}が{@link ValidationReport#failFast()}で作られ,不正なフィールドが見つかった
+     * @throws IOException ファイル読み込み中にエラーが発生した
+     */
+    public JSONDBReader(Path filePath, ValidationReport report) throws IllegalArgumentException, IOException {
         gameList = new ArrayList<>();
 
-        for (Object unchecked : new JSONArray(JSONRawString)){
-            if(unchecked instanceof JSONObject){
-                gameList.add(new GameDocument((JSONObject) unchecked));
+        try(final JSONDBIterator iterator = new JSONDBIterator(filePath, report)){
+            iterator.forEachRemaining(gameList::add);
+        }
+    }
+
+    private JSONDBReader(List<GameDocument> gameList){
+        this.gameList = gameList;
+    }
+
+    /**
+     * ファイルをメモリにマップし,UTF-8のバイト列から直接ゲーム情報を読み出す.
+     * <p>
+     *     文字コードの変換やファイル全体のコピーを行わない.
+     *     文字列は{@link GameDocument}が読み出すフィールドの値についてのみ作られ,未知のキーの値は読み飛ばされる.
+     *     マップできない大きさのファイルと圧縮されたファイルは{@link #JSONDBReader(Path)}と同じ方法で読み出す.
+     * </p>
+     * @param filePath JSONファイルのパス.
+     * @return 読み出しが完了したインスタンス
+     * @throws IOException ファイル読み込み中にエラーが発生した
+     */
+    public static JSONDBReader mapped(Path filePath) throws IOException {
+        return mapped(filePath, ValidationReport.printing());
+    }
+
+    /**
+     * 不正なフィールドを{@link ValidationReport}に記録しながら,{@link #mapped(Path)}と同じ方法でゲーム情報を読み出す.
+     * @param filePath JSONファイルのパス.
+     * @param report 不正なフィールドを記録する{@link ValidationReport}
+     * @return 読み出しが完了したインスタンス
+     * @throws IllegalArgumentException {@code report}が{@link ValidationReport#failFast()}で作られ,不正なフィールドが見つかった
+     * @throws IOException ファイル読み込み中にエラーが発生した
+     */
+    public static JSONDBReader mapped(Path filePath, ValidationReport report) throws IllegalArgumentException, IOException {
+        try(final FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)){
+            final long size = channel.size();
+            if(size > Integer.MAX_VALUE || Compression.detect(channel) != Compression.NONE){
+                return new JSONDBReader(filePath, report);
+            }
+
+            final MappedByteBuffer buffer = map(channel, size);
+            return new JSONDBReader(parseDocuments(buffer, report));
+        }
+    }
+
+    /**
+     * {@link ForkJoinPool#commonPool()}を使い,複数のスレッドでゲーム情報を読み出す.
+     * @param filePath JSONファイルのパス.
+     * @return 読み出しが完了したインスタンス
+     * @throws IOException ファイル読み込み中にエラーが発生した
+     * @see #parallel(Path, Executor)
+     */
+    public static JSONDBReader parallel(Path filePath) throws IOException {
+        return parallel(filePath, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * 複数のスレッドでゲーム情報を読み出す.
+     * <p>
+     *     ファイルをメモリにマップしてトップレベル配列の各オブジェクトのバイト範囲を求め,
+     *     範囲ごとの{@link GameDocument}の作成を{@code executor}で並列に実行する.
+     *     結果のリストはファイル内の順序を保つ.検証メッセージは{@link #JSONDBReader(Path)}と同じだが,出力順は不定である.
+     * </p>
+     * @param filePath JSONファイルのパス.
+     * @param executor {@link GameDocument}の作成を実行する{@link Executor}
+     * @return 読み出しが完了したインスタンス
+     * @throws IOException ファイル読み込み中にエラーが発生した
+     */
+    public static JSONDBReader parallel(Path filePath, Executor executor) throws IOException {
+        return parallel(filePath, executor, ValidationReport.printing());
+    }
+
+    /**
+     * 不正なフィールドを{@link ValidationReport}に記録しながら,{@link #parallel(Path, Executor)}と同じ方法でゲーム情報を読み出す.
+     * @param filePath JSONファイルのパス.
+     * @param executor {@link GameDocument}の作成を実行する{@link Executor}
+     * @param report 不正なフィールドを記録する{@link ValidationReport}.問題の記録順は不定である.
+     * @return 読み出しが完了したインスタンス
+     * @throws IllegalArgumentException {@code report}が{@link ValidationReport#failFast()}で作られ,不正なフィールドが見つかった
+     * @throws IOException ファイル読み込み中にエラーが発生した
+     */
+    public static JSONDBReader parallel(Path filePath, Executor executor, ValidationReport report)
+            throws IllegalArgumentException, IOException {
+        try(final FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)){
+            final long size = channel.size();
+            if(size > Integer.MAX_VALUE || Compression.detect(channel) != Compression.NONE){
+                return new JSONDBReader(filePath, report);
             }
+
+            final MappedByteBuffer buffer = map(channel, size);
+            return new JSONDBReader(parseDocuments(buffer, executor, report));
         }
     }
 
+    /**
+     * 各フィールドを最初に参照されたときにデコードするゲーム情報を読み出す.
+     * <p>
+     *     ファイルの内容はヒープ外の専用のバッファに読み込まれ,読み出し時にはUUIDと各フィールドの値の位置のみを記録する.
+     *     ファイルはマップしないため,読み出した後にファイルを書き換えたり置き換えたりしてもよい.
+     *     ランチャーの一覧画面のように一部のフィールドしか参照しない用途では,
+     *     起動時間とヒープ使用量が参照したフィールドの量に比例し,カタログ全体の大きさに左右されない.
+     *     不正なフィールドはそのフィールドを初めて参照したときに標準エラー出力に報告される.
+     *     2GiBを超えるファイルと圧縮されたファイルは,全てのフィールドを直ちに読み出す.
+     * </p>
+     * <p>
+     *     返されるゲーム情報は変更できない.変更するときは{@link GameSnapshot#of(Game)}と
+     *     {@link GameSnapshot#toDocument()}で{@link GameDocument}に複製する.
+     * </p>
+     * @param filePath JSONファイルのパス.
+     * @return ファイル内の順序で並んだ,変更できないリスト
+     * @throws IOException ファイル読み込み中にエラーが発生した
+     */
+    public static List<Game> lazy(Path filePath) throws IOException {
+        return lazy(filePath, ValidationReport.printing());
+    }
+
+    /**
+     * 不正なフィールドを{@link ValidationReport}に記録しながら,{@link #lazy(Path)}と同じ方法でゲーム情報を読み出す.
+     * UUID以外のフィールドの問題は,そのフィールドを初めて参照したときに記録される.
+     * @param filePath JSONファイルのパス.
+     * @param report 不正なフィールドを記録する{@link ValidationReport}
+     * @return ファイル内の順序で並んだ,変更できないリスト
+     * @throws IllegalArgumentException {@code report}が{@link ValidationReport#failFast()}で作られ,不正なUUIDが見つかった.
+     * 他のフィールドでは,そのゲッターがこの例外を投げる.
+     * @throws IOException ファイル読み込み中にエラーが発生した
+     */
+    public static List<Game> lazy(Path filePath, ValidationReport report) throws IllegalArgumentException, IOException {
+        try(final FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)){
+            final long size = channel.size();
+            if(size > Integer.MAX_VALUE || Compression.detect(channel) != Compression.NONE){
+                return Collections.unmodifiableList(new JSONDBReader(filePath, report).getDocumentList());
+            }
+
+            return Collections.unmodifiableList(parseLazyDocuments(readPrivately(channel, (int) size), report));
+        }
+    }
+
+    /**
+     * UTF-8でエンコードされたJSON配列から{@link LazyGame}のリストを作る.オブジェクトでない要素は読み飛ばす.
+     */
+    static List<Game> parseLazyDocuments(ByteBuffer buffer, ValidationReport report){
+        final long start = System.nanoTime();
+        final ByteJSONScanner scanner = new ByteJSONScanner(buffer, skipBOM(buffer), buffer.limit());
+        final List<Game> documents = new ArrayList<>();
+
+        if(scanner.beginArray()) {
+            do {
+                if(scanner.peekClean() == '{'){
+                    documents.add(new LazyGame(buffer, scanner, buffer.limit(), report, documents.size()));
+                }else {
+                    scanner.skipValue();
+                }
+            }while (scanner.nextSeparator(']'));
+        }
+
+        // 値の位置を記録するのみで,ゲーム情報の作成はフィールドを参照したときに行われる
+        final CatalogMetrics metrics = CatalogMetrics.global();
+        metrics.recordPhase(CatalogMetrics.Phase.PARSE, System.nanoTime() - start);
+        metrics.recordDocumentsRead(documents.size());
+        return documents;
+    }
+
+    /**
+     * ファイル全体をヒープ外の専用のバッファに読み込む.
+     * {@link LazyGame}はバッファを参照し続けるため,マップしたバッファを渡すとファイルの縮小で後のゲッターが失敗し,
+     * Windowsではファイルの置き換えもできなくなる.
+     */
+    private static ByteBuffer readPrivately(FileChannel channel, int size) throws IOException {
+        final long start = System.nanoTime();
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+        while (buffer.hasRemaining()){
+            if(channel.read(buffer) < 0)break;
+        }
+        buffer.flip();
+
+        final CatalogMetrics metrics = CatalogMetrics.global();
+        metrics.recordPhase(CatalogMetrics.Phase.READ, System.nanoTime() - start);
+        metrics.recordBytesRead(buffer.limit());
+        return buffer;
+    }
+
+    /**
+     * ファイル全体をメモリマップする.
+     * 実際の読み出しはページにアクセスしたときに行われるため,その時間は{@link CatalogMetrics.Phase#PARSE}に含まれる.
+     */
+    private static MappedByteBuffer map(FileChannel channel, long size) throws IOException {
+        final long start = System.nanoTime();
+        final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+        final CatalogMetrics metrics = CatalogMetrics.global();
+        metrics.recordPhase(CatalogMetrics.Phase.READ, System.nanoTime() - start);
+        metrics.recordBytesRead(size);
+        return buffer;
+    }
+
+    /**
+     * トップレベル配列のオブジェクト要素のバイト範囲を求める.値のデコードは行わない.
+     * @return 偶数番目に開始位置,奇数番目に終了位置を並べた配列
+     */
+    static int[] findObjectRanges(ByteBuffer buffer){
+        final ByteJSONScanner scanner = new ByteJSONScanner(buffer, skipBOM(buffer), buffer.limit());
+        int[] ranges = new int[64];
+        int count = 0;
+
+        if(scanner.beginArray()) {
+            do {
+                final boolean isObject = scanner.peekClean() == '{';
+                final int start = scanner.position();
+                scanner.skipValue();
+                if(!isObject)continue;
+
+                if(count + 2 > ranges.length)ranges = Arrays.copyOf(ranges, ranges.length * 2);
+                ranges[count++] = start;
+                ranges[count++] = scanner.position();
+            } while (scanner.nextSeparator(']'));
+        }
+
+        return Arrays.copyOf(ranges, count);
+    }
+
+    /**
+     * {@link #findObjectRanges(ByteBuffer)}で求めた範囲ごとに{@link GameDocument}を並列に作る.
+     */
+    static List<GameDocument> parseDocuments(ByteBuffer buffer, Executor executor, ValidationReport report){
+        final CatalogMetrics metrics = CatalogMetrics.global();
+        final long parseStart = System.nanoTime();
+        final int[] ranges = findObjectRanges(buffer);
+        final long constructStart = System.nanoTime();
+        metrics.recordPhase(CatalogMetrics.Phase.PARSE, constructStart - parseStart);
+
+        final int documentCount = ranges.length / 2;
+        final GameDocument[] documents = new GameDocument[documentCount];
+        final Interner interner = new Interner();
+        if(documentCount == 0){
+            metrics.recordDocumentsRead(0);
+            return new ArrayList<>();
+        }
+
+        // 1件ごとにタスクを作るとスケジューリングの負荷が勝るため,まとまった件数ごとに分割する
+        final int chunkCount = Math.min(documentCount, Runtime.getRuntime().availableProcessors() * 4);
+        final int chunkSize = (documentCount + chunkCount - 1) / chunkCount;
+        final CompletableFuture<?>[] futures = new CompletableFuture<?>[(documentCount + chunkSize - 1) / chunkSize];
+
+        for (int chunk = 0; chunk < futures.length; chunk++){
+            final int from = chunk * chunkSize;
+            final int to = Math.min(from + chunkSize, documentCount);
+            futures[chunk] = CompletableFuture.runAsync(() -> {
+                final ByteBuffer view = buffer.duplicate();
+                for (int i = from; i < to; i++){
+                    final ByteJSONScanner scanner = new ByteJSONScanner(view, ranges[i * 2], ranges[i * 2 + 1]);
+                    documents[i] = new GameDocument(scanner.nextDocumentObject(), report, i, interner);
+                }
+            }, executor);
+        }
+
+        try {
+            CompletableFuture.allOf(futures).join();
+        }catch (CompletionException ex){
+            if(ex.getCause() instanceof RuntimeException)throw (RuntimeException) ex.getCause();
+            throw ex;
+        }
+
+        // 各オブジェクトの字句解析も並列に行うため,その時間はCONSTRUCTに含まれる
+        metrics.recordPhase(CatalogMetrics.Phase.CONSTRUCT, System.nanoTime() - constructStart);
+        metrics.recordDocumentsRead(documentCount);
+        return new ArrayList<>(Arrays.asList(documents));
+    }
+
+    /**
+     * UTF-8でエンコードされたJSON配列から{@link GameDocument}のリストを作る.オブジェクトでない要素は読み飛ばす.
+     */
+    static List<GameDocument> parseDocuments(ByteBuffer buffer, ValidationReport report){
+        final ByteJSONScanner scanner = new ByteJSONScanner(buffer, skipBOM(buffer), buffer.limit());
+        final List<GameDocument> documents = new ArrayList<>();
+        final Interner interner = new Interner();
+        final CatalogMetrics metrics = CatalogMetrics.global();
+        final boolean isMeasured = metrics != CatalogMetrics.NOOP;
+        long parseNanos = 0;
+        long constructNanos = 0;
+
+        if(scanner.beginArray()) {
+            do {
+                if(scanner.peekClean() == '{'){
+                    final long parseStart = isMeasured ? System.nanoTime() : 0;
+                    final JSONObject object = scanner.nextDocumentObject();
+                    final long constructStart = isMeasured ? System.nanoTime() : 0;
+                    documents.add(new GameDocument(object, report, documents.size(), interner));
+                    if(isMeasured){
+                        parseNanos += constructStart - parseStart;
+                        constructNanos += System.nanoTime() - constructStart;
+                    }
+                }else {
+                    scanner.skipValue();
+                }
+            }while (scanner.nextSeparator(']'));
+        }
+
+        metrics.recordPhase(CatalogMetrics.Phase.PARSE, parseNanos);
+        metrics.recordPhase(CatalogMetrics.Phase.CONSTRUCT, constructNanos);
+        metrics.recordDocumentsRead(documents.size());
+        return documents;
+    }
+
+    private static int skipBOM(ByteBuffer buffer){
+        final int start = buffer.position();
+        if(buffer.limit() - start >= 3
+                && buffer.get(start) == (byte) 0xEF
+                && buffer.get(start + 1) == (byte) 0xBB
+                && buffer.get(start + 2) == (byte) 0xBF){
+            return start + 3;
+        }
+        return start;
+    }
+
+    /**
+     * JSONファイルから{@link GameDocument}を1件ずつ読み出す{@link Stream}を作成する.
+     * 全件をリストとして保持しないため,巨大なファイルでもメモリ使用量は一定である.
+     * 使用後は{@link Stream#close()}でファイルを閉じること.
+     * @param filePath JSONファイルのパス.
+     * @return ファイル内の順序で{@link GameDocument}を返す{@link Stream}
+     * @throws IOException ファイルを開けなかった
+     */
+    public static Stream<GameDocument> stream(Path filePath) throws IOException {
+        return stream(filePath, ValidationReport.printing());
+    }
+
+    /**
+     * 不正なフィールドを{@link ValidationReport}に記録しながら,{@link GameDocument}を1件ずつ読み出す{@link Stream}を作成する.
+     * @param filePath JSONファイルのパス.
+     * @param report 不正なフィールドを記録する{@link ValidationReport}
+     * @return ファイル内の順序で{@link GameDocument}を返す{@link Stream}
+     * @throws IOException ファイルを開けなかった
+     */
+    public static Stream<GameDocument> stream(Path filePath, ValidationReport report) throws IOException {
+        final JSONDBIterator iterator = new JSONDBIterator(filePath, report);
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(iterator::close);
+    }
+
     /**
      * JSONファイルから読みだした{@link GameDocument}を返す.
      * {@link GameDocument}のリストを返す.
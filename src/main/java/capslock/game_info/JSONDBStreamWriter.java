@@ -0,0 +1,273 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * ゲーム情報を追加されるたびにJSON形式のUTF-8バイト列へ変換し,書き出し先へ順に書き込む.
+ * <p>
+ *     {@link JSONDBWriter}と異なり{@link org.json.JSONObject}や全件分の{@link org.json.JSONArray}を作らない.
+ *     文字列とバイト列のバッファは再利用されるため,書き出す件数に関わらずメモリ使用量は一定である.
+ *     出力されるJSONは{@link JSONDBWriter}と同じ内容だが,キーの順序は{@link Field}の宣言順に固定される.
+ *     このクラスはスレッドセーフでない.
+ * </p>
+ */
+public final class JSONDBStreamWriter implements Closeable, Flushable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * 説明の長いゲームで大きくなった文字列バッファを保持し続けないための上限.
+     */
+    private static final int MAX_RETAINED_TEXT = 64 * 1024;
+
+    private final WritableByteChannel channel;
+    private final OutputStream out;
+    private final Compression compression;
+    private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private StringBuilder text = new StringBuilder(256);
+
+    private int documentCount = 0;
+    private boolean isFinished = false;
+    private long serializeNanos = 0;
+    private long writeNanos = 0;
+    private long bytesWritten = 0;
+
+    /**
+     * 圧縮せずに{@link OutputStream}へ書き出す.
+     * @param out 書き出し先
+     */
+    public JSONDBStreamWriter(OutputStream out){
+        this.channel = null;
+        this.out = out;
+        this.compression = Compression.NONE;
+    }
+
+    /**
+     * 指定した形式で圧縮して{@link OutputStream}へ書き出す.
+     * @param out 書き出し先
+     * @param compression 圧縮形式
+     * @throws IOException 圧縮形式のヘッダーを書き込めなかった
+     */
+    public JSONDBStreamWriter(OutputStream out, Compression compression) throws IOException {
+        this.channel = null;
+        this.out = compression.wrap(out);
+        this.compression = compression;
+    }
+
+    /**
+     * 圧縮せずに{@link WritableByteChannel}へ書き出す.
+     * @param channel 書き出し先
+     */
+    public JSONDBStreamWriter(WritableByteChannel channel){
+        this.channel = channel;
+        this.out = null;
+        this.compression = Compression.NONE;
+    }
+
+    /**
+     * 指定した形式で圧縮して{@link WritableByteChannel}へ書き出す.
+     * @param channel 書き出し先
+     * @param compression 圧縮形式
+     * @throws IOException 圧縮形式のヘッダーを書き込めなかった
+     */
+    public JSONDBStreamWriter(WritableByteChannel channel, Compression compression) throws IOException {
+        if(compression == Compression.NONE){
+            this.channel = channel;
+            this.out = null;
+        }else {
+            this.channel = null;
+            this.out = compression.wrap(Channels.newOutputStream(channel));
+        }
+        this.compression = compression;
+    }
+
+    /**
+     * ファイルを作成または切り詰めて,書き出し先とする.
+     * @param filePath 書き出すJSONファイルのパス
+     * @param compression 圧縮形式
+     * @return 新しいインスタンス.使用後は必ず{@link #close()}を呼び出すこと.
+     * @throws IOException ファイルを開けなかった
+     */
+    public static JSONDBStreamWriter open(Path filePath, Compression compression) throws IOException {
+        final FileChannel channel;
+        try {
+            channel = FileChannel.open(filePath,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        }catch (IOException ex){
+            System.err.println("Failed to write on " + filePath);
+            throw ex;
+        }
+
+        try {
+            return new JSONDBStreamWriter(channel, compression);
+        }catch (IOException ex){
+            channel.close();
+            System.err.println("Failed to write on " + filePath);
+            throw ex;
+        }
+    }
+
+    /**
+     * ゲーム情報をJSONファイルに原子的に書き出す.
+     * 一時ファイルに書き込んでディスクへ同期した後に名前を変更するため,書き込み中に停止しても元のファイルは壊れない.
+     * @param filePath 情報を書き出すJSONファイルのパス
+     * @param games 書き出すゲーム情報.1件ずつ順に取り出される.
+     * @param compression 圧縮形式
+     * @throws IOException ファイル書き込みに失敗した.このとき元のファイルは変更されない.
+     */
+    public static void writeAtomically(Path filePath, Iterable<? extends Game> games, Compression compression)
+            throws IOException {
+        try {
+            AtomicFiles.write(filePath, out -> {
+                final JSONDBStreamWriter writer = new JSONDBStreamWriter(out, compression);
+                for (final Game game : games){
+                    writer.add(game);
+                }
+                writer.finish();
+            });
+        } catch (IOException ex) {
+            System.err.println("Failed to write on " + filePath);
+            throw ex;
+        }
+    }
+
+    /**
+     * ゲーム情報を1件変換して書き込む.バッファが一杯になったときのみ書き出し先への書き込みが行われる.
+     * @param game 書き込むゲーム情報
+     * @return this
+     * @throws IOException 書き出し先への書き込みに失敗した
+     * @throws IllegalStateException {@link #finish()}または{@link #close()}を呼び出した後である
+     */
+    public JSONDBStreamWriter add(Game game) throws IOException, IllegalStateException {
+        if(isFinished)throw new IllegalStateException("The writer is already finished.");
+
+        final long serializeStart = System.nanoTime();
+        text.append(documentCount == 0 ? '[' : ',');
+        game.appendJSON(text);
+        final long writeStart = System.nanoTime();
+        serializeNanos += writeStart - serializeStart;
+
+        encode(text);
+        documentCount++;
+        writeNanos += System.nanoTime() - writeStart;
+
+        if(text.capacity() > MAX_RETAINED_TEXT){
+            text = new StringBuilder(256);
+        }else {
+            text.setLength(0);
+        }
+        return this;
+    }
+
+    /**
+     * バッファに残っているバイト列を書き出し先へ書き込む.
+     * @throws IOException 書き出し先への書き込みに失敗した
+     */
+    @Override
+    public void flush() throws IOException {
+        final long start = System.nanoTime();
+        drain();
+        if(out != null)out.flush();
+        writeNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * 配列を閉じて残りのバイト列を書き込み,圧縮しているときは圧縮を終える.書き出し先は閉じない.
+     * 2回目以降の呼び出しは何もしない.
+     * @throws IOException 書き出し先への書き込みに失敗した
+     */
+    public void finish() throws IOException {
+        if(isFinished)return;
+        isFinished = true;
+
+        final long start = System.nanoTime();
+        encode(documentCount == 0 ? "[]" : "]");
+        drain();
+        if(out != null){
+            compression.finish(out);
+            out.flush();
+        }
+        writeNanos += System.nanoTime() - start;
+
+        final CatalogMetrics metrics = CatalogMetrics.global();
+        metrics.recordPhase(CatalogMetrics.Phase.SERIALIZE, serializeNanos);
+        metrics.recordPhase(CatalogMetrics.Phase.WRITE, writeNanos);
+        metrics.recordDocumentsWritten(documentCount);
+        metrics.recordBytesWritten(bytesWritten);
+    }
+
+    /**
+     * {@link #finish()}を呼び出した後,書き出し先を閉じる.
+     * @throws IOException 書き出し先への書き込みに失敗した
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        }finally {
+            if(channel != null){
+                channel.close();
+            }else {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * 文字列をUTF-8でバッファへエンコードする.バッファが一杯になるたびに書き出し先へ書き込む.
+     */
+    private void encode(CharSequence chars) throws IOException {
+        final CharBuffer input = CharBuffer.wrap(chars);
+        encoder.reset();
+        // 不正な文字は置換されるため,結果はバッファの不足か入力の終わりのどちらかである
+        while (encoder.encode(input, bytes, true).isOverflow()){
+            drain();
+        }
+        while (encoder.flush(bytes).isOverflow()){
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        bytes.flip();
+        bytesWritten += bytes.remaining();
+        if(channel != null){
+            while (bytes.hasRemaining()){
+                channel.write(bytes);
+            }
+        }else {
+            out.write(bytes.array(), bytes.arrayOffset(), bytes.remaining());
+        }
+        bytes.clear();
+    }
+}
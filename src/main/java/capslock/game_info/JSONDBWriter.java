@@ -19,6 +19,10 @@ import org.json.JSONArray;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
@@ -29,6 +33,7 @@ import java.nio.file.StandardOpenOption;
 public final class JSONDBWriter {
     private final JSONArray gameList = new JSONArray();
     private final Path filePath;
+    private long serializeNanos = 0;
 
     public JSONDBWriter(){filePath = null;}
 
@@ -49,7 +54,9 @@ public final class JSONDBWriter {
      * @param game 追加するゲーム情報
      */
     public final JSONDBWriter add(Game game){
+        final long start = System.nanoTime();
         gameList.put(game.toJSON());
+        serializeNanos += System.nanoTime() - start;
         return this;
     }
 
@@ -60,6 +67,7 @@ public final class JSONDBWriter {
      */
     @Deprecated
     public final void flush() throws IOException{
+        final long start = System.nanoTime();
         try(final BufferedWriter writer = Files.newBufferedWriter(filePath,
                 StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
             gameList.write(writer);
@@ -67,6 +75,7 @@ public final class JSONDBWriter {
             System.err.println("Failed to write on " + filePath);
             throw ex;
         }
+        recordFlush(filePath, start);
     }
 
     /**
@@ -75,12 +84,76 @@ public final class JSONDBWriter {
      * @throws IOException ファイル書き込みに失敗した.
      */
     public final void flush(Path filePath) throws IOException {
-        try(final BufferedWriter writer = Files.newBufferedWriter(filePath,
-                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+        flush(filePath, Compression.NONE);
+    }
+
+    /**
+     * ゲームの登録情報を,指定した形式で圧縮したJSONファイルに書き出す.
+     * @param filePath 情報を書き出すファイルのパス
+     * @param compression 圧縮形式
+     * @throws IOException ファイル書き込みに失敗した.
+     */
+    public final void flush(Path filePath, Compression compression) throws IOException {
+        final long start = System.nanoTime();
+        try(final Writer writer = new BufferedWriter(new OutputStreamWriter(compression.wrap(Files.newOutputStream(filePath,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)),
+                StandardCharsets.UTF_8.newEncoder()))){
             gameList.write(writer);
         } catch (IOException ex) {
             System.err.println("Failed to write on " + filePath);
             throw ex;
         }
+        recordFlush(filePath, start);
+    }
+
+    /**
+     * ゲームの登録情報をJSONファイルに原子的に書き出す.
+     * 一時ファイルに書き込んでディスクへ同期した後に名前を変更するため,書き込み中に停止しても元のファイルは壊れない.
+     * @param filePath 情報を書き出すJSONファイルのパス
+     * @throws IOException ファイル書き込みに失敗した.このとき元のファイルは変更されない.
+     */
+    public final void flushAtomically(Path filePath) throws IOException {
+        flushAtomically(filePath, Compression.NONE);
+    }
+
+    /**
+     * ゲームの登録情報を,指定した形式で圧縮したJSONファイルに原子的に書き出す.
+     * @param filePath 情報を書き出すファイルのパス
+     * @param compression 圧縮形式
+     * @throws IOException ファイル書き込みに失敗した.このとき元のファイルは変更されない.
+     */
+    public final void flushAtomically(Path filePath, Compression compression) throws IOException {
+        final long start = System.nanoTime();
+        try {
+            AtomicFiles.write(filePath, out -> {
+                final OutputStream compressed = compression.wrap(out);
+                final Writer writer = new OutputStreamWriter(compressed, StandardCharsets.UTF_8);
+                gameList.write(writer);
+                writer.flush();
+                compression.finish(compressed);
+            });
+        } catch (IOException ex) {
+            System.err.println("Failed to write on " + filePath);
+            throw ex;
+        }
+        recordFlush(filePath, start);
+    }
+
+    /**
+     * 書き込みの計測値を{@link CatalogMetrics}に通知する.
+     * {@link #add(Game)}での変換時間は,次に書き込んだときに1回分としてまとめて通知する.
+     */
+    private void recordFlush(Path filePath, long start){
+        final CatalogMetrics metrics = CatalogMetrics.global();
+        metrics.recordPhase(CatalogMetrics.Phase.WRITE, System.nanoTime() - start);
+        metrics.recordPhase(CatalogMetrics.Phase.SERIALIZE, serializeNanos);
+        serializeNanos = 0;
+        metrics.recordDocumentsWritten(gameList.length());
+        if(metrics == CatalogMetrics.NOOP)return;
+        try {
+            metrics.recordBytesWritten(Files.size(filePath));
+        }catch (IOException ex){
+            // 書き込みは成功しているため,バイト数の通知のみを諦める
+        }
     }
 }
@@ -0,0 +1,207 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.UUID;
+
+/**
+ * JSONの値を{@link Appendable}へ直接書き出すユーティリティクラス.
+ * <p>
+ *     中間の{@link String}や{@link org.json.JSONObject}を作らないため,
+ *     書き出し先が再利用されていれば書き出し先以外のメモリ確保はほぼ発生しない.
+ * </p>
+ */
+final class JSONEmitter {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * 数値を文字列にするための作業領域.{@link Integer#MIN_VALUE}の桁数を収められる大きさを持つ.
+     */
+    private static final ThreadLocal<char[]> DIGITS = ThreadLocal.withInitial(() -> new char[11]);
+
+    /**
+     * スレッドごとに再利用する文字列バッファ.
+     */
+    private static final ThreadLocal<StringBuilder> BUILDER = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+    private JSONEmitter(){
+    }
+
+    /**
+     * 呼び出したスレッド専用の,空にした{@link StringBuilder}を返す.
+     * 戻り値は次に同じスレッドでこのメソッドを呼ぶまでの間のみ使用できる.
+     */
+    static StringBuilder threadLocalBuilder(){
+        final StringBuilder builder = BUILDER.get();
+        builder.setLength(0);
+        return builder;
+    }
+
+    /**
+     * 文字列をクォートし,必要な文字をエスケープして書き出す.
+     */
+    static void string(Appendable out, CharSequence value) throws IOException {
+        out.append('"');
+        final int length = value.length();
+        int runStart = 0;
+        for (int i = 0; i < length; i++){
+            final char c = value.charAt(i);
+            if(c >= 0x20 && c != '"' && c != '\\' && c != '\u2028' && c != '\u2029')continue;
+
+            out.append(value, runStart, i);
+            runStart = i + 1;
+            switch (c){
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\b':
+                    out.append("\\b");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\f':
+                    out.append("\\f");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                default:
+                    out.append("\\u")
+                            .append(HEX[(c >> 12) & 0xF])
+                            .append(HEX[(c >> 8) & 0xF])
+                            .append(HEX[(c >> 4) & 0xF])
+                            .append(HEX[c & 0xF]);
+            }
+        }
+        out.append(value, runStart, length);
+        out.append('"');
+    }
+
+    /**
+     * 整数をボクシングせずに書き出す.
+     */
+    static void number(Appendable out, int value) throws IOException {
+        if(value == Integer.MIN_VALUE){
+            out.append("-2147483648");
+            return;
+        }
+
+        final char[] digits = DIGITS.get();
+        int position = digits.length;
+        int rest = Math.abs(value);
+        do {
+            digits[--position] = (char) ('0' + rest % 10);
+            rest /= 10;
+        }while (rest != 0);
+        if(value < 0)digits[--position] = '-';
+
+        for (int i = position; i < digits.length; i++){
+            out.append(digits[i]);
+        }
+    }
+
+    /**
+     * UUIDを{@link UUID#toString()}と同じ表記の文字列として書き出す.
+     */
+    static void uuid(Appendable out, UUID value) throws IOException {
+        out.append('"');
+        hex(out, value.getMostSignificantBits() >>> 32, 8);
+        out.append('-');
+        hex(out, value.getMostSignificantBits() >>> 16, 4);
+        out.append('-');
+        hex(out, value.getMostSignificantBits(), 4);
+        out.append('-');
+        hex(out, value.getLeastSignificantBits() >>> 48, 4);
+        out.append('-');
+        hex(out, value.getLeastSignificantBits(), 12);
+        out.append('"');
+    }
+
+    private static void hex(Appendable out, long value, int digitCount) throws IOException {
+        for (int shift = (digitCount - 1) * 4; shift >= 0; shift -= 4){
+            out.append(HEX[(int) (value >>> shift) & 0xF]);
+        }
+    }
+
+    /**
+     * 日時を{@link Instant#toString()}と同じISO-8601形式の文字列として書き出す.
+     */
+    static void instant(Appendable out, Instant value) throws IOException {
+        out.append('"');
+        DateTimeFormatter.ISO_INSTANT.formatTo(value, out);
+        out.append('"');
+    }
+
+    /**
+     * 文字列をUTF-8でエンコードして書き込む.
+     * @throws BufferOverflowException 残り容量が足りない.このときバッファには何も書き込まれない.
+     */
+    static void encodeUTF8(CharSequence chars, ByteBuffer buffer) throws BufferOverflowException {
+        final int length = chars.length();
+        int byteCount = 0;
+        for (int i = 0; i < length; i++){
+            final char c = chars.charAt(i);
+            if(c < 0x80){
+                byteCount += 1;
+            }else if(c < 0x800){
+                byteCount += 2;
+            }else if(Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(chars.charAt(i + 1))){
+                byteCount += 4;
+                i++;
+            }else {
+                byteCount += 3;
+            }
+        }
+        if(byteCount > buffer.remaining())throw new BufferOverflowException();
+
+        for (int i = 0; i < length; i++){
+            final char c = chars.charAt(i);
+            if(c < 0x80){
+                buffer.put((byte) c);
+            }else if(c < 0x800){
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }else if(Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(chars.charAt(i + 1))){
+                final int codePoint = Character.toCodePoint(c, chars.charAt(++i));
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            }else if(Character.isSurrogate(c)){
+                // 対になっていないサロゲートは置換文字にする
+                buffer.put((byte) 0xEF);
+                buffer.put((byte) 0xBF);
+                buffer.put((byte) 0xBD);
+            }else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+}
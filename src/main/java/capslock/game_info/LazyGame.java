@@ -0,0 +1,164 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info;
+
+import org.json.JSONException;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 読み出し元のバイト列と値の位置のみを保持し,各フィールドを最初に参照されたときにデコードするゲーム情報.
+ * <p>
+ *     UUIDのみは索引に必要なため作成時にデコードする.
+ *     それ以外のフィールドは,ゲッターまたは{@link #getFieldValue(Field)}で初めて参照されたときにデコードされる.
+ *     デコードした値は{@link AtomicReferenceArray}で公開するため,複数のスレッドから同時に参照してよい.
+ *     同時に初めて参照されたときは両方のスレッドがデコードするが,公開されるのは先に設定された値のみである.
+ * </p>
+ */
+final class LazyGame extends Game {
+    private static final Field[] FIELDS = Field.values();
+
+    /**
+     * デコードした結果,値が無かったことを表す.
+     */
+    private static final Object ABSENT = new Object();
+
+    private final ByteBuffer source;
+    private final int end;
+    private final int[] valueOffsets;
+    private final AtomicReferenceArray<Object> values = new AtomicReferenceArray<>(FIELDS.length);
+    private final ValidationReport report;
+    private final int documentIndex;
+
+    /**
+     * オブジェクトを1つ読み進め,値の位置を記録する.
+     * @param source 読み出し元のバッファ.このインスタンスが参照される間,内容を変更してはならない.
+     *               ファイルをマップしたバッファを渡すと,ファイルの縮小や置き換えでゲッターが失敗するため,読み出し元専用の複製を渡すこと.
+     * @param scanner オブジェクトの開き括弧の直前まで読み進めた{@link ByteJSONScanner}
+     * @param end オブジェクトを含む範囲の終端
+     */
+    LazyGame(ByteBuffer source, ByteJSONScanner scanner, int end,
+             ValidationReport report, int documentIndex) throws IllegalArgumentException {
+        this.source = source;
+        this.end = end;
+        this.report = report;
+        this.documentIndex = documentIndex;
+
+        valueOffsets = scanner.nextDocumentOffsets();
+        uuid = GameDocument.decodeUUID(decode(Field.UUID), report, documentIndex);
+    }
+
+    @Override
+    public Path getExe() {
+        return (Path) value(Field.EXE);
+    }
+
+    @Override
+    public String getName() {
+        return (String) value(Field.NAME);
+    }
+
+    @Override
+    public Instant getLastMod() {
+        return (Instant) value(Field.LAST_MOD);
+    }
+
+    @Override
+    public String getDesc() {
+        return (String) value(Field.DESC);
+    }
+
+    @Override
+    public Path getPanel() {
+        return (Path) value(Field.PANEL);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Path> getImageList() {
+        final Object list = value(Field.IMAGE_LIST);
+        return list != null ? (List<Path>) list : List.of();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Path> getMovieList() {
+        final Object list = value(Field.MOVIE_LIST);
+        return list != null ? (List<Path>) list : List.of();
+    }
+
+    @Override
+    public int getGameID() {
+        final Object id = value(Field.GAME_ID);
+        return id != null ? (Integer) id : 0;
+    }
+
+    /**
+     * フィールドの値を返す.まだデコードしていなければデコードして公開する.
+     * @return 値が無いとき {@code null}.
+     */
+    private Object value(Field field){
+        final int index = field.ordinal();
+        Object value = values.get(index);
+        if(value == null){
+            final Object decoded = decodeField(field);
+            final Object witness = values.compareAndExchange(index, null, decoded != null ? decoded : ABSENT);
+            value = witness != null ? witness : (decoded != null ? decoded : ABSENT);
+        }
+        return value == ABSENT ? null : value;
+    }
+
+    private Object decodeField(Field field){
+        final Object unchecked = decode(field);
+        switch (field){
+            case EXE:
+                return GameDocument.decodeExe(unchecked, report, documentIndex, null);
+            case NAME:
+            case DESC:
+                return GameDocument.decodeString(field, unchecked, report, documentIndex);
+            case PANEL:
+                return GameDocument.decodePath(field, unchecked, report, documentIndex, null);
+            case MOVIE_LIST:
+            case IMAGE_LIST:
+                return GameDocument.decodePathList(field, unchecked, report, documentIndex, null);
+            case GAME_ID:
+                return GameDocument.decodeGameID(unchecked, report, documentIndex);
+            case LAST_MOD:
+                return GameDocument.decodeLastMod(unchecked, report, documentIndex);
+            default:
+                throw new IllegalArgumentException();
+        }
+    }
+
+    /**
+     * 記録した位置から値を1つ読み出す.
+     * @return キーが無いとき {@code null}. 文字列のエスケープが不正なときは{@code ABSENT}を返し,型の誤りとして報告させる.
+     */
+    private Object decode(Field field){
+        final int offset = valueOffsets[field.ordinal()];
+        if(offset < 0)return null;
+        try {
+            return new ByteJSONScanner(source, offset, end).nextValue();
+        }catch (JSONException ex){
+            return ABSENT;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info;
+
+/**
+ * {@link CatalogMetrics#global()}の保持先.インターフェースは可変の静的フィールドを持てないため分けている.
+ */
+final class MetricsRegistry {
+    static volatile CatalogMetrics current = CatalogMetrics.NOOP;
+
+    private MetricsRegistry(){
+    }
+}
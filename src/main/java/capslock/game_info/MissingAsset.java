@@ -0,0 +1,86 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info;
+
+import java.nio.file.Path;
+
+/**
+ * 見つからなかった,または読み出せなかった画像や動画のファイル.
+ */
+public final class MissingAsset {
+    /**
+     * ファイルを使えない理由.
+     */
+    public enum Reason {
+        /**
+         * ファイルが存在しない.
+         */
+        NOT_FOUND,
+        /**
+         * ディレクトリなど,通常のファイルでない.
+         */
+        NOT_REGULAR_FILE,
+        /**
+         * ファイルは存在するが読み出せなかった.
+         */
+        UNREADABLE
+    }
+
+    private final Game game;
+    private final Field field;
+    private final Path path;
+    private final Reason reason;
+
+    MissingAsset(Game game, Field field, Path path, Reason reason){
+        this.game = game;
+        this.field = field;
+        this.path = path;
+        this.reason = reason;
+    }
+
+    /**
+     * @return ファイルを参照していたゲーム
+     */
+    public Game getGame() {
+        return game;
+    }
+
+    /**
+     * @return ファイルを参照していたフィールド. {@link Field#PANEL},{@link Field#IMAGE_LIST},{@link Field#MOVIE_LIST}のいずれか.
+     */
+    public Field getField() {
+        return field;
+    }
+
+    /**
+     * @return ゲーム情報に書かれていたファイルのパス
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return ファイルを使えない理由
+     */
+    public Reason getReason() {
+        return reason;
+    }
+
+    @Override
+    public String toString() {
+        return game.getUUID() + ", " + field + " : " + path + " (" + reason + ")";
+    }
+}
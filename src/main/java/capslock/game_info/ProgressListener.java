@@ -0,0 +1,37 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info;
+
+/**
+ * 非同期の読み書きの進み具合の通知を受け取る.
+ * <p>
+ *     通知は読み書きを行うスレッドから一定の件数ごとと完了時に行われる.
+ *     UIを更新するときは,UIのスレッドに処理を移すこと.
+ * </p>
+ */
+@FunctionalInterface
+public interface ProgressListener {
+    /**
+     * 何も行わないインスタンス.
+     */
+    ProgressListener NONE = (bytes, documents) -> {};
+
+    /**
+     * @param bytes これまでに読み書きしたファイルのバイト数.圧縮されたファイルでは圧縮後のバイト数.
+     * @param documents これまでに読み書きしたドキュメントの件数
+     */
+    void onProgress(long bytes, long documents);
+}
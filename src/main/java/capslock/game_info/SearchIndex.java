@@ -0,0 +1,533 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info;
+
+import java.text.Normalizer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * ゲーム名と説明の全文検索,およびゲーム名の前方一致による入力補完を行う索引.
+ * <p>
+ *     文字列はNFKCで正規化した上で,大文字を小文字に,カタカナをひらがなに揃えてから索引に登録する.
+ *     そのため全角と半角,大文字と小文字,カタカナとひらがなの違いは検索結果に影響しない.
+ *     日本語は単語に区切れないため,全文検索には1文字と2文字のN-gramの転置索引を使う.
+ * </p>
+ * <p>
+ *     {@link CatalogListener}として{@link CatalogWatcher}に登録すると,カタログの変更に合わせて索引も更新される.
+ *     このクラスはスレッドセーフである.
+ * </p>
+ */
+public final class SearchIndex implements CatalogListener {
+    /**
+     * ひらがなに対応する文字があるカタカナの範囲(ァからヶ).
+     */
+    private static final char KATAKANA_FIRST = '\u30A1';
+    private static final char KATAKANA_LAST = '\u30F6';
+    private static final int KATAKANA_TO_HIRAGANA = 0x60;
+
+    /**
+     * 長音符(ー).文字として扱われないが,ゲーム名では単語の一部である.
+     */
+    private static final char PROLONGED_SOUND_MARK = '\u30FC';
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<UUID, Integer> slots = new HashMap<>();
+    private final List<Entry> entries = new ArrayList<>();
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+    private final Map<Integer, Postings> nameGrams = new HashMap<>();
+    private final Map<Integer, Postings> descGrams = new HashMap<>();
+    private final NavigableMap<String, Postings> namePrefixes = new TreeMap<>();
+
+    /**
+     * 1件のゲームと,正規化したゲーム名と説明.
+     */
+    private static final class Entry {
+        final Game game;
+        final String name;
+        final String desc;
+
+        Entry(Game game){
+            this.game = game;
+            this.name = normalize(game.getName());
+            this.desc = normalize(game.getDesc());
+        }
+    }
+
+    /**
+     * 昇順に整列したスロット番号の集合.{@code Set<Integer>}と異なりボクシングを行わない.
+     */
+    private static final class Postings {
+        int[] slots = new int[2];
+        int size = 0;
+
+        void add(int slot){
+            final int index = Arrays.binarySearch(slots, 0, size, slot);
+            if(index >= 0)return;
+
+            final int insertion = -index - 1;
+            if(size == slots.length)slots = Arrays.copyOf(slots, size * 2);
+            System.arraycopy(slots, insertion, slots, insertion + 1, size - insertion);
+            slots[insertion] = slot;
+            size++;
+        }
+
+        void remove(int slot){
+            final int index = Arrays.binarySearch(slots, 0, size, slot);
+            if(index < 0)return;
+
+            System.arraycopy(slots, index + 1, slots, index, size - index - 1);
+            size--;
+        }
+
+        boolean contains(int slot){
+            return Arrays.binarySearch(slots, 0, size, slot) >= 0;
+        }
+    }
+
+    /**
+     * 空の索引を作る.
+     */
+    public SearchIndex(){
+    }
+
+    /**
+     * ゲーム情報のコレクションから索引を作る.
+     * @param games 索引に登録するゲーム情報.UUIDが設定されていないゲームは登録されない.
+     */
+    public SearchIndex(Collection<? extends Game> games){
+        for (final Game game : games){
+            update(game);
+        }
+    }
+
+    /**
+     * {@link GameCatalog}の全てのゲームから索引を作る.
+     * @param catalog 索引に登録するカタログ
+     * @return 作成した索引
+     */
+    public static SearchIndex of(GameCatalog catalog){
+        return new SearchIndex(catalog.getGameList());
+    }
+
+    /**
+     * ゲームを登録する.同じUUIDのゲームが登録済みのときは置き換える.
+     * @param game 登録するゲーム情報.UUIDが設定されていないときは何もしない.
+     */
+    public void update(Game game){
+        final UUID uuid = game.getUUID();
+        if(uuid == null)return;
+
+        // 正規化はロックの外で行い,検索を止める時間を短くする
+        final Entry entry = new Entry(game);
+
+        lock.writeLock().lock();
+        try {
+            final Integer previous = slots.get(uuid);
+            final int slot;
+            if(previous != null){
+                slot = previous;
+                unregister(slot, entries.get(slot));
+                entries.set(slot, entry);
+            }else if(!freeSlots.isEmpty()){
+                slot = freeSlots.pop();
+                entries.set(slot, entry);
+            }else {
+                slot = entries.size();
+                entries.add(entry);
+            }
+            slots.put(uuid, slot);
+            register(slot, entry);
+        }finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * ゲームを索引から取り除く.
+     * @param uuid 取り除くゲームのUUID.登録されていないときは何もしない.
+     */
+    public void remove(UUID uuid){
+        lock.writeLock().lock();
+        try {
+            final Integer slot = slots.remove(uuid);
+            if(slot == null)return;
+
+            unregister(slot, entries.get(slot));
+            entries.set(slot, null);
+            freeSlots.push(slot);
+        }finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onAdded(Game game) {
+        update(game);
+    }
+
+    @Override
+    public void onUpdated(Game before, Game after) {
+        if(before.getUUID() != null && !before.getUUID().equals(after.getUUID()))remove(before.getUUID());
+        update(after);
+    }
+
+    @Override
+    public void onRemoved(Game game) {
+        if(game.getUUID() != null)remove(game.getUUID());
+    }
+
+    /**
+     * @return 登録されているゲームの件数
+     */
+    public int size(){
+        lock.readLock().lock();
+        try {
+            return slots.size();
+        }finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * ゲーム名または説明に検索語を含むゲームを探す.
+     * <p>
+     *     空白で区切った複数の検索語は,全てを含むゲームのみに一致する.
+     *     ゲーム名に一致したゲームを先に,説明のみに一致したゲームを後に返す.
+     * </p>
+     * @param query 検索語
+     * @param limit 返す件数の上限
+     * @return 一致したゲーム.検索語が空のとき空のリスト.
+     */
+    public List<Game> search(String query, int limit){
+        if(limit < 0)throw new IllegalArgumentException("limit must not be negative.");
+        final String[] terms = terms(query);
+        final List<Game> result = new ArrayList<>();
+        if(terms.length == 0 || limit == 0)return result;
+
+        // 3文字以上の検索語は2-gramが全て含まれていても連続しているとは限らないため,本文で確かめる.
+        // 確認は結果に加える直前に行い,上限に達したら残りの候補は確かめない
+        final boolean isVerified = hasLongTerm(terms);
+
+        lock.readLock().lock();
+        try {
+            final int[] nameCandidates = candidates(terms, nameGrams, null);
+            for (final int slot : nameCandidates){
+                if(result.size() == limit)return result;
+
+                final Entry entry = entries.get(slot);
+                if(!isVerified || containsAll(entry.name, terms))result.add(entry.game);
+            }
+
+            // ゲーム名と説明にまたがって検索語を含むゲームも,説明のみに一致したものとして扱う
+            for (final int slot : candidates(terms, nameGrams, descGrams)){
+                if(result.size() == limit)return result;
+
+                final Entry entry = entries.get(slot);
+                final boolean isNameHit = Arrays.binarySearch(nameCandidates, slot) >= 0
+                        && (!isVerified || containsAll(entry.name, terms));
+                if(!isNameHit && (!isVerified || containsAllAcrossFields(entry, terms)))result.add(entry.game);
+            }
+            return result;
+        }finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * ゲーム名または説明に検索語を含むゲームを全て探す.
+     * @param query 検索語
+     * @return 一致したゲーム
+     * @see #search(String, int)
+     */
+    public List<Game> search(String query){
+        return search(query, Integer.MAX_VALUE);
+    }
+
+    /**
+     * ゲーム名,またはゲーム名の中の単語が指定した文字列で始まるゲームを,正規化したゲーム名の順に返す.
+     * @param prefix 入力途中の文字列
+     * @param limit 返す件数の上限
+     * @return 一致したゲーム.文字列が空のとき空のリスト.
+     */
+    public List<Game> complete(String prefix, int limit){
+        if(limit < 0)throw new IllegalArgumentException("limit must not be negative.");
+        final String normalized = normalize(prefix).trim();
+        final List<Game> result = new ArrayList<>();
+        if(normalized.isEmpty() || limit == 0)return result;
+
+        lock.readLock().lock();
+        try {
+            final Postings seen = new Postings();
+            for (final Postings postings : namePrefixes.subMap(normalized, true, normalized + Character.MAX_VALUE, false).values()){
+                for (int i = 0; i < postings.size; i++){
+                    final int slot = postings.slots[i];
+                    if(seen.contains(slot))continue;
+
+                    seen.add(slot);
+                    result.add(entries.get(slot).game);
+                    if(result.size() == limit)return result;
+                }
+            }
+            return result;
+        }finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void register(int slot, Entry entry){
+        for (final int gram : grams(entry.name)){
+            nameGrams.computeIfAbsent(gram, key -> new Postings()).add(slot);
+        }
+        for (final int gram : grams(entry.desc)){
+            descGrams.computeIfAbsent(gram, key -> new Postings()).add(slot);
+        }
+        for (final String key : prefixKeys(entry.name)){
+            namePrefixes.computeIfAbsent(key, k -> new Postings()).add(slot);
+        }
+    }
+
+    private void unregister(int slot, Entry entry){
+        for (final int gram : grams(entry.name)){
+            removeFrom(nameGrams, gram, slot);
+        }
+        for (final int gram : grams(entry.desc)){
+            removeFrom(descGrams, gram, slot);
+        }
+        for (final String key : prefixKeys(entry.name)){
+            removeFrom(namePrefixes, key, slot);
+        }
+    }
+
+    private static <K> void removeFrom(Map<K, Postings> index, K key, int slot){
+        final Postings postings = index.get(key);
+        if(postings == null)return;
+
+        postings.remove(slot);
+        if(postings.size == 0)index.remove(key);
+    }
+
+    /**
+     * 各検索語の全てのN-gramを含むスロットを昇順に返す.N-gramが連続しているかは確かめない.
+     * @param others {@code null}でないとき,各検索語について{@code grams}と{@code others}のどちらかで一致すればよい.
+     */
+    private static int[] candidates(String[] terms, Map<Integer, Postings> grams, Map<Integer, Postings> others){
+        int[] candidates = null;
+        for (final String term : terms){
+            final int[] matched = others == null
+                    ? candidatesOf(term, grams)
+                    : union(candidatesOf(term, grams), candidatesOf(term, others));
+            candidates = intersect(candidates, matched);
+            if(candidates.length == 0)return candidates;
+        }
+        return candidates;
+    }
+
+    /**
+     * 検索語の全てのN-gramを含むスロットを求める.
+     */
+    private static int[] candidatesOf(String term, Map<Integer, Postings> grams){
+        if(term.length() == 1)return toArray(grams.get(unigram(term.charAt(0))));
+
+        // 件数の少ない2-gramから絞り込む
+        final List<Postings> lists = new ArrayList<>(term.length() - 1);
+        for (int i = 0; i + 2 <= term.length(); i++){
+            final Postings postings = grams.get(bigram(term.charAt(i), term.charAt(i + 1)));
+            if(postings == null)return new int[0];
+            lists.add(postings);
+        }
+        lists.sort((a, b) -> Integer.compare(a.size, b.size));
+
+        // 最も短い一覧の各スロットを残りの一覧から二分探索するため,長い一覧は複製しない
+        final Postings shortest = lists.get(0);
+        final int[] candidates = new int[shortest.size];
+        int count = 0;
+        search:
+        for (int i = 0; i < shortest.size; i++){
+            final int slot = shortest.slots[i];
+            for (int j = 1; j < lists.size(); j++){
+                if(!lists.get(j).contains(slot))continue search;
+            }
+            candidates[count++] = slot;
+        }
+        return Arrays.copyOf(candidates, count);
+    }
+
+    private static int[] toArray(Postings postings){
+        return postings == null ? new int[0] : Arrays.copyOf(postings.slots, postings.size);
+    }
+
+    /**
+     * 整列済みの配列の積集合.{@code a}が{@code null}のときは{@code b}を返す.
+     */
+    private static int[] intersect(int[] a, int[] b){
+        if(a == null)return b;
+
+        final int[] result = new int[Math.min(a.length, b.length)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length){
+            if(a[i] < b[j]){
+                i++;
+            }else if(a[i] > b[j]){
+                j++;
+            }else {
+                result[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * 整列済みの配列の和集合.
+     */
+    private static int[] union(int[] a, int[] b){
+        final int[] result = new int[a.length + b.length];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length || j < b.length){
+            if(j == b.length || (i < a.length && a[i] < b[j])){
+                result[count++] = a[i++];
+            }else if(i == a.length || a[i] > b[j]){
+                result[count++] = b[j++];
+            }else {
+                result[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private static boolean hasLongTerm(String[] terms){
+        for (final String term : terms){
+            if(term.length() > 2)return true;
+        }
+        return false;
+    }
+
+    private static boolean containsAllAcrossFields(Entry entry, String[] terms){
+        for (final String term : terms){
+            if(!entry.name.contains(term) && !entry.desc.contains(term))return false;
+        }
+        return true;
+    }
+
+    private static boolean containsAll(String text, String[] terms){
+        for (final String term : terms){
+            if(!text.contains(term))return false;
+        }
+        return true;
+    }
+
+    /**
+     * 正規化した文字列に含まれる1文字と2文字のN-gramを,重複を除いて昇順に返す.区切り文字をまたぐN-gramは作らない.
+     */
+    private static int[] grams(String text){
+        final int[] grams = new int[text.length() * 2];
+        int count = 0;
+        for (int i = 0; i < text.length(); i++){
+            final char c = text.charAt(i);
+            if(c == ' ')continue;
+
+            grams[count++] = unigram(c);
+            if(i + 1 < text.length() && text.charAt(i + 1) != ' ')grams[count++] = bigram(c, text.charAt(i + 1));
+        }
+
+        Arrays.sort(grams, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++){
+            if(distinct == 0 || grams[distinct - 1] != grams[i])grams[distinct++] = grams[i];
+        }
+        return Arrays.copyOf(grams, distinct);
+    }
+
+    /**
+     * N-gramを文字列を作らずに整数で表す.区切り文字は空白であり,2文字目に0が来ることはないため1-gramと衝突しない.
+     */
+    private static int unigram(char c){
+        return c << 16;
+    }
+
+    private static int bigram(char first, char second){
+        return first << 16 | second;
+    }
+
+    /**
+     * 入力補完の索引に登録するキー.ゲーム名全体と,ゲーム名の中の各単語から末尾までの部分文字列.
+     */
+    private static List<String> prefixKeys(String name){
+        final List<String> keys = new ArrayList<>();
+        for (int i = 0; i < name.length(); i++){
+            if(name.charAt(i) != ' ' && (i == 0 || name.charAt(i - 1) == ' '))keys.add(name.substring(i));
+        }
+        return keys;
+    }
+
+    private static String[] terms(String query){
+        final String normalized = normalize(query).trim();
+        return normalized.isEmpty() ? new String[0] : normalized.split(" +");
+    }
+
+    /**
+     * 検索のために文字列を正規化する.
+     * <p>
+     *     NFKCで全角英数字と半角カナを揃え,大文字を小文字に,カタカナをひらがなに変換する.
+     *     文字,数字,長音符以外の文字は空白に置き換え,連続する空白は1つにまとめる.
+     * </p>
+     * @param text 正規化する文字列. {@code null}は空文字列として扱う.
+     * @return 正規化した文字列
+     */
+    static String normalize(String text){
+        if(text == null || text.isEmpty())return "";
+
+        final String composed = Normalizer.normalize(text, Normalizer.Form.NFKC);
+        final StringBuilder builder = new StringBuilder(composed.length());
+        boolean isSeparated = false;
+        for (int i = 0; i < composed.length(); i++){
+            char c = composed.charAt(i);
+            if(c >= KATAKANA_FIRST && c <= KATAKANA_LAST){
+                c = (char) (c - KATAKANA_TO_HIRAGANA);
+            }else if(Character.isUpperCase(c)){
+                c = Character.toLowerCase(c);
+            }
+
+            if(Character.isLetterOrDigit(c) || c == PROLONGED_SOUND_MARK || Character.isSurrogate(c)){
+                if(isSeparated && builder.length() > 0)builder.append(' ');
+                builder.append(c);
+                isSeparated = false;
+            }else {
+                isSeparated = true;
+            }
+        }
+        return builder.toString();
+    }
+}
@@ -17,8 +17,16 @@ package capslock.game_info;
 
 import org.json.JSONObject;
 
+import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
@@ -32,21 +40,99 @@ public final class Signature {
     }
 
     /**
-     * {@link GameDocument}が1件のみ存在するJSONファイルを読みだす.
+     * {@link GameDocument}が1件のみ存在するJSONファイルを読みだす.gzip形式で圧縮されたファイルも読み出せる.
      * @param filePath ドキュメントを読み出すJSONファイルのパス
      * @return 正常に読み込めたとき {@link GameDocument}, 失敗したとき{@code null}.
      */
     static public GameDocument readSignature(Path filePath){
+        final long start = System.nanoTime();
         final String JSONRawString;
-        try {
-            JSONRawString = Files.newBufferedReader(filePath)
-                    .lines()
-                    .collect(Collectors.joining());
-        }catch (IOException ex){
+        try(final BufferedReader reader = Compression.newReader(filePath)){
+            JSONRawString = reader.lines().collect(Collectors.joining());
+        }catch (IOException | UncheckedIOException ex){
             System.err.println("Failed to read from " + filePath);
             return null;
         }
-        return new GameDocument(new JSONObject(JSONRawString));
+        return decode(filePath, JSONRawString, start, ValidationReport.printing());
+    }
+
+    /**
+     * {@link #readSignature(Path)}と同じくJSONファイルを読み出すが,失敗を標準エラー出力に書かずに例外として通知する.
+     * @param filePath ドキュメントを読み出すJSONファイルのパス
+     * @param report 不正なフィールドを記録する{@link ValidationReport}
+     * @return 読み込んだ{@link GameDocument}
+     * @throws IOException ファイル読み込み中にエラーが発生した
+     * @throws org.json.JSONException JSONとして解釈できなかった
+     */
+    static GameDocument parseSignature(Path filePath, ValidationReport report) throws IOException {
+        final long start = System.nanoTime();
+        final String JSONRawString;
+        try(final BufferedReader reader = Compression.newReader(filePath)){
+            JSONRawString = reader.lines().collect(Collectors.joining());
+        }
+        return decode(filePath, JSONRawString, start, report);
+    }
+
+    /**
+     * 読み出し済みのファイルの内容から{@link GameDocument}を作る.圧縮されていれば展開する.
+     * @param filePath 内容を読み出したファイルのパス
+     * @param content ファイルの内容
+     * @param readStart 読み出しを開始した時刻
+     * @throws IOException 圧縮形式のヘッダーが壊れている,またはUTF-8として不正なバイト列がある
+     * @throws org.json.JSONException JSONとして解釈できなかった
+     */
+    static GameDocument parseSignature(Path filePath, byte[] content, long readStart) throws IOException {
+        final String JSONRawString;
+        try(final BufferedReader reader = new BufferedReader(new InputStreamReader(
+                Compression.decompress(new ByteArrayInputStream(content)), StandardCharsets.UTF_8.newDecoder()))){
+            JSONRawString = reader.lines().collect(Collectors.joining());
+        }
+        return decode(filePath, JSONRawString, readStart, ValidationReport.printing());
+    }
+
+    /**
+     * 読み出した文字列から{@link GameDocument}を作り,各段階の所要時間を{@link CatalogMetrics}に通知する.
+     * @param readStart 読み出しを開始した時刻
+     * @param report 不正なフィールドを記録する{@link ValidationReport}
+     */
+    private static GameDocument decode(Path filePath, String JSONRawString, long readStart, ValidationReport report){
+        final CatalogMetrics metrics = CatalogMetrics.global();
+        final long parseStart = System.nanoTime();
+        metrics.recordPhase(CatalogMetrics.Phase.READ, parseStart - readStart);
+        if(metrics != CatalogMetrics.NOOP)metrics.recordBytesRead(sizeOf(filePath));
+
+        final JSONObject object = new JSONObject(JSONRawString);
+        final long constructStart = System.nanoTime();
+        metrics.recordPhase(CatalogMetrics.Phase.PARSE, constructStart - parseStart);
+
+        final GameDocument document = new GameDocument(object, report, -1, null);
+        metrics.recordPhase(CatalogMetrics.Phase.CONSTRUCT, System.nanoTime() - constructStart);
+        metrics.recordDocumentsRead(1);
+        return document;
+    }
+
+    /**
+     * 書き込みの計測値を{@link CatalogMetrics}に通知する.
+     * @param serializeNanos {@link GameDocument#toJSON()}の所要時間
+     * @param writeStart 書き込みを開始した時刻
+     */
+    private static void recordWrite(Path filePath, long serializeNanos, long writeStart){
+        final CatalogMetrics metrics = CatalogMetrics.global();
+        metrics.recordPhase(CatalogMetrics.Phase.SERIALIZE, serializeNanos);
+        metrics.recordPhase(CatalogMetrics.Phase.WRITE, System.nanoTime() - writeStart);
+        metrics.recordDocumentsWritten(1);
+        if(metrics != CatalogMetrics.NOOP)metrics.recordBytesWritten(sizeOf(filePath));
+    }
+
+    /**
+     * 計測値の通知のためにファイルの大きさを求める.求められなかったときは0とする.
+     */
+    private static long sizeOf(Path filePath){
+        try {
+            return Files.size(filePath);
+        }catch (IOException ex){
+            return 0;
+        }
     }
 
     /**
@@ -56,13 +142,69 @@ public final class Signature {
      * @return 正常に書き込めたとき {@code true}, 失敗したとき{@code false}.
      */
     static public boolean writeSignature(Path filePath, GameDocument document){
-        try(final BufferedWriter writer = Files.newBufferedWriter(filePath,
-                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
-            document.toJSON().write(writer);
-            return true;
+        return writeSignature(filePath, document, Compression.NONE);
+    }
+
+    /**
+     * 1件の{@link GameDocument}を,指定した形式で圧縮したJSONファイルに書き込む.
+     * @param filePath 書き込み対象のファイルのパス
+     * @param document 書き込み対象の{@link GameDocument}
+     * @param compression 圧縮形式
+     * @return 正常に書き込めたとき {@code true}, 失敗したとき{@code false}.
+     */
+    static public boolean writeSignature(Path filePath, GameDocument document, Compression compression){
+        final long serializeStart = System.nanoTime();
+        final JSONObject json = document.toJSON();
+        final long writeStart = System.nanoTime();
+
+        try(final Writer writer = new BufferedWriter(new OutputStreamWriter(compression.wrap(Files.newOutputStream(filePath,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)),
+                StandardCharsets.UTF_8.newEncoder()))){
+            json.write(writer);
+        } catch (IOException ex) {
+            System.err.println("Failed to write on " + filePath);
+            return false;
+        }
+        recordWrite(filePath, writeStart - serializeStart, writeStart);
+        return true;
+    }
+
+    /**
+     * 1件の{@link GameDocument}をJSONファイルに原子的に書き込む.
+     * 書き込み中に停止しても元のファイルは壊れない.
+     * @param filePath 書き込み対象のファイルのパス
+     * @param document 書き込み対象の{@link GameDocument}
+     * @return 正常に書き込めたとき {@code true}, 失敗したとき{@code false}.
+     */
+    static public boolean writeSignatureAtomically(Path filePath, GameDocument document){
+        return writeSignatureAtomically(filePath, document, Compression.NONE);
+    }
+
+    /**
+     * 1件の{@link GameDocument}を,指定した形式で圧縮したJSONファイルに原子的に書き込む.
+     * @param filePath 書き込み対象のファイルのパス
+     * @param document 書き込み対象の{@link GameDocument}
+     * @param compression 圧縮形式
+     * @return 正常に書き込めたとき {@code true}, 失敗したとき{@code false}.
+     */
+    static public boolean writeSignatureAtomically(Path filePath, GameDocument document, Compression compression){
+        final long serializeStart = System.nanoTime();
+        final JSONObject json = document.toJSON();
+        final long writeStart = System.nanoTime();
+
+        try {
+            AtomicFiles.write(filePath, out -> {
+                final OutputStream compressed = compression.wrap(out);
+                final Writer writer = new OutputStreamWriter(compressed, StandardCharsets.UTF_8);
+                json.write(writer);
+                writer.flush();
+                compression.finish(compressed);
+            });
         } catch (IOException ex) {
             System.err.println("Failed to write on " + filePath);
             return false;
         }
+        recordWrite(filePath, writeStart - serializeStart, writeStart);
+        return true;
     }
 }
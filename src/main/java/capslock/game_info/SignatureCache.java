@@ -0,0 +1,224 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * シグネチャファイルの読み出し結果をファイルの大きさと更新日時で管理するキャッシュ.
+ * <p>
+ *     大きさと更新日時が前回と同じファイルは開かずにキャッシュから返す.
+ *     どちらかが変わったファイルは読み出して内容のハッシュ値を比べ,内容が同じであれば解析を省く.
+ *     キャッシュは{@link #save(Path)}でファイルに保存し,次回の起動時に{@link #load(Path)}で読み出す.
+ *     このクラスはスレッドセーフである.
+ * </p>
+ */
+public final class SignatureCache {
+    private static final int VERSION = 2;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private static final class Entry {
+        final long size;
+        final FileTime lastModified;
+        final String hash;
+        final GameSnapshot document;
+
+        Entry(long size, FileTime lastModified, String hash, GameSnapshot document){
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+            this.document = document;
+        }
+    }
+
+    /**
+     * 空のキャッシュを作る.
+     */
+    public SignatureCache(){
+    }
+
+    /**
+     * {@link #save(Path)}で保存したキャッシュを読み出す.
+     * ファイルが存在しない,または壊れているときは空のキャッシュを返す.
+     * 不正なフィールドを含む項目は読み飛ばし,次回の読み出しでシグネチャファイルから読み直す.
+     * @param cacheFile キャッシュファイルのパス
+     * @return 読み出したキャッシュ
+     */
+    public static SignatureCache load(Path cacheFile){
+        final SignatureCache cache = new SignatureCache();
+        try(final Reader reader = Files.newBufferedReader(cacheFile)){
+            final JSONObject root = new JSONObject(new JSONTokener(reader));
+            if(root.optInt("version") != VERSION)return cache;
+
+            for (final Object unchecked : root.getJSONArray("entries")){
+                final JSONObject entry = (JSONObject) unchecked;
+                final ValidationReport report = ValidationReport.lenient();
+                final GameDocument document = new GameDocument(entry.getJSONObject("document"), report, -1, null);
+                if(!report.isEmpty())continue;
+
+                cache.entries.put(entry.getString("path"), new Entry(
+                        entry.getLong("size"),
+                        FileTime.from(Instant.ofEpochSecond(entry.getLong("lastModifiedSeconds"), entry.getInt("lastModifiedNanos"))),
+                        entry.getString("hash"),
+                        GameSnapshot.of(document)));
+            }
+        }catch (NoSuchFileException ex){
+            // 初回起動
+        }catch (IOException | JSONException | ClassCastException | DateTimeException ex){
+            System.err.println("Failed to read signature cache " + cacheFile + ". The cache is discarded.");
+            cache.entries.clear();
+        }
+        return cache;
+    }
+
+    /**
+     * キャッシュをファイルに原子的に保存する.
+     * @param cacheFile キャッシュファイルのパス
+     * @throws IOException 書き込みに失敗した
+     */
+    public void save(Path cacheFile) throws IOException {
+        final JSONArray array = new JSONArray();
+        entries.forEach((path, entry) -> array.put(new JSONObject()
+                .put("path", path)
+                .put("size", entry.size)
+                .put("lastModifiedSeconds", entry.lastModified.toInstant().getEpochSecond())
+                .put("lastModifiedNanos", entry.lastModified.toInstant().getNano())
+                .put("hash", entry.hash)
+                .put("document", entry.document.toJSON())));
+
+        final JSONObject root = new JSONObject()
+                .put("version", VERSION)
+                .put("entries", array);
+
+        AtomicFiles.write(cacheFile, out -> {
+            final Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            root.write(writer);
+            writer.flush();
+        });
+    }
+
+    /**
+     * @return キャッシュされているファイルの件数
+     */
+    public int size(){
+        return entries.size();
+    }
+
+    /**
+     * シグネチャファイルを読み出す.大きさと更新日時が変わっていなければファイルを開かずにキャッシュから返す.
+     * 不正なフィールドがあったファイルは,次回も同じ問題を報告できるようにキャッシュしない.
+     * @param filePath シグネチャファイルのパス
+     * @param report 不正なフィールドを記録する{@link ValidationReport}
+     * @return 読み出した{@link GameDocument}.呼び出しごとに新しいインスタンスを返す.
+     * @throws IOException ファイル読み込み中にエラーが発生した
+     * @throws JSONException JSONとして解釈できなかった
+     */
+    GameDocument read(Path filePath, ValidationReport report) throws IOException {
+        final String key = keyOf(filePath);
+        final BasicFileAttributes attributes = Files.readAttributes(filePath, BasicFileAttributes.class);
+        final long size = attributes.size();
+        // ミリ秒未満の更新を見逃さないよう,ファイルシステムが保持する精度のまま比べる
+        final FileTime lastModified = attributes.lastModifiedTime();
+
+        final Entry cached = entries.get(key);
+        if(cached != null && cached.size == size && cached.lastModified.equals(lastModified)){
+            return cached.document.toDocument();
+        }
+
+        final byte[] content = Files.readAllBytes(filePath);
+        final String hash = hash(content);
+        if(cached != null && cached.hash.equals(hash)){
+            // 更新日時だけが変わった
+            entries.put(key, new Entry(size, lastModified, hash, cached.document));
+            return cached.document.toDocument();
+        }
+
+        final int problemCount = report.getProblems().size();
+        final GameDocument parsed = new GameDocument(new JSONObject(decode(content)), report, -1, null);
+        if(report.getProblems().size() != problemCount){
+            entries.remove(key);
+            return parsed;
+        }
+
+        final GameSnapshot document = GameSnapshot.of(parsed);
+        entries.put(key, new Entry(size, lastModified, hash, document));
+        return document.toDocument();
+    }
+
+    /**
+     * 圧縮されていれば展開して,UTF-8の文字列として解釈する.
+     * @throws IOException UTF-8として不正なバイト列がある
+     */
+    private static String decode(byte[] content) throws IOException {
+        try(final InputStream in = Compression.decompress(new ByteArrayInputStream(content))){
+            // Signature#readSignatureと同じく,不正なバイト列を置換文字にせずに失敗させる
+            return StandardCharsets.UTF_8.newDecoder().decode(ByteBuffer.wrap(in.readAllBytes())).toString();
+        }
+    }
+
+    /**
+     * 指定したファイル以外のキャッシュを破棄する.削除されたシグネチャファイルを取り除くために使う.
+     * @param existingFiles 現在存在するシグネチャファイルのパス
+     */
+    void retainOnly(Collection<Path> existingFiles){
+        final Set<String> keys = new HashSet<>();
+        for (final Path path : existingFiles){
+            keys.add(keyOf(path));
+        }
+        entries.keySet().retainAll(keys);
+    }
+
+    private static String keyOf(Path path){
+        return path.toAbsolutePath().normalize().toString();
+    }
+
+    private static String hash(byte[] content){
+        try {
+            return Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(content));
+        }catch (NoSuchAlgorithmException ex){
+            // SHA-256は全てのJava実装で利用できる
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,294 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * ゲームのフォルダを並べたディレクトリから,各ゲームのシグネチャファイルをまとめて読み出す.
+ * <p>
+ *     ゲームのフォルダごとに探索と読み出しを並列に行うため,ネットワーク越しのファイル共有のように
+ *     1回の入出力の待ち時間が長い環境でも,フォルダの数に比例して待たされることがない.
+ *     同時に実行する入出力の数は{@code parallelism}で制限される.
+ * </p>
+ */
+public final class SignatureScanner {
+    /**
+     * シグネチャファイルの既定のファイル名.
+     */
+    public static final String DEFAULT_FILE_NAME = "signature.json";
+
+    /**
+     * ゲームのフォルダの中を探索する深さの既定値.
+     */
+    public static final int DEFAULT_MAX_DEPTH = 2;
+
+    private final String fileName;
+    private final int maxDepth;
+    private final int parallelism;
+
+    /**
+     * 既定のファイル名と深さで,CPU数の4倍まで同時に読み出すインスタンスを作る.
+     */
+    public SignatureScanner(){
+        this(DEFAULT_FILE_NAME, DEFAULT_MAX_DEPTH, Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    /**
+     * @param fileName シグネチャファイルのファイル名
+     * @param maxDepth ゲームのフォルダの中を探索する深さ.1のときゲームのフォルダの直下のみを探す.
+     * @param parallelism 同時に実行する入出力の最大数
+     */
+    public SignatureScanner(String fileName, int maxDepth, int parallelism){
+        if(maxDepth < 1)throw new IllegalArgumentException("maxDepth must be positive.");
+        if(parallelism < 1)throw new IllegalArgumentException("parallelism must be positive.");
+
+        this.fileName = fileName;
+        this.maxDepth = maxDepth;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * 読み出しに失敗した,または不正なフィールドがあったシグネチャファイルとその理由.
+     */
+    public static final class ScanError {
+        private final Path path;
+        private final String message;
+        private final Exception cause;
+
+        ScanError(Path path, String message, Exception cause){
+            this.path = path;
+            this.message = message;
+            this.cause = cause;
+        }
+
+        /**
+         * @return 読み出しに失敗したファイルまたはディレクトリのパス
+         */
+        public Path getPath() {
+            return path;
+        }
+
+        /**
+         * @return 失敗の理由
+         */
+        public String getMessage() {
+            return message;
+        }
+
+        /**
+         * @return 失敗の原因となった例外. 不正なフィールドがあったときは {@code null}.
+         */
+        public Exception getCause() {
+            return cause;
+        }
+
+        @Override
+        public String toString() {
+            return path + " : " + message;
+        }
+    }
+
+    /**
+     * {@link #scan(Path)}の結果.
+     */
+    public static final class ScanResult {
+        private final List<GameDocument> documents;
+        private final List<ScanError> errors;
+
+        ScanResult(List<GameDocument> documents, List<ScanError> errors){
+            this.documents = Collections.unmodifiableList(documents);
+            this.errors = Collections.unmodifiableList(errors);
+        }
+
+        /**
+         * @return 読み出せた{@link GameDocument}.シグネチャファイルのパスの順に並ぶ.
+         */
+        public List<GameDocument> getDocuments() {
+            return documents;
+        }
+
+        /**
+         * @return 読み出しに失敗したファイルと,不正なフィールドがあったファイルの一覧.
+         *         不正なフィールドがあったファイルも,そのフィールドを除いて{@link #getDocuments()}に含まれる.
+         */
+        public List<ScanError> getErrors() {
+            return errors;
+        }
+    }
+
+    /**
+     * 1件のシグネチャファイルの読み出し結果.読み出せたときは{@code document}, 失敗したときや不正なフィールドがあったときは{@code error}を持つ.
+     */
+    private static final class Entry {
+        final Path path;
+        final boolean isFile;
+        final GameDocument document;
+        final ScanError error;
+
+        Entry(Path path, boolean isFile, GameDocument document, ScanError error){
+            this.path = path;
+            this.isFile = isFile;
+            this.document = document;
+            this.error = error;
+        }
+    }
+
+    /**
+     * ゲームのフォルダを並べたディレクトリを探索し,シグネチャファイルを読み出す.
+     * @param gamesRoot ゲームのフォルダを並べたディレクトリ
+     * @return 読み出した{@link GameDocument}と失敗の一覧
+     * @throws IOException {@code gamesRoot}の一覧を取得できなかった
+     */
+    public ScanResult scan(Path gamesRoot) throws IOException {
+        return scan(gamesRoot, null);
+    }
+
+    /**
+     * ゲームのフォルダを並べたディレクトリを探索し,変更されたシグネチャファイルのみを読み出す.
+     * <p>
+     *     変更されていないファイルは{@link SignatureCache}から返す.
+     *     探索が全て成功したときは,見つからなかったファイルをキャッシュから取り除く.
+     *     キャッシュの保存は呼び出し元で{@link SignatureCache#save(Path)}を呼んで行う.
+     * </p>
+     * @param gamesRoot ゲームのフォルダを並べたディレクトリ
+     * @param cache 読み出し結果のキャッシュ. {@code null}のときはキャッシュを使わない.
+     * @return 読み出した{@link GameDocument}と失敗の一覧
+     * @throws IOException {@code gamesRoot}の一覧を取得できなかった
+     */
+    public ScanResult scan(Path gamesRoot, SignatureCache cache) throws IOException {
+        final List<Path> gameDirectories = new ArrayList<>();
+        try(final DirectoryStream<Path> stream = Files.newDirectoryStream(gamesRoot, Files::isDirectory)){
+            stream.forEach(gameDirectories::add);
+        }
+
+        final ExecutorService executor = newExecutor(parallelism);
+        final Semaphore permits = new Semaphore(parallelism);
+        try {
+            final List<CompletableFuture<List<Entry>>> futures = new ArrayList<>(gameDirectories.size());
+            for (final Path directory : gameDirectories){
+                futures.add(CompletableFuture.supplyAsync(() -> {
+                    permits.acquireUninterruptibly();
+                    try {
+                        return scanGameDirectory(directory, cache);
+                    }finally {
+                        permits.release();
+                    }
+                }, executor));
+            }
+
+            final List<Entry> entries = new ArrayList<>();
+            for (final CompletableFuture<List<Entry>> future : futures){
+                entries.addAll(future.join());
+            }
+            entries.sort(Comparator.comparing(entry -> entry.path));
+
+            final List<GameDocument> documents = new ArrayList<>(entries.size());
+            final List<ScanError> errors = new ArrayList<>();
+            final List<Path> foundFiles = new ArrayList<>(entries.size());
+            boolean isListingFailed = false;
+            for (final Entry entry : entries){
+                if(entry.document != null)documents.add(entry.document);
+                if(entry.error != null)errors.add(entry.error);
+                if(entry.isFile){
+                    foundFiles.add(entry.path);
+                }else {
+                    isListingFailed = true;
+                }
+            }
+
+            // 一覧を取得できなかったフォルダのファイルを削除済みと誤認しないように,全て成功したときのみ取り除く
+            if(cache != null && !isListingFailed)cache.retainOnly(foundFiles);
+
+            return new ScanResult(documents, errors);
+        }finally {
+            executor.shutdown();
+        }
+    }
+
+    private List<Entry> scanGameDirectory(Path directory, SignatureCache cache){
+        final List<Path> signatureFiles;
+        try(final Stream<Path> stream = Files.walk(directory, maxDepth)){
+            signatureFiles = stream
+                    .filter(path -> path.getFileName().toString().equals(fileName))
+                    .filter(Files::isRegularFile)
+                    .collect(Collectors.toList());
+        }catch (IOException | RuntimeException ex){
+            // UncheckedIOExceptionやSecurityExceptionで他のフォルダの探索まで中断しないよう,このフォルダの失敗として扱う
+            return Collections.singletonList(new Entry(directory, false, null,
+                    new ScanError(directory, "Failed to list " + directory, ex)));
+        }
+
+        final List<Entry> entries = new ArrayList<>(signatureFiles.size());
+        for (final Path path : signatureFiles){
+            entries.add(read(path, cache));
+        }
+        return entries;
+    }
+
+    private static Entry read(Path path, SignatureCache cache){
+        final ValidationReport report = ValidationReport.lenient();
+        final GameDocument document;
+        try {
+            document = cache != null ? cache.read(path, report) : Signature.parseSignature(path, report);
+        }catch (IOException ex){
+            return new Entry(path, true, null, new ScanError(path, "Failed to read from " + path, ex));
+        }catch (JSONException ex){
+            return new Entry(path, true, null, new ScanError(path, "Not a JSON object: " + ex.getMessage(), ex));
+        }catch (RuntimeException ex){
+            // 1件の失敗で全体の探索を中断しないよう,このファイルの失敗として扱う
+            return new Entry(path, true, null, new ScanError(path, "Failed to parse " + path + " : " + ex, ex));
+        }
+
+        if(report.isEmpty())return new Entry(path, true, document, null);
+
+        final String problems = report.getProblems().stream()
+                .map(ValidationReport.Problem::getReason)
+                .collect(Collectors.joining(", "));
+        return new Entry(path, true, document, new ScanError(path, "Invalid fields: " + problems, null));
+    }
+
+    /**
+     * 仮想スレッドが使えるJDKでは仮想スレッドを,そうでなければデーモンスレッドの固定数のスレッドプールを使う.
+     * どちらの場合も同時実行数は呼び出し元のセマフォで制限する.
+     */
+    private static ExecutorService newExecutor(int parallelism){
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }catch (ReflectiveOperationException ex){
+            return Executors.newFixedThreadPool(parallelism, runnable -> {
+                final Thread thread = new Thread(runnable, "SignatureScanner");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ゲーム情報の読み出し中に見つかった不正なフィールドの一覧.
+ * <p>
+ *     {@link #lenient()}で作ったインスタンスは問題を記録して読み出しを続ける.
+ *     {@link #failFast()}で作ったインスタンスは最初の問題で{@link IllegalArgumentException}を投げて読み出しを中断する.
+ *     このクラスはスレッドセーフである.
+ * </p>
+ */
+public final class ValidationReport {
+    private static final ValidationReport PRINTING = new ValidationReport(false, true);
+
+    private final boolean isFailFast;
+    private final boolean isPrinting;
+    private final List<Problem> problems = new ArrayList<>();
+
+    /**
+     * 1件の問題.
+     */
+    public static final class Problem {
+        private final int documentIndex;
+        private final Field field;
+        private final String reason;
+
+        Problem(int documentIndex, Field field, String reason){
+            this.documentIndex = documentIndex;
+            this.field = field;
+            this.reason = reason;
+        }
+
+        /**
+         * @return 問題のあったドキュメントの,配列内での0から始まる位置. 位置が分からないとき {@code -1}.
+         */
+        public int getDocumentIndex() {
+            return documentIndex;
+        }
+
+        /**
+         * @return 問題のあったフィールド
+         */
+        public Field getField() {
+            return field;
+        }
+
+        /**
+         * @return 問題の内容
+         */
+        public String getReason() {
+            return reason;
+        }
+
+        @Override
+        public String toString() {
+            return "document " + documentIndex + ", " + field + " : " + reason;
+        }
+    }
+
+    private ValidationReport(boolean isFailFast, boolean isPrinting){
+        this.isFailFast = isFailFast;
+        this.isPrinting = isPrinting;
+    }
+
+    /**
+     * 問題を記録して読み出しを続けるインスタンスを作る.
+     * @return 新しいインスタンス
+     */
+    public static ValidationReport lenient(){
+        return new ValidationReport(false, false);
+    }
+
+    /**
+     * 最初の問題で読み出しを中断するインスタンスを作る.
+     * @return 新しいインスタンス
+     */
+    public static ValidationReport failFast(){
+        return new ValidationReport(true, false);
+    }
+
+    /**
+     * 問題を記録せずに標準エラー出力へ書き出すインスタンスを返す.従来の読み出し方法で使う.
+     */
+    static ValidationReport printing(){
+        return PRINTING;
+    }
+
+    /**
+     * 問題を記録する.問題の件数は{@link CatalogMetrics}にも通知される.
+     * @throws IllegalArgumentException {@link #failFast()}で作ったインスタンスである
+     */
+    void report(int documentIndex, Field field, String reason) throws IllegalArgumentException {
+        CatalogMetrics.global().recordValidationFailure(field);
+
+        if(isPrinting){
+            System.err.println(reason);
+            return;
+        }
+
+        final Problem problem = new Problem(documentIndex, field, reason);
+        synchronized (problems){
+            problems.add(problem);
+        }
+        if(isFailFast)throw new IllegalArgumentException(problem.toString());
+    }
+
+    /**
+     * @return 記録した問題の一覧の複製
+     */
+    public List<Problem> getProblems(){
+        synchronized (problems){
+            return new ArrayList<>(problems);
+        }
+    }
+
+    /**
+     * @return 問題が1件も無いとき {@code true}.
+     */
+    public boolean isEmpty(){
+        synchronized (problems){
+            return problems.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,455 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info.server;
+
+import capslock.game_info.CatalogHolder;
+import capslock.game_info.Field;
+import capslock.game_info.FieldProjection;
+import capslock.game_info.Game;
+import capslock.game_info.GameCatalog;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONObject;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * {@link CatalogHolder}のカタログを読み出し専用で公開するHTTPサーバー.
+ * <p>
+ *     次のエンドポイントを持つ.いずれも{@code fields}パラメータに{@link Game#query(String)}と同じ形式のクエリを渡すと,
+ *     出力するフィールドを絞り込める.
+ * </p>
+ * <ul>
+ *     <li>{@code GET /games?offset=0&limit=50} 作成時の順序でゲーム情報の一覧を返す.</li>
+ *     <li>{@code GET /games/<UUID>} UUIDでゲーム情報を返す.</li>
+ *     <li>{@code GET /games/by-id/<gameID>} 作品番号でゲーム情報を返す.</li>
+ * </ul>
+ * <p>
+ *     応答にはサーバーごとに無作為に決めた値とカタログの版数を組み合わせたETagを付ける.
+ *     {@code If-None-Match}が現在のETagと一致するときは本文を送らない.
+ *     版数は{@link CatalogHolder}ごとに0から数えるため,無作為な値によって再起動前や別のサーバーのETagと区別する.
+ *     作成した応答の本文は版数ごとにキャッシュし,カタログが差し替えられると破棄する.
+ *     キャッシュのキーは問い合わせ文字列そのものではなく解釈したパラメータから作るため,
+ *     未知のパラメータや表記の違いで同じ応答が重複して保持されることはない.
+ *     保持する本文の合計の大きさには上限があり,上限を超えると最も長く参照されていない本文から捨てる.
+ * </p>
+ * <p>
+ *     JDKのHTTPサーバーはヘッダーと本文を別々に送るため,既定ではNagleのアルゴリズムと遅延確認応答によって
+ *     応答ごとに数十ミリ秒待たされることがある.
+ *     多くの要求を受けるときは,JVMの起動時に{@code -Dsun.net.httpserver.nodelay=true}を指定すること.
+ *     このクラスはJVM全体に影響するこの設定を変更しない.
+ * </p>
+ */
+public final class CatalogServer implements Closeable {
+    /**
+     * 一覧で1度に返すゲームの数の既定値.
+     */
+    public static final int DEFAULT_LIMIT = 50;
+
+    /**
+     * 一覧で1度に返すゲームの数の上限.
+     */
+    public static final int MAX_LIMIT = 1000;
+
+    /**
+     * キャッシュする応答の本文の合計の大きさの既定値.
+     */
+    public static final long DEFAULT_CACHE_CAPACITY_BYTES = 32L << 20;
+
+    private static final String GAMES = "/games";
+    private static final String BY_ID = "/games/by-id/";
+    private static final FieldProjection ALL_FIELDS = FieldProjection.of(EnumSet.allOf(Field.class));
+
+    private final CatalogHolder holder;
+    private final String epoch = Long.toHexString(new SecureRandom().nextLong());
+    private final HttpServer server;
+    private final ExecutorService ownedExecutor;
+    private final long cacheCapacityBytes;
+
+    /**
+     * 1つの版数のカタログに対する応答のキャッシュ.版数が変わると丸ごと差し替える.
+     */
+    private volatile ResponseCache cache = new ResponseCache(-1, 0);
+
+    static final class ResponseCache {
+        final long version;
+        private final long capacityBytes;
+
+        // アクセス順に並べ,先頭が最も長く参照されていない
+        private final LinkedHashMap<String, byte[]> bodies = new LinkedHashMap<>(16, 0.75f, true);
+        private long sizeBytes = 0;
+
+        ResponseCache(long version, long capacityBytes){
+            this.version = version;
+            this.capacityBytes = capacityBytes;
+        }
+
+        synchronized byte[] get(String key){
+            return bodies.get(key);
+        }
+
+        /**
+         * 本文を保持する.上限を超えたときは最も長く参照されていない本文から捨てる.上限より大きい本文は保持しない.
+         */
+        synchronized void put(String key, byte[] body){
+            if(body.length > capacityBytes)return;
+
+            final byte[] replaced = bodies.put(key, body);
+            if(replaced != null)sizeBytes -= replaced.length;
+            sizeBytes += body.length;
+
+            // 追加した本文は末尾にあり,それ自体は上限以下なので,先頭から捨てれば追加した本文より先に上限に収まる
+            final Iterator<byte[]> iterator = bodies.values().iterator();
+            while (sizeBytes > capacityBytes){
+                sizeBytes -= iterator.next().length;
+                iterator.remove();
+            }
+        }
+
+        synchronized int size(){
+            return bodies.size();
+        }
+
+        synchronized long getSizeBytes(){
+            return sizeBytes;
+        }
+    }
+
+    /**
+     * 解釈した要求.一覧の要求は{@code offset}と{@code limit}を,1件の要求はUUIDか作品番号のどちらかを持つ.
+     */
+    private static final class Request {
+        final FieldProjection projection;
+        final boolean isList;
+        final int offset;
+        final int limit;
+        final UUID uuid;
+        final int gameID;
+
+        Request(FieldProjection projection, boolean isList, int offset, int limit, UUID uuid, int gameID){
+            this.projection = projection;
+            this.isList = isList;
+            this.offset = offset;
+            this.limit = limit;
+            this.uuid = uuid;
+            this.gameID = gameID;
+        }
+
+        /**
+         * 同じ応答になる要求が同じ値になるキーを作る.
+         * @param total カタログのゲームの数.一覧の終端を超える{@code offset}は終端と同じ応答になるため,終端に揃える.
+         */
+        String cacheKey(int total){
+            final String resource = isList ? "list " + Math.min(offset, total) + ' ' + limit
+                    : uuid != null ? "uuid " + uuid : "id " + gameID;
+            return resource + ' ' + projection.getFields();
+        }
+    }
+
+    /**
+     * 要求の誤りを表す.
+     */
+    private static final class RequestException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        RequestException(int status, String message){
+            super(message, null, false, false);
+            this.status = status;
+        }
+    }
+
+    /**
+     * 既定の設定でサーバーを作る.要求はCPUのコア数の2倍のデーモンスレッドで処理する.
+     * @param holder 公開するカタログを保持する{@link CatalogHolder}
+     * @param address 待ち受けるアドレス.ポート番号が0のときは空いているポートを使う.
+     * @throws IOException 待ち受けを開始できなかった
+     */
+    public CatalogServer(CatalogHolder holder, InetSocketAddress address) throws IOException {
+        this(holder, address, null, DEFAULT_CACHE_CAPACITY_BYTES);
+    }
+
+    /**
+     * @param holder 公開するカタログを保持する{@link CatalogHolder}
+     * @param address 待ち受けるアドレス.ポート番号が0のときは空いているポートを使う.
+     * @param executor 要求を処理する{@link Executor}. {@code null}のときは専用のスレッドを使い,{@link #close()}で終了する.
+     * @param cacheCapacityBytes キャッシュする応答の本文の合計の大きさの上限. {@code 0}のときはキャッシュしない.
+     * @throws IOException 待ち受けを開始できなかった
+     */
+    public CatalogServer(CatalogHolder holder, InetSocketAddress address, Executor executor, long cacheCapacityBytes)
+            throws IOException {
+        if(cacheCapacityBytes < 0)throw new IllegalArgumentException("Cache capacity must not be negative.");
+
+        this.holder = holder;
+        this.cacheCapacityBytes = cacheCapacityBytes;
+
+        server = HttpServer.create(address, 0);
+        server.createContext(GAMES, this::handle);
+
+        if(executor != null){
+            ownedExecutor = null;
+            server.setExecutor(executor);
+        }else {
+            ownedExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 2, runnable -> {
+                final Thread thread = new Thread(runnable, "CatalogServer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            server.setExecutor(ownedExecutor);
+        }
+    }
+
+    /**
+     * 要求の受け付けを開始する.
+     */
+    public void start(){
+        server.start();
+    }
+
+    /**
+     * @return 待ち受けているアドレス.ポート番号に0を指定したときは,実際に使っているポート番号を含む.
+     */
+    public InetSocketAddress getAddress(){
+        return server.getAddress();
+    }
+
+    /**
+     * 要求の受け付けを終了する.処理中の要求は待たない.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        if(ownedExecutor != null)ownedExecutor.shutdownNow();
+    }
+
+    /**
+     * @return 現在の版数のキャッシュが保持している応答の数
+     */
+    int getCachedResponseCount(){
+        return cache.size();
+    }
+
+    /**
+     * @return 現在の版数のキャッシュが保持している本文の合計の大きさ
+     */
+    long getCachedBytes(){
+        return cache.getSizeBytes();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            final String method = exchange.getRequestMethod();
+            final boolean isHead = method.equals("HEAD");
+            if(!isHead && !method.equals("GET")){
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                sendError(exchange, 405, "Method not allowed.");
+                return;
+            }
+            final Request request = parse(exchange);
+
+            // 版数とカタログを別々に読むため,間に差し替えられたときは読み直して組を揃える
+            long version;
+            GameCatalog catalog;
+            do {
+                version = holder.getVersion();
+                catalog = holder.get();
+            }while (version != holder.getVersion());
+
+            ResponseCache current = cache;
+            if(current.version != version){
+                // 古い版数のキャッシュは捨てる.他のスレッドがより新しい版数に差し替えていれば,そちらを使う
+                final ResponseCache next = new ResponseCache(version, cacheCapacityBytes);
+                synchronized (this){
+                    if(cache.version < version)cache = next;
+                    current = cache;
+                }
+            }
+
+            final String key = request.cacheKey(catalog.size());
+            byte[] body = current.version == version ? current.get(key) : null;
+            if(body == null){
+                body = render(catalog, version, request).getBytes(StandardCharsets.UTF_8);
+                if(current.version == version)current.put(key, body);
+            }
+
+            // 存在しない資源に304を返さないよう,応答を作れることを確かめてから比較する
+            final String eTag = "\"" + epoch + '-' + version + '"';
+            final Headers headers = exchange.getResponseHeaders();
+            headers.set("ETag", eTag);
+            headers.set("Cache-Control", "no-cache");
+            if(matches(exchange.getRequestHeaders().getFirst("If-None-Match"), eTag)){
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+            send(exchange, 200, body, isHead);
+        }catch (RequestException ex){
+            sendError(exchange, ex.status, ex.getMessage());
+        }finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * 要求のパスとパラメータを解釈する.
+     */
+    private static Request parse(HttpExchange exchange) throws RequestException {
+        final String path = exchange.getRequestURI().getPath();
+        final Map<String, String> parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+        final FieldProjection projection = projectionOf(parameters.get("fields"));
+
+        if(path.equals(GAMES) || path.equals(GAMES + '/')){
+            final int offset = parseInt(parameters, "offset", 0, Integer.MAX_VALUE, 0);
+            final int limit = parseInt(parameters, "limit", 1, MAX_LIMIT, DEFAULT_LIMIT);
+            return new Request(projection, true, offset, limit, null, 0);
+        }
+
+        if(path.startsWith(BY_ID)){
+            final int gameID;
+            try {
+                gameID = Integer.parseInt(path.substring(BY_ID.length()));
+            }catch (NumberFormatException ex){
+                throw new RequestException(400, "Invalid gameID : " + path.substring(BY_ID.length()));
+            }
+            return new Request(projection, false, 0, 0, null, gameID);
+        }
+        if(path.startsWith(GAMES + '/')){
+            final UUID uuid;
+            try {
+                uuid = UUID.fromString(path.substring(GAMES.length() + 1));
+            }catch (IllegalArgumentException ex){
+                throw new RequestException(400, "Invalid UUID : " + path.substring(GAMES.length() + 1));
+            }
+            return new Request(projection, false, 0, 0, uuid, 0);
+        }
+        throw new RequestException(404, "Not found.");
+    }
+
+    private static String render(GameCatalog catalog, long version, Request request) throws RequestException {
+        if(request.isList){
+            final List<Game> games = catalog.getGameList();
+            final int from = Math.min(request.offset, games.size());
+            final int to = (int) Math.min((long) from + request.limit, games.size());
+
+            final StringBuilder builder = new StringBuilder()
+                    .append("{\"version\":").append(version)
+                    .append(",\"offset\":").append(from)
+                    .append(",\"limit\":").append(request.limit)
+                    .append(",\"total\":").append(games.size())
+                    .append(",\"games\":");
+            appendAll(request.projection, games.subList(from, to), builder);
+            return builder.append('}').toString();
+        }
+
+        final Game game = request.uuid != null ? catalog.getByUUID(request.uuid) : catalog.getByGameID(request.gameID);
+        if(game == null)throw new RequestException(404, "Not found.");
+        return request.projection.project(game);
+    }
+
+    private static void appendAll(FieldProjection projection, List<Game> games, StringBuilder builder){
+        try {
+            projection.projectAll(games, builder);
+        }catch (IOException ex){
+            // StringBuilderへの書き込みは失敗しない
+            throw new AssertionError(ex);
+        }
+    }
+
+    private static FieldProjection projectionOf(String jsonQuery) throws RequestException {
+        if(jsonQuery == null)return ALL_FIELDS;
+        try {
+            return FieldProjection.compile(jsonQuery);
+        }catch (IllegalArgumentException ex){
+            throw new RequestException(400, "Invalid fields query : " + ex.getMessage());
+        }
+    }
+
+    private static int parseInt(Map<String, String> parameters, String name, int min, int max, int defaultValue)
+            throws RequestException {
+        final String value = parameters.get(name);
+        if(value == null)return defaultValue;
+        try {
+            final int parsed = Integer.parseInt(value);
+            if(parsed >= min && parsed <= max)return parsed;
+        }catch (NumberFormatException ex){
+            // 下で範囲外と同じく扱う
+        }
+        throw new RequestException(400, "\"" + name + "\" must be an integer between " + min + " and " + max + '.');
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) throws RequestException {
+        final Map<String, String> parameters = new HashMap<>();
+        if(rawQuery == null || rawQuery.isEmpty())return parameters;
+
+        try {
+            for (final String pair : rawQuery.split("&")){
+                if(pair.isEmpty())continue;
+                final int separator = pair.indexOf('=');
+                final String name = URLDecoder.decode(separator >= 0 ? pair.substring(0, separator) : pair, StandardCharsets.UTF_8);
+                final String value = separator >= 0 ? URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8) : "";
+                parameters.put(name, value);
+            }
+        }catch (IllegalArgumentException ex){
+            throw new RequestException(400, "Malformed query string.");
+        }
+        return parameters;
+    }
+
+    private static boolean matches(String ifNoneMatch, String eTag){
+        if(ifNoneMatch == null)return false;
+        for (final String candidate : ifNoneMatch.split(",")){
+            final String trimmed = candidate.trim();
+            if(trimmed.equals("*") || trimmed.equals(eTag) || trimmed.equals("W/" + eTag))return true;
+        }
+        return false;
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        exchange.getResponseHeaders().remove("ETag");
+        send(exchange, status, ("{\"error\":" + JSONObject.quote(message) + '}').getBytes(StandardCharsets.UTF_8),
+                exchange.getRequestMethod().equals("HEAD"));
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body, boolean isHead) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        if(isHead){
+            exchange.getResponseHeaders().set("Content-Length", Integer.toString(body.length));
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        try(final OutputStream out = exchange.getResponseBody()){
+            out.write(body);
+        }
+    }
+}
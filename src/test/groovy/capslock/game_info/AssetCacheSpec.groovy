@@ -0,0 +1,158 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info
+
+import spock.lang.Specification
+
+import java.nio.ReadOnlyBufferException
+import java.nio.file.Files
+import java.nio.file.Path
+
+/**
+ * {@link AssetCache}が合計の大きさの上限を守り,最も長く参照されていないファイルから捨てることを確かめる.
+ */
+class AssetCacheSpec extends Specification {
+    Path directory
+
+    def setup() {
+        directory = Files.createTempDirectory("AssetCacheSpec")
+    }
+
+    def cleanup() {
+        directory.toFile().deleteDir()
+    }
+
+    Path asset(String fileName, int size) {
+        Files.write(directory.resolve(fileName), new byte[size])
+    }
+
+    def "loaded files are kept and returned without reading again"() {
+        given:
+        def cache = new AssetCache(1000)
+        def file = asset("a.png", 100)
+
+        when:
+        cache.load(file)
+        Files.delete(file)
+
+        then:
+        cache.load(file).remaining() == 100
+        cache.contains(file)
+        cache.hitCount == 1
+        cache.missCount == 1
+    }
+
+    def "the least recently used file is evicted first"() {
+        given:
+        def cache = new AssetCache(300)
+        def a = asset("a.png", 100)
+        def b = asset("b.png", 100)
+        def c = asset("c.png", 100)
+        def d = asset("d.png", 100)
+        [a, b, c].each { cache.load(it) }
+
+        when:
+        cache.get(a)
+        cache.load(d)
+
+        then:
+        cache.contains(a)
+        !cache.contains(b)
+        cache.contains(c)
+        cache.contains(d)
+        cache.sizeBytes == 300
+    }
+
+    def "a file larger than the capacity is read but not kept"() {
+        given:
+        def cache = new AssetCache(100)
+        def kept = asset("kept.png", 50)
+        def large = asset("large.png", 101)
+        cache.load(kept)
+
+        when:
+        def buffer = cache.load(large)
+
+        then:
+        buffer.remaining() == 101
+        !cache.contains(large)
+        cache.contains(kept)
+    }
+
+    def "invalidate and clear release the space"() {
+        given:
+        def cache = new AssetCache(1000)
+        def a = asset("a.png", 100)
+        def b = asset("b.png", 200)
+        cache.load(a)
+        cache.load(b)
+
+        when:
+        cache.invalidate(a)
+
+        then:
+        cache.size() == 1
+        cache.sizeBytes == 200
+
+        when:
+        cache.clear()
+
+        then:
+        cache.size() == 0
+        cache.sizeBytes == 0
+    }
+
+    def "returned buffers are read only and independent"() {
+        given:
+        def cache = new AssetCache(1000, direct)
+        def file = asset("a.png", 10)
+        def first = cache.load(file)
+
+        when:
+        first.position(5)
+
+        then:
+        cache.get(file).position() == 0
+        cache.get(file).isDirect() == direct
+
+        when:
+        first.put((byte) 1)
+
+        then:
+        thrown(ReadOnlyBufferException)
+
+        where:
+        direct << [false, true]
+    }
+
+    def "paths are compared after normalization"() {
+        given:
+        def cache = new AssetCache(1000)
+        def file = asset("a.png", 10)
+        cache.load(file)
+
+        expect:
+        cache.contains(file.parent.resolve("../" + file.parent.fileName + "/a.png"))
+    }
+
+    def "a negative capacity is rejected"() {
+        when:
+        new AssetCache(-1)
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+}
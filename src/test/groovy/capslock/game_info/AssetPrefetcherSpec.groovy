@@ -0,0 +1,176 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info
+
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.util.concurrent.Executor
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.TimeUnit
+
+/**
+ * {@link AssetPrefetcher}が選択中のゲームの前後の画像を読み出し,選択が変わった古い読み出しを打ち切ることを確かめる.
+ */
+class AssetPrefetcherSpec extends Specification {
+    Path directory
+    AssetCache cache = new AssetCache(1 << 20)
+    List<Runnable> queued = []
+    /** 渡されたタスクを溜め,{@link #runQueued()}で順に実行する. */
+    Executor queue = { Runnable task -> queued << task } as Executor
+
+    def setup() {
+        directory = Files.createTempDirectory("AssetPrefetcherSpec")
+    }
+
+    def cleanup() {
+        directory.toFile().deleteDir()
+    }
+
+    void runQueued() {
+        def tasks = new ArrayList<Runnable>(queued)
+        queued.clear()
+        tasks*.run()
+    }
+
+    /**
+     * パネル画像と画像を1つずつ持つゲーム.ファイルは{@code exists}のときのみ作る.
+     */
+    GameDocument illustrated(int id, boolean exists = true) {
+        def panel = Paths.get("panel${id}.png")
+        def image = Paths.get("image${id}.png")
+        if (exists) {
+            Files.write(directory.resolve(panel), new byte[16])
+            Files.write(directory.resolve(image), new byte[16])
+        }
+        new GameDocument().setUUID(new UUID(0, id)).setPanel(panel).setImageList([image])
+    }
+
+    Path file(String name) {
+        directory.resolve(name)
+    }
+
+    def "the panels within the radius and the images of the selected game are cached"() {
+        given:
+        def games = (0..<7).collect { illustrated(it) }
+        def prefetcher = new AssetPrefetcher(cache, directory, 2, 0, queue)
+
+        when:
+        prefetcher.select(games, 3)
+        runQueued()
+
+        then:
+        (1..5).every { cache.contains(file("panel${it}.png")) }
+        !cache.contains(file("panel0.png"))
+        !cache.contains(file("panel6.png"))
+        cache.contains(file("image3.png"))
+        !cache.contains(file("image2.png"))
+        prefetcher.missingAssets.isEmpty()
+    }
+
+    def "a superseded selection does not touch any file"() {
+        given:
+        def games = (0..<3).collect { illustrated(it) }
+        def prefetcher = new AssetPrefetcher(cache, directory, 0, 0, queue)
+
+        when:
+        prefetcher.select(games, 0)
+        prefetcher.select(games, 2)
+        runQueued()
+
+        then:
+        !cache.contains(file("panel0.png"))
+        cache.contains(file("panel2.png"))
+    }
+
+    def "files that cannot be read are recorded as missing"() {
+        given:
+        def games = [illustrated(0, false)]
+        def prefetcher = new AssetPrefetcher(cache, directory, 0, 0, queue)
+
+        when:
+        prefetcher.select(games, 0)
+        runQueued()
+
+        then:
+        prefetcher.missingAssets*.field as Set == [Field.PANEL, Field.IMAGE_LIST] as Set
+        prefetcher.missingAssets.every { it.reason == MissingAsset.Reason.NOT_FOUND && it.game.is(games[0]) }
+    }
+
+    def "verify reports every missing file and forgets those found later"() {
+        given:
+        def present = illustrated(0)
+        def absent = illustrated(1, false).setMovieList([Paths.get("movie1.mp4")])
+        Files.createDirectory(file("movie1.mp4"))
+        def prefetcher = new AssetPrefetcher(cache, directory, 0, 0, queue)
+
+        when:
+        def future = prefetcher.verify([present, absent])
+        runQueued()
+        def missing = future.get(10, TimeUnit.SECONDS)
+
+        then:
+        missing.collect { it.path.toString() + " " + it.reason } as Set == [
+                "panel1.png NOT_FOUND", "image1.png NOT_FOUND", "movie1.mp4 NOT_REGULAR_FILE"] as Set
+        prefetcher.missingAssets.size() == 3
+
+        when:
+        Files.write(file("panel1.png"), new byte[1])
+        future = prefetcher.verify([absent])
+        runQueued()
+        future.get(10, TimeUnit.SECONDS)
+
+        then:
+        prefetcher.missingAssets.size() == 2
+    }
+
+    def "the owned threads prefetch in the background and stop on close"() {
+        given:
+        def games = [illustrated(0)]
+        def prefetcher = new AssetPrefetcher(cache, directory)
+
+        when:
+        prefetcher.select(games, 0)
+        def deadline = System.currentTimeMillis() + 10000
+        while (!cache.contains(file("image0.png")) && System.currentTimeMillis() < deadline) Thread.sleep(10)
+        prefetcher.close()
+
+        then:
+        cache.contains(file("image0.png"))
+
+        when:
+        prefetcher.verify(games).join()
+
+        then:
+        def ex = thrown(Exception)
+        ex.cause instanceof RejectedExecutionException
+    }
+
+    def "invalid arguments are rejected"() {
+        when:
+        new AssetPrefetcher(cache, directory, radius, warm, queue)
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        radius | warm
+        -1     | 0
+        0      | -1
+    }
+}
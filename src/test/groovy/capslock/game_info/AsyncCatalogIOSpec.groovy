@@ -0,0 +1,247 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info
+
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.NoSuchFileException
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.util.concurrent.Callable
+import java.util.concurrent.CancellationException
+import java.util.concurrent.CompletionException
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Flow
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.TimeUnit
+
+/**
+ * {@link AsyncCatalogIO}の読み書きの結果と,取り消しと受け渡しの待ち合わせを確かめる.
+ */
+class AsyncCatalogIOSpec extends Specification {
+    static final int COUNT = 1000
+
+    Path directory
+    Path file
+    ExecutorService executor = Executors.newSingleThreadExecutor()
+    ExecutorService delivery = Executors.newCachedThreadPool()
+    AsyncCatalogIO io = new AsyncCatalogIO(executor, delivery)
+
+    def setup() {
+        directory = Files.createTempDirectory("AsyncCatalogIOSpec")
+        file = directory.resolve("games.json")
+        JSONDBStreamWriter.writeAtomically(file, catalog(COUNT), Compression.NONE)
+    }
+
+    def cleanup() {
+        executor.shutdownNow()
+        delivery.shutdownNow()
+        directory.toFile().deleteDir()
+    }
+
+    static List<GameDocument> catalog(int count) {
+        (1..count).collect { new GameDocument().setUUID(new UUID(0, it)).setExe(Paths.get("game${it}.exe")).setGameID(it) }
+    }
+
+    /**
+     * 読み書き用のスレッドが空いていることを,後から投入した処理が実行されることで確かめる.
+     */
+    boolean isExecutorIdle() {
+        executor.submit({ -> true } as Callable).get(10, TimeUnit.SECONDS)
+    }
+
+    List<String> fileNames() {
+        def stream = Files.list(directory)
+        try {
+            stream.iterator().collect { it.fileName.toString() }
+        } finally {
+            stream.close()
+        }
+    }
+
+    /**
+     * 購読時に{@code initialRequest}件だけ要求し,受け取った件数と終了の通知を記録する.
+     */
+    static class RecordingSubscriber implements Flow.Subscriber<GameDocument> {
+        final long initialRequest
+        final List<GameDocument> received = Collections.synchronizedList([])
+        final CountDownLatch terminated = new CountDownLatch(1)
+        volatile Flow.Subscription subscription
+        volatile Throwable error
+        volatile boolean isCompleted = false
+
+        RecordingSubscriber(long initialRequest) {
+            this.initialRequest = initialRequest
+        }
+
+        void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription
+            subscription.request(initialRequest)
+        }
+
+        void onNext(GameDocument item) {
+            received << item
+        }
+
+        void onError(Throwable throwable) {
+            error = throwable
+            terminated.countDown()
+        }
+
+        void onComplete() {
+            isCompleted = true
+            terminated.countDown()
+        }
+    }
+
+    def "read returns every document and reports the final progress"() {
+        given:
+        def progress = []
+
+        when:
+        def documents = io.read(file, ValidationReport.lenient(), { long bytes, long count -> progress << [bytes, count] } as ProgressListener)
+                .get(10, TimeUnit.SECONDS)
+
+        then:
+        documents*.gameID == (1..COUNT).toList()
+        progress.last() == [Files.size(file), (long) COUNT]
+        progress.size() == COUNT.intdiv(256) + 1
+    }
+
+    def "write and read round trip with compression"() {
+        given:
+        def target = directory.resolve("written.json")
+
+        when:
+        io.write(target, catalog(10), compression, ProgressListener.NONE).get(10, TimeUnit.SECONDS)
+
+        then:
+        Compression.detect(target) == compression
+        io.read(target).get(10, TimeUnit.SECONDS)*.gameID == (1..10).toList()
+
+        where:
+        compression << [Compression.NONE, Compression.GZIP]
+    }
+
+    def "a cancelled write leaves the original file and no temporary file"() {
+        given:
+        def original = Files.readAllBytes(file)
+        def futures = []
+        def cancelling = { long bytes, long count -> futures[0].cancel(false) } as ProgressListener
+        def gate = new CountDownLatch(1)
+        executor.execute({ gate.await() } as Runnable)
+
+        when:
+        futures << io.write(file, catalog(COUNT).collect { it.setName("changed") }, Compression.NONE, cancelling)
+        gate.countDown()
+        futures[0].get(10, TimeUnit.SECONDS)
+
+        then:
+        thrown(CancellationException)
+        isExecutorIdle()
+        Files.readAllBytes(file) == original
+        fileNames() == ["games.json"]
+    }
+
+    def "the publisher waits for requests and stops when cancelled"() {
+        given:
+        def subscriber = new RecordingSubscriber(1)
+
+        when:
+        def future = io.publish(file, subscriber, 4, ValidationReport.lenient(), ProgressListener.NONE)
+        Thread.sleep(500)
+
+        then: "要求された件数と受け渡しを待つ件数を超えて読み進めない"
+        !future.isDone()
+        subscriber.received.size() == 1
+
+        when:
+        future.cancel(false)
+
+        then:
+        subscriber.terminated.await(10, TimeUnit.SECONDS)
+        subscriber.error instanceof CancellationException
+        isExecutorIdle()
+    }
+
+    def "the publisher stops when the subscription is cancelled"() {
+        given:
+        def subscriber = new RecordingSubscriber(1)
+
+        when:
+        def future = io.publish(file, subscriber, 4, ValidationReport.lenient(), ProgressListener.NONE)
+        Thread.sleep(200)
+        subscriber.subscription.cancel()
+        def count = future.get(10, TimeUnit.SECONDS)
+
+        then:
+        count < COUNT
+        isExecutorIdle()
+    }
+
+    def "a subscriber that requests everything receives every document"() {
+        given:
+        def subscriber = new RecordingSubscriber(Long.MAX_VALUE)
+
+        when:
+        def count = io.publish(file, subscriber).get(10, TimeUnit.SECONDS)
+        subscriber.terminated.await(10, TimeUnit.SECONDS)
+
+        then:
+        count == COUNT
+        subscriber.isCompleted
+        subscriber.received*.gameID == (1..COUNT).toList()
+    }
+
+    def "signature files are read and written asynchronously"() {
+        given:
+        def signature = directory.resolve("signature.json")
+        def document = catalog(1)[0].setName("署名")
+
+        when:
+        io.writeSignature(signature, document, compression).get(10, TimeUnit.SECONDS)
+
+        then:
+        io.readSignature(signature).get(10, TimeUnit.SECONDS).name == "署名"
+
+        where:
+        compression << [Compression.NONE, Compression.GZIP]
+    }
+
+    def "reading a missing signature file fails the future"() {
+        when:
+        io.readSignature(directory.resolve("missing.json")).join()
+
+        then:
+        def ex = thrown(CompletionException)
+        ex.cause instanceof NoSuchFileException
+    }
+
+    def "a rejected task fails the future"() {
+        given:
+        executor.shutdown()
+
+        when:
+        io.read(file).join()
+
+        then:
+        def ex = thrown(CompletionException)
+        ex.cause instanceof RejectedExecutionException
+    }
+}
@@ -0,0 +1,129 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info
+
+import spock.lang.Requires
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.charset.StandardCharsets
+import java.nio.file.FileSystems
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.nio.file.attribute.PosixFilePermissions
+
+/**
+ * {@link AtomicFiles}による置き換えが内容を入れ替え,ファイルの権限を保つことを確かめる.
+ */
+class AtomicFilesSpec extends Specification {
+    Path directory
+    Path target
+
+    def setup() {
+        directory = Files.createTempDirectory("atomic")
+        target = directory.resolve("games.json")
+    }
+
+    def cleanup() {
+        directory.toFile().deleteDir()
+    }
+
+    void replaceWith(String text) {
+        AtomicFiles.write(target, { out -> out.write(text.getBytes(StandardCharsets.UTF_8)) } as AtomicFiles.Content)
+    }
+
+    List<String> fileNames() {
+        def stream = Files.list(directory)
+        try {
+            return stream.iterator().collect { it.fileName.toString() }
+        } finally {
+            stream.close()
+        }
+    }
+
+    String permissionsOf(Path path) {
+        PosixFilePermissions.toString(Files.getPosixFilePermissions(path))
+    }
+
+    def "the content is replaced and no temporary file is left"() {
+        given:
+        Files.write(target, "old".getBytes(StandardCharsets.UTF_8))
+
+        when:
+        replaceWith("new")
+
+        then:
+        new String(Files.readAllBytes(target), StandardCharsets.UTF_8) == "new"
+        fileNames() == ["games.json"]
+    }
+
+    def "a failed write leaves the target unchanged"() {
+        given:
+        Files.write(target, "old".getBytes(StandardCharsets.UTF_8))
+
+        when:
+        AtomicFiles.write(target, { out -> out.write(1); throw new IOException("disk full") } as AtomicFiles.Content)
+
+        then:
+        thrown(IOException)
+        new String(Files.readAllBytes(target), StandardCharsets.UTF_8) == "old"
+        fileNames() == ["games.json"]
+    }
+
+    @Unroll
+    @Requires({ FileSystems.getDefault().supportedFileAttributeViews().contains("posix") })
+    def "permissions #permissions of the replaced file are kept"() {
+        given:
+        Files.write(target, "old".getBytes(StandardCharsets.UTF_8))
+        Files.setPosixFilePermissions(target, PosixFilePermissions.fromString(permissions))
+
+        when:
+        replaceWith("new")
+
+        then:
+        permissionsOf(target) == permissions
+
+        where:
+        permissions << ["rw-r--r--", "rw-------", "rw-r-----", "rwxr-xr-x"]
+    }
+
+    @Requires({ FileSystems.getDefault().supportedFileAttributeViews().contains("posix") })
+    def "a new file gets the same permissions as any other new file"() {
+        given:
+        def reference = Files.createFile(directory.resolve("reference"))
+
+        when:
+        replaceWith("new")
+
+        then:
+        permissionsOf(target) == permissionsOf(reference)
+    }
+
+    @Requires({ FileSystems.getDefault().supportedFileAttributeViews().contains("posix") })
+    def "a catalog saved by flushAtomically stays readable by other users"() {
+        given:
+        new JSONDBWriter().add(new GameDocument().setUUID(new UUID(0, 1)).setExe(Paths.get("a.exe"))).flush(target)
+        Files.setPosixFilePermissions(target, PosixFilePermissions.fromString("rw-r--r--"))
+
+        when:
+        new JSONDBWriter().add(new GameDocument().setUUID(new UUID(0, 2)).setExe(Paths.get("b.exe"))).flushAtomically(target)
+
+        then:
+        permissionsOf(target) == "rw-r--r--"
+        new JSONDBReader(target).getDocumentList()*.UUID == [new UUID(0, 2)]
+    }
+}
@@ -0,0 +1,130 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info
+
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.time.Instant
+
+/**
+ * {@link BinaryDBWriter}で書き出したスナップショットの読み戻しと,壊れたスナップショットの検出を確かめる.
+ */
+class BinaryDBReaderSpec extends Specification {
+    Path directory
+    Path jsonPath
+    Path snapshotPath
+
+    def setup() {
+        directory = Files.createTempDirectory("snapshot")
+        jsonPath = directory.resolve("games.json")
+        snapshotPath = directory.resolve("games.bin")
+    }
+
+    def cleanup() {
+        directory.toFile().deleteDir()
+    }
+
+    static List<GameDocument> sampleGames() {
+        [
+                new GameDocument()
+                        .setUUID(new UUID(0, 1))
+                        .setExe(Paths.get("games/a/a.exe"))
+                        .setName("ゲームA")
+                        .setLastMod(Instant.parse("2018-04-01T12:34:56.789Z"))
+                        .setDesc("説明")
+                        .setPanel(Paths.get("games/a/panel.png"))
+                        .setImageList([Paths.get("games/a/1.png"), Paths.get("games/a/2.png")])
+                        .setMovieList([Paths.get("games/a/movie.mp4")])
+                        .setGameID(1),
+                new GameDocument()
+                        .setUUID(new UUID(0, 2))
+                        .setExe(Paths.get("games/b/b.exe"))
+                        .setPanel(Paths.get("games/a/panel.png"))
+        ]
+    }
+
+    def "a snapshot reads back the same games"() {
+        given:
+        def games = sampleGames()
+        def writer = new BinaryDBWriter()
+        games.each { writer.add(it) }
+        writer.flush(snapshotPath)
+
+        when:
+        def read = new BinaryDBReader(snapshotPath).getDocumentList()
+
+        then:
+        read.size() == games.size()
+        [games, read].transpose().every { pair -> pair[0].differingFields(pair[1]).isEmpty() }
+    }
+
+    def "lists read from a snapshot can be modified"() {
+        given:
+        def writer = new BinaryDBWriter()
+        sampleGames().each { writer.add(it) }
+        writer.flush(snapshotPath)
+
+        when:
+        def game = new BinaryDBReader(snapshotPath).getDocumentList()[1]
+        game.imageList.add(Paths.get("added.png"))
+
+        then:
+        game.imageList == [Paths.get("added.png")]
+    }
+
+    def "a corrupted snapshot is rejected by its checksum"() {
+        given:
+        def writer = new BinaryDBWriter()
+        sampleGames().each { writer.add(it) }
+        writer.flush(snapshotPath)
+        def bytes = Files.readAllBytes(snapshotPath)
+        def middle = bytes.length.intdiv(2)
+        bytes[middle] = (byte) (bytes[middle] ^ 0x01)
+        Files.write(snapshotPath, bytes)
+
+        when:
+        new BinaryDBReader(snapshotPath)
+
+        then:
+        def ex = thrown(IOException)
+        ex.message.contains("checksum")
+    }
+
+    def "readWithSnapshot creates the snapshot and falls back to JSON when it is stale"() {
+        given:
+        def writer = new JSONDBWriter()
+        sampleGames().each { writer.add(it) }
+        writer.flush(jsonPath)
+
+        when:
+        def first = BinaryDBReader.readWithSnapshot(jsonPath, snapshotPath)
+
+        then:
+        first.size() == 2
+        Files.exists(snapshotPath)
+
+        when: "JSONファイルを同じ更新日時のまま書き換える"
+        def lastModified = Files.getLastModifiedTime(jsonPath)
+        new JSONDBWriter().add(sampleGames()[0]).flush(jsonPath)
+        Files.setLastModifiedTime(jsonPath, lastModified)
+
+        then:
+        BinaryDBReader.readWithSnapshot(jsonPath, snapshotPath)*.UUID == [new UUID(0, 1)]
+    }
+}
@@ -0,0 +1,143 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info
+
+import org.json.JSONArray
+import org.json.JSONException
+import org.json.JSONObject
+import org.json.JSONTokener
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+
+/**
+ * {@link ByteJSONScanner}がorg.jsonと同じ値を読み出すことを確かめる.
+ */
+class ByteJSONScannerSpec extends Specification {
+    static Object scan(String json) {
+        new ByteJSONScanner(ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8))).nextValue()
+    }
+
+    static boolean same(Object expected, Object actual) {
+        if (expected instanceof JSONObject) return actual instanceof JSONObject && expected.similar(actual)
+        if (expected instanceof JSONArray) return actual instanceof JSONArray && expected.similar(actual)
+        expected == actual
+    }
+
+    @Unroll
+    def "scanning #json gives the same value as org.json"() {
+        expect:
+        same(new JSONTokener(json).nextValue(), scan(json))
+
+        where:
+        json << [
+                '{}',
+                '[]',
+                '{"name":"ゲーム","gameID":12,"imageList":["a.png","b.png"]}',
+                '{"escaped":"\\"quote\\" \\\\ \\/ \\b\\f\\n\\r\\t \\u3042 \\ud83c\\udfae"}',
+                '{"nested":{"array":[1,-2.5,3e2,true,false,null,{"k":[]}]}}',
+                '  {  "spaced" :  [ 1 , 2 ]  }  ',
+                '"😀 emoji outside the BMP"',
+                '-0.125'
+        ]
+    }
+
+    def "keys are looked up as fields even when they are escaped"() {
+        given:
+        def scanner = new ByteJSONScanner(ByteBuffer.wrap('{"n\\u0061me":"x","unknown":1}'.getBytes(StandardCharsets.UTF_8)))
+
+        when:
+        def offsets = scanner.nextDocumentOffsets()
+
+        then:
+        offsets[Field.NAME.ordinal()] >= 0
+        offsets.findAll { it >= 0 }.size() == 1
+    }
+
+    @Unroll
+    def "malformed input #json is rejected"() {
+        when:
+        scan(json)
+
+        then:
+        thrown(JSONException)
+
+        where:
+        json << ['{"a":', '{"a" 1}', '["unterminated', '[1 2]', '[1 2}', '{"a":[}', '["\\x"]']
+    }
+
+    @Unroll
+    def "unquoted value #literal is rejected although org.json reads it as a string"() {
+        when:
+        scan('[' + literal + ']')
+
+        then:
+        thrown(JSONException)
+
+        where:
+        literal << ['tru', 'nul', '01', '-', '1.', '1e', 'abc']
+    }
+
+    @Unroll
+    def "the mapped reader rejects a malformed ignored field #value like the org.json reader"() {
+        given:
+        def file = Files.createTempFile("games", ".json")
+        Files.write(file, ('[{"UUID":"00000000-0000-0000-0000-000000000001","exe":"a.exe","ignored":' + value + '}]')
+                .getBytes(StandardCharsets.UTF_8))
+
+        when:
+        new JSONDBReader(file)
+
+        then:
+        thrown(JSONException)
+
+        when:
+        JSONDBReader.mapped(file)
+
+        then:
+        thrown(JSONException)
+
+        cleanup:
+        Files.deleteIfExists(file)
+
+        where:
+        value << ['[1 2}', '{"a" 1}', '{"a":1 "b":2}', '{"a":[}', '[{]', '"\\x"', '"unterminated']
+    }
+
+    def "the mapped reader produces the same documents as the org.json reader"() {
+        given:
+        def file = Files.createTempFile("games", ".json")
+        Files.write(file, ('[' +
+                '{"UUID":"00000000-0000-0000-0000-000000000001","exe":"a.exe","name":"エー","lastMod":"2018-04-01T00:00:00Z"},' +
+                '{"UUID":"00000000-0000-0000-0000-000000000002","exe":"b\\/b.exe","desc":"改行\\nあり","panel":"p.png",' +
+                '"imageList":["1.png","2.png"],"movieList":["m.mp4"],"gameID":2,"ignored":{"deep":[1,2,3]}}' +
+                ']').getBytes(StandardCharsets.UTF_8))
+
+        when:
+        def expected = new JSONDBReader(file).getDocumentList()
+        def actual = JSONDBReader.mapped(file).getDocumentList()
+
+        then:
+        actual.size() == expected.size()
+        [expected, actual].transpose().every { pair -> pair[0].differingFields(pair[1]).isEmpty() }
+
+        cleanup:
+        Files.deleteIfExists(file)
+    }
+}
@@ -0,0 +1,139 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info
+
+import spock.lang.Specification
+
+import java.nio.file.Paths
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.function.UnaryOperator
+
+/**
+ * {@link CatalogHolder}の差し替えが競合しても更新を失わず,読み出し側が不変のカタログを見ることを確かめる.
+ */
+class CatalogHolderSpec extends Specification {
+    static GameDocument numbered(long uuid, int gameID) {
+        new GameDocument().setUUID(new UUID(0, uuid)).setGameID(gameID)
+    }
+
+    static UnaryOperator<List<Game>> incrementGameID() {
+        return { List<Game> games -> games.collect { GameSnapshot.of(it).withGameID(it.gameID + 1) } } as UnaryOperator
+    }
+
+    void runConcurrently(int threads, Closure task) {
+        def pool = Executors.newFixedThreadPool(threads)
+        def start = new CountDownLatch(1)
+        try {
+            def futures = (0..<threads).collect { i -> pool.submit({ start.await(); task(i) } as Callable) }
+            start.countDown()
+            futures*.get()
+        } finally {
+            pool.shutdownNow()
+        }
+    }
+
+    def "concurrent updates are all applied and each bumps the version once"() {
+        given:
+        def holder = new CatalogHolder([numbered(1, 1)])
+
+        when:
+        runConcurrently(8) { i -> 100.times { holder.update(incrementGameID()) } }
+
+        then:
+        holder.get().getByUUID(new UUID(0, 1)).gameID == 801
+        holder.version == 800
+    }
+
+    def "concurrent upserts of different games are all kept"() {
+        given:
+        def holder = new CatalogHolder()
+
+        when:
+        runConcurrently(8) { i -> 50.times { n -> holder.upsert(numbered(i * 1000 + n + 1, i * 1000 + n + 1)) } }
+
+        then:
+        holder.get().size() == 400
+        holder.version == 400
+    }
+
+    def "an updater that loses the race is called again with the newer catalog"() {
+        given:
+        def holder = new CatalogHolder([numbered(1, 1)])
+        def seen = []
+
+        when:
+        holder.update({ List<Game> games ->
+            seen << games*.UUID
+            // 最初の呼び出しの間に別の更新が差し替える
+            if (seen.size() == 1) holder.upsert(numbered(2, 2))
+            games
+        } as UnaryOperator)
+
+        then:
+        seen == [[new UUID(0, 1)], [new UUID(0, 1), new UUID(0, 2)]]
+        holder.get().size() == 2
+        holder.version == 2
+    }
+
+    def "a rejected update leaves the catalog and version unchanged"() {
+        given:
+        def holder = new CatalogHolder([numbered(1, 1)])
+        def before = holder.get()
+
+        when:
+        holder.upsert(numbered(2, 1))
+
+        then:
+        thrown(IllegalArgumentException)
+        holder.get().is(before)
+        holder.version == 0
+    }
+
+    def "readers keep the catalog they got and do not see later changes to the source documents"() {
+        given:
+        def document = numbered(1, 1).setName("before").setImageList([Paths.get("a.png")])
+        def holder = new CatalogHolder([document])
+        def catalog = holder.get()
+
+        when:
+        document.setName("after")
+        document.imageList.add(Paths.get("b.png"))
+        holder.remove(new UUID(0, 1))
+
+        then:
+        catalog.getByUUID(new UUID(0, 1)).name == "before"
+        catalog.getByUUID(new UUID(0, 1)).imageList == [Paths.get("a.png")]
+        holder.get().size() == 0
+    }
+
+    def "snapshots cannot be modified and with methods return new snapshots"() {
+        given:
+        def snapshot = GameSnapshot.of(numbered(1, 1).setName("name").setImageList([Paths.get("a.png")]))
+
+        when:
+        snapshot.imageList.add(Paths.get("b.png"))
+
+        then:
+        thrown(UnsupportedOperationException)
+
+        and:
+        snapshot.withName("renamed").name == "renamed"
+        snapshot.name == "name"
+        snapshot.toDocument().setName("document").name == "document"
+    }
+}
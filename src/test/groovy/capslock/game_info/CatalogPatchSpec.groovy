@@ -0,0 +1,135 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info
+
+import spock.lang.Specification
+
+import java.nio.charset.StandardCharsets
+import java.nio.file.Paths
+import java.time.Instant
+
+/**
+ * {@link CatalogPatch}で作った差分を書き出して読み戻し,適用すると目的のカタログになることを確かめる.
+ */
+class CatalogPatchSpec extends Specification {
+    /**
+     * 差分を読み戻せるよう,読み出しに必要なexeと比べる対象のnameを持つゲーム情報.
+     */
+    static GameDocument entry(long id, String name) {
+        new GameDocument().setUUID(new UUID(0, id)).setExe(Paths.get("game${id}.exe")).setName(name)
+    }
+
+    static CatalogPatch roundTrip(CatalogPatch patch) {
+        def out = new ByteArrayOutputStream()
+        patch.writeTo(out)
+        CatalogPatch.readFrom(new ByteArrayInputStream(out.toByteArray()))
+    }
+
+    static List<String> describe(Collection<? extends Game> games) {
+        games.collect { it.query(EnumSet.allOf(Field)) }
+    }
+
+    def "diff, write, read and apply reproduce the target catalog"() {
+        given:
+        def base = [entry(1, "kept"), entry(2, "old name"), entry(3, "removed")]
+        def target = [
+                entry(1, "kept"),
+                entry(2, "new name").setDesc("added desc").setImageList([Paths.get("a.png")]),
+                entry(4, "added").setLastMod(Instant.parse("2018-04-01T00:00:00Z"))
+        ]
+
+        when:
+        def patch = roundTrip(CatalogPatch.diff(base, target))
+        def applied = patch.apply(base)
+
+        then:
+        describe(applied) == describe(target)
+        patch.removed == [new UUID(0, 3)]
+        patch.added*.UUID == [new UUID(0, 4)]
+        patch.changedFields == [(new UUID(0, 2)): EnumSet.of(Field.NAME, Field.DESC, Field.IMAGE_LIST)]
+    }
+
+    def "fields missing from the target are unset"() {
+        given:
+        def base = [entry(1, "name").setDesc("desc").setPanel(Paths.get("panel.png"))]
+        def target = [entry(1, "name")]
+
+        when:
+        def applied = roundTrip(CatalogPatch.diff(base, target)).apply(base)
+
+        then:
+        applied[0].desc == null
+        applied[0].panel == null
+    }
+
+    def "identical catalogs produce an empty patch"() {
+        given:
+        def games = [entry(1, "a"), entry(2, "b")]
+
+        expect:
+        CatalogPatch.diff(games, games.collect { it.snapshot() }).isEmpty()
+    }
+
+    def "applying an update to a game that does not exist is rejected"() {
+        given:
+        def patch = CatalogPatch.diff([entry(1, "before")], [entry(1, "after")])
+
+        when:
+        patch.apply([entry(2, "other")])
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    def "a patch that changes UUID is rejected"() {
+        given:
+        def json = '{"version":1,"added":[],"removed":[],"changed":[' +
+                '{"UUID":"00000000-0000-0000-0000-000000000001","set":{"UUID":"00000000-0000-0000-0000-000000000002"},"unset":[]}]}'
+
+        when:
+        CatalogPatch.readFrom(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)))
+
+        then:
+        thrown(IOException)
+    }
+
+    def "a patch that adds a malformed game is rejected"() {
+        given:
+        def json = '{"version":1,"removed":[],"changed":[],"added":[' +
+                '{"UUID":"00000000-0000-0000-0000-000000000001","exe":"a.exe","gameID":"not a number"}]}'
+
+        when:
+        CatalogPatch.readFrom(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)))
+
+        then:
+        thrown(IOException)
+    }
+
+    def "a patch is applied to a holder as one update"() {
+        given:
+        def holder = new CatalogHolder([entry(1, "before"), entry(2, "removed")])
+        def patch = CatalogPatch.diff(holder.get(), new GameCatalog([entry(1, "after"), entry(3, "added")]))
+
+        when:
+        def catalog = patch.apply(holder)
+
+        then:
+        holder.get().is(catalog)
+        holder.version == 1
+        catalog.gameList*.name as Set == ["after", "added"] as Set
+        catalog.getByUUID(new UUID(0, 2)) == null
+    }
+}
@@ -0,0 +1,222 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info
+
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+
+/**
+ * {@link CatalogWatcher}が変更をまとめて反映し,JSONファイルとシグネチャファイルのどちらが提供するゲームかを区別することを確かめる.
+ */
+class CatalogWatcherSpec extends Specification {
+    static final long TIMEOUT_MILLIS = 10000
+
+    Path directory
+    Path dbFile
+    Path gamesRoot
+    CatalogHolder holder
+    CatalogWatcher watcher
+
+    def setup() {
+        directory = Files.createTempDirectory("CatalogWatcherSpec")
+        dbFile = Files.createDirectory(directory.resolve("db")).resolve("games.json")
+        gamesRoot = Files.createDirectory(directory.resolve("games"))
+        holder = new CatalogHolder()
+    }
+
+    def cleanup() {
+        watcher?.close()
+        directory.toFile().deleteDir()
+    }
+
+    static GameDocument game(long uuid, int gameID, String name) {
+        new GameDocument().setUUID(new UUID(0, uuid)).setGameID(gameID).setName(name).setExe(Paths.get("game.exe"))
+    }
+
+    void writeDatabase(GameDocument... documents) {
+        def writer = new JSONDBWriter()
+        documents.each { writer.add(it) }
+        writer.flushAtomically(dbFile)
+    }
+
+    Path writeSignature(String gameDirectory, GameDocument document) {
+        def file = Files.createDirectories(gamesRoot.resolve(gameDirectory)).resolve(SignatureScanner.DEFAULT_FILE_NAME)
+        assert Signature.writeSignatureAtomically(file, document)
+        file
+    }
+
+    void startWatcher(long debounceMillis, long maxDebounceMillis) {
+        watcher = new CatalogWatcher(holder, dbFile, gamesRoot, SignatureScanner.DEFAULT_FILE_NAME, debounceMillis, maxDebounceMillis)
+        watcher.start()
+    }
+
+    List<String> names() {
+        holder.get().gameList*.name.sort()
+    }
+
+    boolean waitUntil(Closure<Boolean> condition) {
+        def deadline = System.currentTimeMillis() + TIMEOUT_MILLIS
+        while (!condition()) {
+            assert System.currentTimeMillis() < deadline : "timed out"
+            Thread.sleep(20)
+        }
+        true
+    }
+
+    def "start loads both the database and the signature files"() {
+        given:
+        writeDatabase(game(1, 1, "db"))
+        writeSignature("a", game(2, 2, "signature"))
+
+        when:
+        startWatcher(50, 2000)
+
+        then:
+        names() == ["db", "signature"]
+    }
+
+    def "changes within the debounce time are applied at once"() {
+        given:
+        writeDatabase(game(1, 1, "v0"))
+        startWatcher(500, 5000)
+        def version = holder.version
+
+        when:
+        (1..5).each { writeDatabase(game(1, 1, "v" + it)); Thread.sleep(30) }
+        waitUntil { names() == ["v5"] }
+        Thread.sleep(700)
+
+        then:
+        holder.version == version + 1
+    }
+
+    def "continuous changes are applied after maxDebounceMillis"() {
+        given:
+        writeDatabase(game(1, 1, "v0"))
+        startWatcher(300, 600)
+        def applied = false
+
+        when: "変更がdebounceMillisより短い間隔で続く"
+        def start = System.currentTimeMillis()
+        int n = 0
+        while (System.currentTimeMillis() - start < 3000 && !applied) {
+            writeDatabase(game(1, 1, "v" + (++n)))
+            Thread.sleep(50)
+            applied = names() != ["v0"]
+        }
+
+        then:
+        applied
+    }
+
+    def "listeners are notified of additions, updates and removals"() {
+        given:
+        writeDatabase(game(1, 1, "kept"), game(2, 2, "before"), game(3, 3, "removed"))
+        startWatcher(50, 2000)
+        def events = Collections.synchronizedList([])
+        watcher.addListener(new CatalogListener() {
+            void onAdded(Game game) { events << "added " + game.name }
+            void onUpdated(Game before, Game after) { events << "updated " + before.name + " -> " + after.name }
+            void onRemoved(Game game) { events << "removed " + game.name }
+        })
+
+        when:
+        writeDatabase(game(1, 1, "kept"), game(2, 2, "after"), game(4, 4, "added"))
+        waitUntil { events.size() == 3 }
+
+        then:
+        events.sort() == ["added added", "removed removed", "updated before -> after"]
+    }
+
+    def "a game dropped from the database stays while a signature file provides it"() {
+        given:
+        writeDatabase(game(1, 1, "shared"), game(2, 2, "db only"))
+        def signature = writeSignature("a", game(1, 1, "shared"))
+        startWatcher(50, 2000)
+
+        when:
+        writeDatabase()
+        waitUntil { names() == ["shared"] }
+        Thread.sleep(300)
+
+        then:
+        names() == ["shared"]
+
+        when:
+        Files.delete(signature)
+
+        then:
+        waitUntil { names().isEmpty() }
+    }
+
+    def "a game whose signature file is deleted stays while the database lists it"() {
+        given:
+        writeDatabase(game(1, 1, "shared"))
+        def signature = writeSignature("a", game(1, 1, "shared"))
+        writeSignature("b", game(2, 2, "signature only"))
+        startWatcher(50, 2000)
+
+        when:
+        Files.delete(signature)
+        Files.delete(gamesRoot.resolve("b").resolve(SignatureScanner.DEFAULT_FILE_NAME))
+        waitUntil { names() == ["shared"] }
+        Thread.sleep(300)
+
+        then:
+        names() == ["shared"]
+
+        when:
+        writeDatabase()
+
+        then:
+        waitUntil { names().isEmpty() }
+    }
+
+    def "a rejected change is retried from the last applied state"() {
+        given:
+        writeDatabase(game(1, 1, "a"), game(2, 2, "b"))
+        startWatcher(50, 2000)
+
+        when: "gameIDが重複するため反映に失敗する"
+        writeDatabase(game(1, 1, "a"), game(3, 1, "conflict"))
+        Thread.sleep(500)
+
+        then:
+        names() == ["a", "b"]
+
+        when:
+        writeDatabase(game(1, 1, "a"))
+
+        then:
+        waitUntil { names() == ["a"] }
+    }
+
+    def "invalid arguments are rejected"() {
+        when:
+        new CatalogWatcher(holder, db ? dbFile : null, games ? gamesRoot : null, SignatureScanner.DEFAULT_FILE_NAME, debounce, maxDebounce)
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        db    | games | debounce | maxDebounce
+        false | false | 50       | 100
+        true  | true  | 100      | 50
+    }
+}
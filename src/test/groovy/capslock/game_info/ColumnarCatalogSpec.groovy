@@ -0,0 +1,149 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info
+
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Paths
+import java.time.Instant
+
+/**
+ * {@link ColumnarCatalog}が格納したゲーム情報を元のとおりに返し,{@link GameCatalog}と同じ検索結果になることを確かめる.
+ */
+class ColumnarCatalogSpec extends Specification {
+    static final Instant BASE = Instant.parse("2018-04-01T00:00:00Z")
+
+    /**
+     * 最終更新日時を{@link #BASE}からの秒数で指定したゲーム.{@code seconds}が{@code null}のときは設定しない.
+     */
+    static GameDocument updatedAt(long id, Long seconds) {
+        def document = new GameDocument().setUUID(new UUID(id, id)).setExe(Paths.get("game${id}.exe")).setGameID((int) id)
+        if (seconds != null) document.setLastMod(BASE.plusSeconds(seconds).plusNanos(id))
+        document
+    }
+
+    static List<GameDocument> games() {
+        [
+                updatedAt(1, 30).setName("ゲーム🎮").setDesc("説明\n" * 100).setPanel(Paths.get("p/panel.png"))
+                        .setImageList([Paths.get("p/1.png"), Paths.get("p/2.png")]).setMovieList([Paths.get("p/1.mp4")]),
+                updatedAt(2, 10),
+                updatedAt(3, null),
+                updatedAt(4, 20),
+        ]
+    }
+
+    def "every field is returned as stored"() {
+        given:
+        def source = games()
+        def catalog = new ColumnarCatalog(source)
+
+        expect:
+        catalog.size() == source.size()
+        (0..<source.size()).every { GameSnapshot.of(source[it]).differingFields(catalog.get(it)).isEmpty() }
+        catalog.asList()*.exe == source*.exe
+        catalog.get(0).name == "ゲーム🎮"
+        catalog.get(1).imageList.isEmpty()
+        catalog.get(2).lastMod == null
+        catalog.arenaBytes > 0
+    }
+
+    def "lookups by UUID and gameID find the stored rows"() {
+        given:
+        def catalog = new ColumnarCatalog(games())
+
+        expect:
+        catalog.indexOf(new UUID(3, 3)) == 2
+        catalog.getByUUID(new UUID(4, 4)).gameID == 4
+        catalog.getByGameID(2).UUID == new UUID(2, 2)
+        catalog.indexOf(new UUID(9, 9)) == -1
+        catalog.indexOf(null) == -1
+        catalog.getByUUID(new UUID(9, 9)) == null
+        catalog.getByGameID(0) == null
+        catalog.getByGameID(9) == null
+    }
+
+    def "searches by modification time agree with GameCatalog"() {
+        given:
+        def source = games()
+        def columnar = new ColumnarCatalog(source)
+        def reference = new GameCatalog(source)
+
+        expect:
+        columnar.getUpdatedBetween(from, to)*.UUID == reference.getUpdatedBetween(from, to)*.UUID
+        columnar.getUpdatedSince(from)*.UUID == reference.getUpdatedSince(from)*.UUID
+
+        where:
+        from                  | to
+        BASE                  | BASE.plusSeconds(60)
+        BASE.plusSeconds(15)  | BASE.plusSeconds(60)
+        BASE.plusSeconds(10)  | BASE.plusSeconds(20)
+        BASE.plusSeconds(60)  | BASE.plusSeconds(90)
+    }
+
+    def "duplicated keys are rejected"() {
+        when:
+        new ColumnarCatalog([updatedAt(1, null), duplicate])
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        duplicate << [
+                updatedAt(2, null).setUUID(new UUID(1, 1)),
+                updatedAt(2, null).setGameID(1),
+        ]
+    }
+
+    def "the list view cannot be modified and rows are checked"() {
+        given:
+        def catalog = new ColumnarCatalog(games())
+
+        when:
+        catalog.asList().add(games()[0])
+
+        then:
+        thrown(UnsupportedOperationException)
+
+        when:
+        catalog.get(catalog.size())
+
+        then:
+        thrown(IndexOutOfBoundsException)
+    }
+
+    def "load reads the same catalog from a plain or compressed file"() {
+        given:
+        def file = Files.createTempFile("ColumnarCatalogSpec", ".json")
+        def writer = new JSONDBWriter()
+        def source = games()
+        source.each { writer.add(it) }
+        writer.flush(file, compression)
+
+        when:
+        def catalog = ColumnarCatalog.load(file)
+
+        then:
+        catalog.size() == source.size()
+        (0..<source.size()).every { GameSnapshot.of(source[it]).differingFields(catalog.get(it)).isEmpty() }
+
+        cleanup:
+        Files.deleteIfExists(file)
+
+        where:
+        compression << [Compression.NONE, Compression.GZIP]
+    }
+}
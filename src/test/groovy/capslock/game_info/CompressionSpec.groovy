@@ -0,0 +1,164 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info
+
+import org.json.JSONException
+import spock.lang.Specification
+
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.util.zip.GZIPOutputStream
+
+/**
+ * {@link Compression}がマジックナンバーでgzip形式を判定し,各読み出し方法が圧縮の有無に関わらず同じ結果を返すことを確かめる.
+ */
+class CompressionSpec extends Specification {
+    Path directory
+
+    def setup() {
+        directory = Files.createTempDirectory("CompressionSpec")
+    }
+
+    def cleanup() {
+        directory.toFile().deleteDir()
+    }
+
+    static byte[] gzip(byte[] content) {
+        def bytes = new ByteArrayOutputStream()
+        def out = new GZIPOutputStream(bytes)
+        out.write(content)
+        out.close()
+        bytes.toByteArray()
+    }
+
+    Path write(String fileName, byte[] content) {
+        Files.write(directory.resolve(fileName), content)
+    }
+
+    static List<GameDocument> catalog() {
+        (1..3).collect { new GameDocument().setUUID(new UUID(0, it)).setExe(Paths.get("game" + it + ".exe")).setName("ゲーム" + it) }
+    }
+
+    def "the format is detected by the magic number"() {
+        given:
+        def file = write("file", content as byte[])
+
+        expect:
+        Compression.detect(file) == expected
+
+        where:
+        content                         || expected
+        gzip("[]".getBytes("UTF-8"))    || Compression.GZIP
+        "[]".getBytes("UTF-8")          || Compression.NONE
+        [0x1f]                          || Compression.NONE
+        []                              || Compression.NONE
+    }
+
+    def "detecting on a channel keeps its position"() {
+        given:
+        def file = write("file", gzip("[]".getBytes("UTF-8")))
+        def channel = FileChannel.open(file)
+        channel.position(5)
+
+        expect:
+        Compression.detect(channel) == Compression.GZIP
+        channel.position() == 5
+
+        cleanup:
+        channel.close()
+    }
+
+    def "decompress passes plain bytes through and expands gzip"() {
+        given:
+        def content = "[1, 2, 3]".getBytes("UTF-8")
+
+        expect:
+        Compression.decompress(new ByteArrayInputStream(content)).bytes == content
+        Compression.decompress(new ByteArrayInputStream(gzip(content))).bytes == content
+    }
+
+    def "a compressed catalog is read the same way as a plain one by every reader"() {
+        given:
+        def plain = directory.resolve("plain.json")
+        def compressed = directory.resolve("compressed.json")
+        def writer = new JSONDBWriter()
+        catalog().each { writer.add(it) }
+        writer.flush(plain)
+        writer.flush(compressed, Compression.GZIP)
+
+        expect:
+        Compression.detect(compressed) == Compression.GZIP
+        read(compressed)*.name == read(plain)*.name
+        read(compressed)*.name == ["ゲーム1", "ゲーム2", "ゲーム3"]
+
+        where:
+        read << [
+                { Path path -> new JSONDBReader(path).documentList },
+                { Path path -> JSONDBReader.mapped(path).documentList },
+                { Path path -> JSONDBReader.lazy(path) },
+        ]
+    }
+
+    def "a compressed signature file is read transparently"() {
+        given:
+        def file = directory.resolve("signature.json")
+        Signature.writeSignatureAtomically(file, catalog()[0], Compression.GZIP)
+
+        expect:
+        Compression.detect(file) == Compression.GZIP
+        Signature.readSignature(file).name == "ゲーム1"
+    }
+
+    def "a broken gzip header is an IOException"() {
+        given:
+        def file = write("broken.json", [0x1f, 0x8b, 0x00, 0x00] as byte[])
+
+        when:
+        new JSONDBReader(file)
+
+        then:
+        thrown(IOException)
+    }
+
+    def "a truncated gzip file fails like a truncated plain file"() {
+        given:
+        def valid = gzip('[{"UUID": "00000000-0000-0000-0000-000000000001", "exe": "a.exe"}]'.getBytes("UTF-8"))
+        def file = write("truncated.json", Arrays.copyOf(valid, 12))
+
+        when:
+        new JSONDBReader(file)
+
+        then:
+        thrown(JSONException)
+    }
+
+    def "malformed UTF-8 is an IOException rather than replaced"() {
+        given:
+        def file = write("signature.json", gzip([0x7b, 0xff, 0x7d] as byte[]))
+
+        when:
+        def reader = Compression.newReader(file)
+        reader.readLine()
+
+        then:
+        thrown(IOException)
+
+        cleanup:
+        reader?.close()
+    }
+}
@@ -0,0 +1,109 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info
+
+import org.json.JSONArray
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.file.Paths
+
+/**
+ * {@link FieldProjection}のクエリの解釈とキャッシュを確かめる.
+ */
+class FieldProjectionSpec extends Specification {
+    static String query(int i) {
+        '{"name":true,"unused' + i + '":true}'
+    }
+
+    @Unroll
+    def "#jsonQuery selects #fields"() {
+        expect:
+        FieldProjection.compile(jsonQuery).fields == fields
+
+        where:
+        jsonQuery                                 || fields
+        '{}'                                      || EnumSet.of(Field.UUID)
+        '{"name":true,"desc":false}'              || EnumSet.of(Field.UUID, Field.NAME)
+        '{"UUID":false,"name":true}'              || EnumSet.of(Field.NAME)
+        '{"UUID":false}'                          || EnumSet.noneOf(Field)
+        '{"exe":true,"imageList":true,"x":true}'  || EnumSet.of(Field.UUID, Field.EXE, Field.IMAGE_LIST)
+    }
+
+    def "the same query string returns the cached projection"() {
+        expect:
+        FieldProjection.compile('{"name":true}').is(FieldProjection.compile('{"name":true}'))
+    }
+
+    def "the least recently used query is evicted when the cache is full"() {
+        given:
+        def projections = (0..<FieldProjection.CACHE_CAPACITY).collect { FieldProjection.compile(query(it)) }
+
+        when: "最も古いクエリを使ってから,新しいクエリを1件追加する"
+        FieldProjection.compile(query(0))
+        FieldProjection.compile(query(FieldProjection.CACHE_CAPACITY))
+
+        then:
+        FieldProjection.compile(query(0)).is(projections[0])
+        !FieldProjection.compile(query(1)).is(projections[1])
+    }
+
+    @Unroll
+    def "invalid query #jsonQuery is rejected every time"() {
+        when:
+        FieldProjection.compile(jsonQuery)
+
+        then:
+        thrown(IllegalArgumentException)
+
+        when:
+        FieldProjection.compile(jsonQuery)
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        jsonQuery << ['not json', '{"name":"yes"}', '[true]']
+    }
+
+    def "projections write the same JSON as Game#query"() {
+        given:
+        def games = (1..3).collect { i ->
+            new GameDocument().setUUID(new UUID(0, i)).setExe(Paths.get("${i}.exe")).setName("ゲーム${i}").setGameID(i)
+        }
+        def projection = FieldProjection.compile('{"name":true,"gameID":true}')
+
+        expect:
+        games.every { projection.project(it) == it.query(EnumSet.of(Field.UUID, Field.NAME, Field.GAME_ID)) }
+        games.every { projection.project(it) == it.query('{"name":true,"gameID":true}') }
+        new JSONArray(projection.projectAll(games)).length() == 3
+        projection.projectAll(games) == '[' + games.collect { projection.project(it) }.join(',') + ']'
+        projection.projectAll([]) == '[]'
+    }
+
+    def "the field set of a projection cannot be changed from outside"() {
+        given:
+        def fields = EnumSet.of(Field.NAME)
+        def projection = FieldProjection.of(fields)
+
+        when:
+        fields.add(Field.DESC)
+        projection.fields.add(Field.EXE)
+
+        then:
+        projection.fields == EnumSet.of(Field.NAME)
+    }
+}
@@ -0,0 +1,86 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info
+
+import spock.lang.Specification
+
+import java.time.Instant
+
+/**
+ * {@link GameCatalog}の索引による検索を確かめる.
+ */
+class GameCatalogSpec extends Specification {
+    static GameDocument updatedAt(long uuid, int gameID, String lastMod) {
+        new GameDocument()
+                .setUUID(new UUID(0, uuid))
+                .setGameID(gameID)
+                .setLastMod(lastMod != null ? Instant.parse(lastMod) : null)
+    }
+
+    def "games are found by UUID and gameID"() {
+        given:
+        def catalog = new GameCatalog([updatedAt(1, 10, null), updatedAt(2, 20, null), updatedAt(3, 0, null)])
+
+        expect:
+        catalog.size() == 3
+        catalog.getByUUID(new UUID(0, 2)).gameID == 20
+        catalog.getByGameID(10).UUID == new UUID(0, 1)
+        catalog.getByUUID(new UUID(0, 9)) == null
+        catalog.getByGameID(0) == null
+        catalog.gameList*.UUID == [new UUID(0, 1), new UUID(0, 2), new UUID(0, 3)]
+    }
+
+    def "the game list cannot be modified"() {
+        given:
+        def catalog = new GameCatalog([updatedAt(1, 1, null)])
+
+        when:
+        catalog.gameList.add(updatedAt(2, 2, null))
+
+        then:
+        thrown(UnsupportedOperationException)
+    }
+
+    def "duplicated UUIDs and gameIDs are rejected"() {
+        when:
+        new GameCatalog(games)
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        games << [
+                [updatedAt(1, 1, null), updatedAt(1, 2, null)],
+                [updatedAt(1, 5, null), updatedAt(2, 5, null)]
+        ]
+    }
+
+    def "games are looked up by lastMod ranges"() {
+        given:
+        def catalog = new GameCatalog([
+                updatedAt(1, 1, "2018-01-01T00:00:00Z"),
+                updatedAt(2, 2, "2018-03-01T00:00:00Z"),
+                updatedAt(3, 3, "2018-03-01T00:00:00Z"),
+                updatedAt(4, 4, "2018-05-01T00:00:00Z"),
+                updatedAt(5, 5, null)
+        ])
+
+        expect:
+        catalog.getUpdatedBetween(Instant.parse("2018-01-01T00:00:00Z"), Instant.parse("2018-05-01T00:00:00Z"))*.gameID == [1, 2, 3]
+        catalog.getUpdatedSince(Instant.parse("2018-03-01T00:00:00Z"))*.gameID == [4, 2, 3]
+        catalog.getUpdatedSince(Instant.parse("2019-01-01T00:00:00Z")).isEmpty()
+    }
+}
@@ -0,0 +1,128 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info
+
+import org.json.JSONObject
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.BufferOverflowException
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
+import java.nio.file.Paths
+import java.time.Instant
+
+/**
+ * {@link Game#query(EnumSet)}が書き出す文字列が正しいJSONであり,書き出し先によらず同じ内容になることを確かめる.
+ */
+class GameQuerySpec extends Specification {
+    static final EnumSet<Field> ALL = EnumSet.allOf(Field)
+
+    static GameDocument named(String text) {
+        new GameDocument()
+                .setUUID(UUID.fromString("0123abcd-4567-89ef-0123-456789abcdef"))
+                .setExe(Paths.get("game.exe"))
+                .setName(text)
+                .setDesc(text)
+                .setLastMod(Instant.parse("2018-04-01T12:34:56.789Z"))
+                .setImageList([Paths.get("a.png"), Paths.get("b.png")])
+                .setGameID(42)
+    }
+
+    @Unroll
+    def "the query of #description parses back to the same values"() {
+        when:
+        def json = new JSONObject(named(text).query(ALL))
+
+        then:
+        json.getString("name") == text
+        json.getString("desc") == text
+        json.getString("UUID") == "0123abcd-4567-89ef-0123-456789abcdef"
+        json.getString("lastMod") == "2018-04-01T12:34:56.789Z"
+        json.getJSONArray("imageList").toList() == ["a.png", "b.png"]
+        json.getInt("gameID") == 42
+
+        where:
+        description          | text
+        "plain text"         | "ゲーム"
+        "quotes"             | 'say "hi"'
+        "backslashes"        | 'C:\\games\\a.exe'
+        "control characters" | "tab\tnewline\nnul\u0000bell\u0007"
+        "line separators"    | "a\u2028b\u2029c"
+        "emoji"              | "😀🎮"
+    }
+
+    def "only the requested fields that have values are written"() {
+        given:
+        def game = new GameDocument().setUUID(new UUID(0, 1)).setName("name")
+
+        expect:
+        new JSONObject(game.query(EnumSet.of(Field.NAME, Field.DESC, Field.GAME_ID))).toMap() == [name: "name"]
+        game.query(EnumSet.noneOf(Field)) == "{}"
+    }
+
+    def "the Appendable and ByteBuffer outputs match the String output"() {
+        given:
+        def game = named('混在 "text" \\ 😀')
+        def expected = game.query(ALL)
+        def builder = new StringBuilder("prefix:")
+        def buffer = ByteBuffer.allocate(1024)
+
+        when:
+        game.query(ALL, builder)
+        game.query(ALL, buffer)
+        buffer.flip()
+
+        then:
+        builder.toString() == "prefix:" + expected
+        StandardCharsets.UTF_8.decode(buffer).toString() == expected
+    }
+
+    def "a buffer without enough space is left untouched"() {
+        given:
+        def game = named("ゲーム")
+        def buffer = ByteBuffer.allocate(16)
+        buffer.put((byte) 1)
+
+        when:
+        game.query(ALL, buffer)
+
+        then:
+        thrown(BufferOverflowException)
+        buffer.position() == 1
+    }
+
+    def "an unpaired surrogate is encoded as the replacement character"() {
+        given:
+        def buffer = ByteBuffer.allocate(256)
+
+        when:
+        new GameDocument().setName("a\ud800b").query(EnumSet.of(Field.NAME), buffer)
+        buffer.flip()
+
+        then:
+        new JSONObject(StandardCharsets.UTF_8.decode(buffer).toString()).getString("name") == "a\ufffdb"
+    }
+
+    @Unroll
+    def "gameID #value is written as a number"() {
+        expect:
+        new JSONObject(new GameDocument().setGameID(value).query(EnumSet.of(Field.GAME_ID))).getInt("gameID") == value
+
+        where:
+        value << [1, 9, 10, 123456789, Integer.MAX_VALUE]
+    }
+}
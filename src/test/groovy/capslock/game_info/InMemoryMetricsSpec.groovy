@@ -0,0 +1,132 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info
+
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+
+/**
+ * {@link InMemoryMetrics}のヒストグラムと,{@link CatalogMetrics#setGlobal(CatalogMetrics)}で設定した計測値への通知を確かめる.
+ */
+class InMemoryMetricsSpec extends Specification {
+    InMemoryMetrics metrics = new InMemoryMetrics()
+    Path file
+
+    def setup() {
+        file = Files.createTempFile("InMemoryMetricsSpec", ".json")
+    }
+
+    def cleanup() {
+        CatalogMetrics.setGlobal(CatalogMetrics.NOOP)
+        Files.deleteIfExists(file)
+    }
+
+    def "the histogram approximates percentiles by the upper end of each bucket"() {
+        given:
+        def histogram = metrics.queryLatency
+        (1..99).each { histogram.record(100) }
+        histogram.record(5000)
+
+        expect:
+        histogram.count == 100
+        histogram.totalNanos == 99 * 100 + 5000
+        histogram.maxNanos == 5000
+        histogram.meanNanos == 149.0d
+        histogram.getPercentileNanos(50) == 127
+        histogram.getPercentileNanos(99) == 127
+        histogram.getPercentileNanos(100) == 5000
+    }
+
+    def "an empty histogram reports zero"() {
+        expect:
+        metrics.queryLatency.getPercentileNanos(50) == 0
+        metrics.queryLatency.meanNanos == 0
+    }
+
+    def "a percentile out of range is rejected"() {
+        when:
+        metrics.queryLatency.getPercentileNanos(percentile)
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        percentile << [0, -1, 100.5, Double.NaN]
+    }
+
+    def "reading and writing are reported to the global metrics"() {
+        given:
+        CatalogMetrics.setGlobal(metrics)
+        def writer = new JSONDBWriter()
+        (1..3).each { writer.add(new GameDocument().setUUID(new UUID(0, it)).setExe(Paths.get("game.exe"))) }
+
+        when:
+        writer.flush(file)
+        new JSONDBReader(file)
+
+        then:
+        metrics.documentsWritten == 3
+        metrics.documentsRead == 3
+        metrics.bytesWritten == Files.size(file)
+        metrics.bytesRead == Files.size(file)
+        metrics.getPhase(CatalogMetrics.Phase.WRITE).count == 1
+        metrics.getPhase(CatalogMetrics.Phase.PARSE).count == 1
+    }
+
+    def "invalid fields are counted per field"() {
+        given:
+        CatalogMetrics.setGlobal(metrics)
+        Files.write(file, '[{"UUID": "00000000-0000-0000-0000-000000000001", "exe": "a.exe", "gameID": "x"}]'.getBytes("UTF-8"))
+
+        when:
+        new JSONDBReader(file, ValidationReport.lenient())
+
+        then:
+        metrics.getValidationFailures(Field.GAME_ID) == 1
+        metrics.getValidationFailures(Field.EXE) == 0
+    }
+
+    def "reset clears every value"() {
+        given:
+        metrics.recordPhase(CatalogMetrics.Phase.READ, 10)
+        metrics.recordQuery(10)
+        metrics.recordDocumentsRead(1)
+        metrics.recordBytesWritten(1)
+        metrics.recordValidationFailure(Field.NAME)
+
+        when:
+        metrics.reset()
+
+        then:
+        metrics.getPhase(CatalogMetrics.Phase.READ).count == 0
+        metrics.queryLatency.maxNanos == 0
+        metrics.documentsRead == 0
+        metrics.bytesWritten == 0
+        metrics.getValidationFailures(Field.NAME) == 0
+    }
+
+    def "the global metrics cannot be null"() {
+        when:
+        CatalogMetrics.setGlobal(null)
+
+        then:
+        thrown(NullPointerException)
+        CatalogMetrics.global().is(CatalogMetrics.NOOP)
+    }
+}
@@ -0,0 +1,91 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info
+
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Paths
+
+/**
+ * {@link Interner}が重複するパスを1つのインスタンスにまとめ,保持する数と長さを制限することを確かめる.
+ */
+class InternerSpec extends Specification {
+    def "the same text gives the same instance"() {
+        given:
+        def interner = new Interner()
+
+        expect:
+        interner.path("game.exe").is(interner.path("game.exe"))
+        interner.path("game.exe") == Paths.get("game.exe")
+    }
+
+    def "long paths are converted but not kept"() {
+        given:
+        def interner = new Interner()
+        def text = "a" * (Interner.MAX_LENGTH + 1)
+
+        when:
+        def first = interner.path(text)
+        def second = interner.path(text)
+
+        then:
+        first == second
+        !first.is(second)
+    }
+
+    def "reaching the capacity discards the kept paths"() {
+        given:
+        def interner = new Interner()
+        def first = interner.path("first.png")
+
+        when:
+        (1..<Interner.CAPACITY).each { interner.path("image" + it + ".png") }
+
+        then: "上限までは保持される"
+        interner.path("first.png").is(first)
+
+        when:
+        interner.path("overflow.png")
+
+        then:
+        !interner.path("first.png").is(first)
+    }
+
+    def "text that is not a path gives null"() {
+        expect:
+        new Interner().path("a\u0000b") == null
+        Interner.path("a\u0000b", null) == null
+        Interner.path("game.exe", null) == Paths.get("game.exe")
+    }
+
+    def "documents read from one file share their paths"() {
+        given:
+        def file = Files.createTempFile("InternerSpec", ".json")
+        Files.write(file, ('[{"UUID": "00000000-0000-0000-0000-000000000001", "exe": "game.exe", "panel": "panel.png"},'
+                + '{"UUID": "00000000-0000-0000-0000-000000000002", "exe": "game.exe", "panel": "panel.png"}]').getBytes("UTF-8"))
+
+        when:
+        def documents = new JSONDBReader(file).documentList
+
+        then:
+        documents[0].exe.is(documents[1].exe)
+        documents[0].panel.is(documents[1].panel)
+
+        cleanup:
+        Files.deleteIfExists(file)
+    }
+}
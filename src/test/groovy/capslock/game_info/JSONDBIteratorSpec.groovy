@@ -0,0 +1,96 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info
+
+import org.json.JSONException
+import spock.lang.Specification
+
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+
+/**
+ * {@link JSONDBIterator}が配列の要素を1件ずつ読み進めることを確かめる.
+ */
+class JSONDBIteratorSpec extends Specification {
+    static String element(int id) {
+        '{"UUID":"00000000-0000-0000-0000-00000000000' + id + '","exe":"game' + id + '.exe","name":"ゲーム' + id + '"}'
+    }
+
+    static JSONDBIterator iterate(String json) {
+        new JSONDBIterator(new StringReader(json), ValidationReport.lenient())
+    }
+
+    def "documents are returned in file order and non-object elements are skipped"() {
+        when:
+        def iterator = iterate('[' + element(1) + ', 42, "text", ' + element(2) + ']')
+        def names = []
+        while (iterator.hasNext()) names << iterator.next().name
+
+        then:
+        names == ["ゲーム1", "ゲーム2"]
+
+        when:
+        iterator.next()
+
+        then:
+        thrown(NoSuchElementException)
+    }
+
+    def "an empty array has no documents"() {
+        expect:
+        !iterate(' [ ] ').hasNext()
+    }
+
+    def "elements before a truncation are returned before the error is raised"() {
+        given:
+        def iterator = iterate('[' + element(1) + ',' + element(2).substring(0, 20))
+
+        expect:
+        iterator.next().name == "ゲーム1"
+
+        when:
+        iterator.hasNext()
+
+        then:
+        thrown(JSONException)
+    }
+
+    def "a file that is not an array is rejected"() {
+        when:
+        iterate('{"games":[]}')
+
+        then:
+        thrown(JSONException)
+    }
+
+    def "the stream and the reader read the same documents"() {
+        given:
+        def file = Files.createTempFile("games", ".json")
+        Files.write(file, ('[' + element(1) + ',' + element(2) + ',' + element(3) + ']').getBytes(StandardCharsets.UTF_8))
+
+        when:
+        def stream = JSONDBReader.stream(file)
+        def streamed = stream.iterator().collect { it.UUID }
+
+        then:
+        streamed == new JSONDBReader(file).getDocumentList()*.UUID
+        streamed.size() == 3
+
+        cleanup:
+        stream?.close()
+        Files.deleteIfExists(file)
+    }
+}
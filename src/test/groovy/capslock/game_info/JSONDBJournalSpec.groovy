@@ -0,0 +1,195 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info
+
+import spock.lang.Specification
+
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.nio.file.StandardOpenOption
+import java.util.concurrent.CompletionException
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+import java.util.concurrent.RejectedExecutionException
+
+/**
+ * {@link JSONDBJournal}の変更ログの再適用,途切れた行の回復,コンパクションを確かめる.
+ */
+class JSONDBJournalSpec extends Specification {
+    static final Executor SYNCHRONOUS = { Runnable task -> task.run() } as Executor
+
+    Path directory
+    Path dbPath
+    Path journalPath
+
+    def setup() {
+        directory = Files.createTempDirectory("journal")
+        dbPath = directory.resolve("games.json")
+        journalPath = directory.resolve("games.json.journal")
+    }
+
+    def cleanup() {
+        directory.toFile().deleteDir()
+    }
+
+    static GameDocument named(long id, String name) {
+        new GameDocument().setUUID(new UUID(0, id)).setExe(Paths.get("${name}.exe")).setName(name)
+    }
+
+    void appendLines(Path path, String... lines) {
+        Files.write(path, lines.collect { it + '\n' }.join('').getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)
+    }
+
+    def "upsert and delete are replayed on top of the JSON file"() {
+        given:
+        new JSONDBWriter().add(named(1, "first")).add(named(2, "second")).flush(dbPath)
+        def journal = new JSONDBJournal(dbPath, 100, SYNCHRONOUS)
+
+        when:
+        journal.upsert(named(2, "renamed"))
+        journal.upsert(named(3, "third"))
+        journal.delete(new UUID(0, 1))
+        def documents = journal.load()
+
+        then:
+        documents*.name == ["renamed", "third"]
+        documents*.UUID == [new UUID(0, 2), new UUID(0, 3)]
+
+        cleanup:
+        journal?.close()
+    }
+
+    def "changes survive reopening the journal"() {
+        given:
+        def journal = new JSONDBJournal(dbPath, 100, SYNCHRONOUS)
+        journal.upsert(named(1, "first"))
+        journal.close()
+
+        when:
+        journal = new JSONDBJournal(dbPath, 100, SYNCHRONOUS)
+
+        then:
+        journal.load()*.name == ["first"]
+
+        cleanup:
+        journal?.close()
+    }
+
+    def "a torn entry at the end is discarded and does not swallow the next entry"() {
+        given:
+        def journal = new JSONDBJournal(dbPath, 100, SYNCHRONOUS)
+        journal.upsert(named(1, "first"))
+        journal.close()
+        Files.write(journalPath, '{"op":"upsert","docu'.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND)
+
+        when:
+        journal = new JSONDBJournal(dbPath, 100, SYNCHRONOUS)
+        journal.upsert(named(2, "second"))
+
+        then:
+        journal.load()*.name == ["first", "second"]
+        new String(Files.readAllBytes(journalPath), StandardCharsets.UTF_8).readLines().size() == 2
+
+        cleanup:
+        journal?.close()
+    }
+
+    def "compaction merges the journal into the JSON file"() {
+        given:
+        def journal = new JSONDBJournal(dbPath, 2, SYNCHRONOUS)
+
+        when:
+        journal.upsert(named(1, "first"))
+        journal.upsert(named(2, "second"))
+        journal.compact().join()
+
+        then:
+        new JSONDBReader(dbPath).getDocumentList()*.name == ["first", "second"]
+        Files.size(journalPath) == 0
+        !Files.exists(directory.resolve("games.json.compacting"))
+
+        cleanup:
+        journal?.close()
+    }
+
+    def "an entry with an invalid document or UUID is skipped and the rest are replayed"() {
+        given:
+        def journal = new JSONDBJournal(dbPath, 100, SYNCHRONOUS)
+        journal.upsert(named(1, "first"))
+        journal.close()
+        appendLines(journalPath,
+                '{"op":"upsert","document":{"UUID":"not a uuid","exe":"broken.exe","name":"broken"}}',
+                '{"op":"upsert","document":"not an object"}',
+                '{"op":"delete","UUID":"not a uuid"}',
+                '{"op":"delete"}')
+
+        when:
+        journal = new JSONDBJournal(dbPath, 100, SYNCHRONOUS)
+        journal.upsert(named(2, "second"))
+
+        then:
+        journal.load()*.name == ["first", "second"]
+
+        cleanup:
+        journal?.close()
+    }
+
+    def "entries left in the compacting file by an interrupted compaction are merged"() {
+        given: "コンパクション中に停止して退避した変更ログが残っている"
+        appendLines(directory.resolve("games.json.compacting"),
+                '{"op":"upsert","document":{"UUID":"00000000-0000-0000-0000-000000000001","exe":"left.exe","name":"left over"}}')
+        def journal = new JSONDBJournal(dbPath, 100, SYNCHRONOUS)
+        journal.upsert(named(2, "second"))
+
+        when:
+        journal.compact().join()
+
+        then:
+        new JSONDBReader(dbPath).getDocumentList()*.name == ["left over", "second"]
+        Files.size(journalPath) == 0
+        !Files.exists(directory.resolve("games.json.compacting"))
+
+        when: "統合した後も同じ内容を読み出せる"
+        journal.close()
+        journal = new JSONDBJournal(dbPath, 100, SYNCHRONOUS)
+
+        then:
+        journal.load()*.name == ["left over", "second"]
+
+        cleanup:
+        journal?.close()
+    }
+
+    def "compaction fails instead of hanging when the executor rejects it"() {
+        given:
+        def executor = Executors.newSingleThreadExecutor()
+        executor.shutdown()
+        def journal = new JSONDBJournal(dbPath, 100, executor)
+
+        when:
+        journal.compact().join()
+
+        then:
+        def ex = thrown(CompletionException)
+        ex.cause instanceof RejectedExecutionException
+
+        cleanup:
+        journal?.close()
+    }
+}
@@ -0,0 +1,115 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info
+
+import spock.lang.Specification
+
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.util.concurrent.Executor
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * {@link JSONDBReader#parallel}が逐次読み出しと同じ結果を,ファイル内の順序で返すことを確かめる.
+ */
+class JSONDBReaderParallelSpec extends Specification {
+    Path file
+    ExecutorService pool
+
+    def setup() {
+        file = Files.createTempFile("games", ".json")
+        pool = Executors.newFixedThreadPool(4)
+    }
+
+    def cleanup() {
+        pool.shutdownNow()
+        Files.deleteIfExists(file)
+    }
+
+    void writeCatalog(int count) {
+        def writer = new JSONDBWriter()
+        for (int i = 1; i <= count; i++) {
+            writer.add(new GameDocument()
+                    .setUUID(new UUID(0, i))
+                    .setExe(Paths.get("games/${i}/game.exe"))
+                    .setName("ゲーム${i}")
+                    .setDesc(i % 3 == 0 ? "説明\n${i}" : null)
+                    .setImageList([Paths.get("games/${i}/1.png")])
+                    .setGameID(i))
+        }
+        writer.flush(file)
+    }
+
+    def "parallel loading returns the same documents in file order"() {
+        given:
+        writeCatalog(500)
+        def tasks = new AtomicInteger()
+        def executor = { Runnable task -> tasks.incrementAndGet(); pool.execute(task) } as Executor
+
+        when:
+        def sequential = new JSONDBReader(file).getDocumentList()
+        def parallel = JSONDBReader.parallel(file, executor).getDocumentList()
+
+        then:
+        parallel*.UUID == sequential*.UUID
+        [sequential, parallel].transpose().every { pair -> pair[0].differingFields(pair[1]).isEmpty() }
+        tasks.get() > 1
+    }
+
+    def "an empty catalog gives an empty mutable list"() {
+        given:
+        Files.write(file, "[ ]".getBytes(StandardCharsets.UTF_8))
+
+        when:
+        def documents = JSONDBReader.parallel(file, pool).getDocumentList()
+        documents.add(new GameDocument())
+
+        then:
+        documents.size() == 1
+    }
+
+    def "problems are reported with the index of the document"() {
+        given:
+        Files.write(file, ('[' +
+                '{"UUID":"00000000-0000-0000-0000-000000000001","exe":"a.exe","gameID":1},' +
+                '{"UUID":"00000000-0000-0000-0000-000000000002","exe":"b.exe","gameID":"two"}' +
+                ']').getBytes(StandardCharsets.UTF_8))
+        def report = ValidationReport.lenient()
+
+        when:
+        def documents = JSONDBReader.parallel(file, pool, report).getDocumentList()
+
+        then:
+        documents.size() == 2
+        report.problems*.documentIndex == [1]
+        report.problems*.field == [Field.GAME_ID]
+    }
+
+    def "a fail-fast report stops loading with the original exception"() {
+        given:
+        Files.write(file, '[{"UUID":"not a uuid","exe":"a.exe"}]'.getBytes(StandardCharsets.UTF_8))
+
+        when:
+        JSONDBReader.parallel(file, pool, ValidationReport.failFast())
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+}
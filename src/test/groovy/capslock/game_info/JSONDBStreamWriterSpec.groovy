@@ -0,0 +1,130 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info
+
+import org.json.JSONArray
+import spock.lang.Specification
+
+import java.nio.channels.Channels
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.time.Instant
+
+/**
+ * {@link JSONDBStreamWriter}が{@link JSONDBWriter}と同じ内容のJSONを書き出すことを確かめる.
+ */
+class JSONDBStreamWriterSpec extends Specification {
+    Path directory
+
+    def setup() {
+        directory = Files.createTempDirectory("JSONDBStreamWriterSpec")
+    }
+
+    def cleanup() {
+        directory.toFile().deleteDir()
+    }
+
+    /**
+     * エスケープが必要な文字とバッファより長い説明を含むゲーム情報.
+     */
+    static List<GameDocument> games() {
+        [
+                new GameDocument().setUUID(new UUID(0, 1)).setExe(Paths.get("a/game.exe")).setName("ゲーム \"1\" \\ /")
+                        .setDesc("tab\tnewline\n\u0001 絵文字🎮").setLastMod(Instant.parse("2018-04-01T12:00:00Z"))
+                        .setPanel(Paths.get("a/panel.png")).setImageList([Paths.get("a/1.png"), Paths.get("a/2.png")])
+                        .setMovieList([Paths.get("a/1.mp4")]).setGameID(1),
+                new GameDocument().setUUID(new UUID(0, 2)).setExe(Paths.get("b.exe")).setDesc("長い説明" * 40000),
+                new GameDocument().setUUID(new UUID(0, 3)).setExe(Paths.get("c.exe"))
+        ]
+    }
+
+    String writtenByJSONDBWriter(List<? extends Game> documents) {
+        def file = directory.resolve("expected.json")
+        def writer = new JSONDBWriter()
+        documents.each { writer.add(it) }
+        writer.flush(file)
+        new String(Files.readAllBytes(file), "UTF-8")
+    }
+
+    def "the output has the same content as JSONDBWriter"() {
+        given:
+        def out = new ByteArrayOutputStream()
+
+        when:
+        def writer = new JSONDBStreamWriter(out)
+        games().each { writer.add(it) }
+        writer.close()
+
+        then:
+        new JSONArray(out.toString("UTF-8")).similar(new JSONArray(writtenByJSONDBWriter(games())))
+    }
+
+    def "a channel receives the same bytes as a stream"() {
+        given:
+        def viaStream = new ByteArrayOutputStream()
+        def viaChannel = new ByteArrayOutputStream()
+
+        when:
+        def streamWriter = new JSONDBStreamWriter(viaStream)
+        def channelWriter = new JSONDBStreamWriter(Channels.newChannel(viaChannel))
+        games().each { streamWriter.add(it); channelWriter.add(it) }
+        streamWriter.close()
+        channelWriter.close()
+
+        then:
+        viaStream.toByteArray() == viaChannel.toByteArray()
+    }
+
+    def "no games give an empty array"() {
+        given:
+        def out = new ByteArrayOutputStream()
+
+        when:
+        new JSONDBStreamWriter(out).close()
+
+        then:
+        out.toString("UTF-8") == "[]"
+    }
+
+    def "written files can be read back"() {
+        given:
+        def file = directory.resolve("games.json")
+
+        when:
+        JSONDBStreamWriter.writeAtomically(file, games(), compression)
+        def read = new JSONDBReader(file).documentList
+
+        then:
+        read.size() == 3
+        (0..2).every { GameSnapshot.of(games()[it]).differingFields(read[it]).isEmpty() }
+
+        where:
+        compression << [Compression.NONE, Compression.GZIP]
+    }
+
+    def "adding after finish is rejected"() {
+        given:
+        def writer = new JSONDBStreamWriter(new ByteArrayOutputStream())
+        writer.finish()
+
+        when:
+        writer.add(games()[0])
+
+        then:
+        thrown(IllegalStateException)
+    }
+}
@@ -0,0 +1,132 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info
+
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+
+/**
+ * {@link JSONDBReader#lazy(Path)}で読み出したゲーム情報が,全てのフィールドを直ちに読み出したものと一致することを確かめる.
+ */
+class LazyGameSpec extends Specification {
+    static final String FULL = '''{"UUID": "00000000-0000-0000-0000-000000000001", "exe": "a/game.exe",
+        "name": "\\u30b2\\u30fc\\u30e0 \\"quoted\\"", "lastMod": "2018-04-01T12:00:00Z", "desc": "line\\nbreak",
+        "panel": "a/panel.png", "imageList": ["a/1.png", "a/2.png"], "movieList": ["a/1.mp4"], "gameID": 7,
+        "unknown": {"nested": [1, 2.5e3, true, null]}}'''
+    static final String MINIMAL = '{"UUID": "00000000-0000-0000-0000-000000000002", "exe": "b.exe"}'
+
+    Path file
+
+    def setup() {
+        file = Files.createTempFile("LazyGameSpec", ".json")
+    }
+
+    def cleanup() {
+        Files.deleteIfExists(file)
+    }
+
+    void writeDocuments(String... documents) {
+        Files.write(file, ("[" + documents.join(",") + "]").getBytes("UTF-8"))
+    }
+
+    def "lazily read games have the same fields as eagerly read ones"() {
+        given:
+        writeDocuments(FULL, MINIMAL)
+
+        when:
+        def lazy = JSONDBReader.lazy(file)
+        def eager = new JSONDBReader(file).documentList
+
+        then:
+        lazy.every { it instanceof LazyGame }
+        lazy.size() == 2
+        (0..1).every { GameSnapshot.of(eager[it]).differingFields(lazy[it]).isEmpty() }
+        lazy[0].name == 'ゲーム "quoted"'
+        lazy[0].imageList == [Paths.get("a/1.png"), Paths.get("a/2.png")]
+        lazy[1].imageList.isEmpty()
+        lazy[1].gameID == 0
+        lazy[0].query(EnumSet.allOf(Field)) == eager[0].query(EnumSet.allOf(Field))
+    }
+
+    def "the returned list cannot be modified"() {
+        given:
+        writeDocuments(MINIMAL)
+
+        when:
+        JSONDBReader.lazy(file).add(GameSnapshot.of(new GameDocument()))
+
+        then:
+        thrown(UnsupportedOperationException)
+    }
+
+    def "an invalid field is reported when it is first read"() {
+        given:
+        writeDocuments('{"UUID": "00000000-0000-0000-0000-000000000001", "exe": "a.exe", "gameID": "seven"}')
+        def report = ValidationReport.lenient()
+
+        when:
+        def game = JSONDBReader.lazy(file, report)[0]
+
+        then:
+        report.isEmpty()
+
+        when:
+        game.gameID
+        game.gameID
+
+        then:
+        report.problems*.field == [Field.GAME_ID]
+    }
+
+    def "a fail fast report makes the getter throw"() {
+        given:
+        writeDocuments('{"UUID": "00000000-0000-0000-0000-000000000001", "exe": "a.exe", "panel": 1}')
+        def game = JSONDBReader.lazy(file, ValidationReport.failFast())[0]
+
+        when:
+        game.panel
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    def "an invalid UUID is reported while reading"() {
+        given:
+        writeDocuments('{"UUID": "not a uuid", "exe": "a.exe"}')
+
+        when:
+        JSONDBReader.lazy(file, ValidationReport.failFast())
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    def "a compressed file is read eagerly"() {
+        given:
+        new JSONDBWriter().add(new GameDocument().setUUID(new UUID(0, 1)).setExe(Paths.get("a.exe")).setName("gzip"))
+                .flush(file, Compression.GZIP)
+
+        when:
+        def games = JSONDBReader.lazy(file)
+
+        then:
+        games*.name == ["gzip"]
+        !(games[0] instanceof LazyGame)
+    }
+}
@@ -0,0 +1,117 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+/**
+ * {@link SearchIndex}の正規化と,表記の揺れを吸収した検索を確かめる.
+ */
+class SearchIndexSpec extends Specification {
+    @Unroll
+    def "normalize(#text) is #expected"() {
+        expect:
+        SearchIndex.normalize(text) == expected
+
+        where:
+        text               || expected
+        "ＡＢＣ１２３"       || "abc123"
+        "ｶﾞｰﾃﾞﾝ"           || "がーでん"
+        "ガーデン"           || "がーでん"
+        "Hello, World!"    || "hello world"
+        "  spaced   out  " || "spaced out"
+        "ＲＰＧ・ツクール"    || "rpg つくーる"
+        ""                 || ""
+        null               || ""
+    }
+
+    /**
+     * 索引が参照する名前と説明のみを持つゲーム情報.
+     */
+    static GameDocument described(long id, String name, String desc = null) {
+        new GameDocument().setUUID(new UUID(0, id)).setName(name).setDesc(desc)
+    }
+
+    def "search ignores width, case and kana differences"() {
+        given:
+        def index = new SearchIndex([
+                described(1, "スーパーゲーム", "アクション"),
+                described(2, "Puzzle Quest", "ぱずる"),
+                described(3, "無関係", "なし")
+        ])
+
+        expect:
+        index.search("すーぱー")*.UUID == [new UUID(0, 1)]
+        index.search("ＰＵＺＺＬＥ")*.UUID == [new UUID(0, 2)]
+        index.search("パズル")*.UUID == [new UUID(0, 2)]
+        index.search("存在しない").isEmpty()
+    }
+
+    def "complete matches name prefixes after normalization"() {
+        given:
+        def index = new SearchIndex([described(1, "スーパーゲーム"), described(2, "すごろく"), described(3, "Puzzle")])
+
+        expect:
+        index.complete("ス", 10)*.UUID as Set == [new UUID(0, 1), new UUID(0, 2)] as Set
+        index.complete("pu", 10)*.UUID == [new UUID(0, 3)]
+    }
+
+    def "updates and removals are reflected"() {
+        given:
+        def index = new SearchIndex([described(1, "古い名前")])
+
+        when:
+        index.update(described(1, "新しい名前"))
+
+        then:
+        index.search("古い").isEmpty()
+        index.search("新しい")*.UUID == [new UUID(0, 1)]
+
+        when:
+        index.remove(new UUID(0, 1))
+
+        then:
+        index.search("名前").isEmpty()
+        index.size() == 0
+    }
+
+    def "search returns at most limit games"() {
+        given:
+        def index = new SearchIndex((1..5).collect { described(it, "シリーズ" + it) })
+
+        expect:
+        index.search("シリーズ", 3).size() == 3
+        index.search("シリーズ").size() == 5
+    }
+
+    def "the index follows a catalog as a listener"() {
+        given:
+        def index = new SearchIndex()
+
+        when:
+        index.onAdded(described(1, "追加"))
+        index.onUpdated(described(1, "追加"), described(1, "変更"))
+        index.onAdded(described(2, "削除"))
+        index.onRemoved(described(2, "削除"))
+
+        then:
+        index.search("追加").isEmpty()
+        index.search("変更")*.UUID == [new UUID(0, 1)]
+        index.search("削除").isEmpty()
+        index.size() == 1
+    }
+}
@@ -0,0 +1,155 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info
+
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.attribute.FileTime
+
+/**
+ * {@link SignatureCache}が大きさと更新日時で変更を判定し,保存と読み出しで内容を保つことを確かめる.
+ */
+class SignatureCacheSpec extends Specification {
+    Path directory
+
+    def setup() {
+        directory = Files.createTempDirectory("SignatureCacheSpec")
+    }
+
+    def cleanup() {
+        directory.toFile().deleteDir()
+    }
+
+    Path write(String fileName, String name) {
+        def file = directory.resolve(fileName)
+        Files.write(file, ('{"UUID": "' + new UUID(0, 1) + '", "exe": "game.exe", "name": "' + name + '"}').getBytes("UTF-8"))
+        file
+    }
+
+    /**
+     * 大きさと更新日時を変えずに内容だけを書き換える.
+     */
+    void rewriteKeepingAttributes(Path file, String from, String to) {
+        assert from.length() == to.length()
+        def lastModified = Files.getLastModifiedTime(file)
+        Files.write(file, new String(Files.readAllBytes(file), "UTF-8").replace(from, to).getBytes("UTF-8"))
+        Files.setLastModifiedTime(file, lastModified)
+    }
+
+    def "a file with the same size and modification time is not read again"() {
+        given:
+        def file = write("signature.json", "aaaa")
+        def cache = new SignatureCache()
+        cache.read(file, ValidationReport.lenient())
+
+        when:
+        rewriteKeepingAttributes(file, "aaaa", "zzzz")
+
+        then:
+        cache.read(file, ValidationReport.lenient()).name == "aaaa"
+    }
+
+    def "a changed modification time makes the file read again"() {
+        given:
+        def file = write("signature.json", "aaaa")
+        def cache = new SignatureCache()
+        cache.read(file, ValidationReport.lenient())
+
+        when:
+        rewriteKeepingAttributes(file, "aaaa", "zzzz")
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 2000))
+
+        then:
+        cache.read(file, ValidationReport.lenient()).name == "zzzz"
+    }
+
+    def "each read returns a new instance"() {
+        given:
+        def file = write("signature.json", "aaaa")
+        def cache = new SignatureCache()
+
+        when:
+        def first = cache.read(file, ValidationReport.lenient())
+        first.setName("changed")
+
+        then:
+        cache.read(file, ValidationReport.lenient()).name == "aaaa"
+    }
+
+    def "a file with invalid fields is reported every time and not cached"() {
+        given:
+        def file = directory.resolve("signature.json")
+        Files.write(file, '{"UUID": "not-a-uuid", "exe": "game.exe"}'.getBytes("UTF-8"))
+        def cache = new SignatureCache()
+
+        when:
+        def first = ValidationReport.lenient()
+        def second = ValidationReport.lenient()
+        cache.read(file, first)
+        cache.read(file, second)
+
+        then:
+        !first.isEmpty()
+        !second.isEmpty()
+        cache.size() == 0
+    }
+
+    def "a saved cache is loaded with its entries"() {
+        given:
+        def file = write("signature.json", "aaaa")
+        def cacheFile = directory.resolve("cache.json")
+        def cache = new SignatureCache()
+        cache.read(file, ValidationReport.lenient())
+        cache.save(cacheFile)
+
+        when:
+        rewriteKeepingAttributes(file, "aaaa", "zzzz")
+        def loaded = SignatureCache.load(cacheFile)
+
+        then:
+        loaded.size() == 1
+        loaded.read(file, ValidationReport.lenient()).name == "aaaa"
+    }
+
+    def "a missing or foreign cache file gives an empty cache"() {
+        given:
+        def cacheFile = directory.resolve("cache.json")
+        if (content != null) Files.write(cacheFile, content.getBytes("UTF-8"))
+
+        expect:
+        SignatureCache.load(cacheFile).size() == 0
+
+        where:
+        content << [null, '{"version": 1, "entries": []}', 'not json']
+    }
+
+    def "retainOnly drops the files that no longer exist"() {
+        given:
+        def kept = write("kept.json", "kept")
+        def dropped = write("dropped.json", "dropped")
+        def cache = new SignatureCache()
+        cache.read(kept, ValidationReport.lenient())
+        cache.read(dropped, ValidationReport.lenient())
+
+        when:
+        cache.retainOnly([kept])
+
+        then:
+        cache.size() == 1
+    }
+}
@@ -0,0 +1,144 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info
+
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Path
+
+/**
+ * {@link SignatureScanner}がゲームのフォルダを探索し,失敗を他のファイルに波及させずに報告することを確かめる.
+ */
+class SignatureScannerSpec extends Specification {
+    Path root
+
+    def setup() {
+        root = Files.createTempDirectory("SignatureScannerSpec")
+    }
+
+    def cleanup() {
+        root.toFile().deleteDir()
+    }
+
+    /**
+     * {@code relative}にシグネチャファイルを書き込む.途中のディレクトリも作る.
+     */
+    Path sign(String relative, long uuid, String name) {
+        def file = root.resolve(relative)
+        Files.createDirectories(file.parent)
+        assert Signature.writeSignature(file, new GameDocument()
+                .setUUID(new UUID(0, uuid)).setExe(file.resolveSibling("game.exe")).setName(name))
+        file
+    }
+
+    Path put(String relative, String content) {
+        def file = root.resolve(relative)
+        Files.createDirectories(file.parent)
+        Files.write(file, content.getBytes("UTF-8"))
+        file
+    }
+
+    def "signature files are read in path order"() {
+        given:
+        sign("c/signature.json", 3, "c")
+        sign("a/signature.json", 1, "a")
+        sign("b/sub/signature.json", 2, "b")
+        put("b/readme.txt", "not a signature")
+
+        when:
+        def result = new SignatureScanner().scan(root)
+
+        then:
+        result.documents*.name == ["a", "b", "c"]
+        result.errors.isEmpty()
+    }
+
+    def "files deeper than maxDepth are not searched"() {
+        given:
+        sign("a/signature.json", 1, "shallow")
+        sign("a/sub/deeper/signature.json", 2, "deep")
+
+        expect:
+        new SignatureScanner("signature.json", 2, 1).scan(root).documents*.name == ["shallow"]
+        new SignatureScanner("signature.json", 3, 1).scan(root).documents*.name == ["shallow", "deep"]
+    }
+
+    def "a broken file is reported without stopping the others"() {
+        given:
+        sign("a/signature.json", 1, "a")
+        def broken = put("b/signature.json", "{\"UUID\": ")
+        sign("c/signature.json", 3, "c")
+
+        when:
+        def result = new SignatureScanner().scan(root)
+
+        then:
+        result.documents*.name == ["a", "c"]
+        result.errors.size() == 1
+        result.errors[0].path == broken
+        result.errors[0].message.startsWith("Not a JSON object")
+    }
+
+    def "a document with invalid fields is kept and its problems are reported"() {
+        given:
+        def invalid = put("a/signature.json", '{"UUID": "' + new UUID(0, 1) + '", "exe": "a.exe", "name": "a", "gameID": "one"}')
+
+        when:
+        def result = new SignatureScanner().scan(root)
+
+        then:
+        result.documents*.name == ["a"]
+        result.errors.size() == 1
+        result.errors[0].path == invalid
+        result.errors[0].message.startsWith("Invalid fields:")
+        result.errors[0].cause == null
+    }
+
+    def "unchanged files are served from the cache and removed files are dropped from it"() {
+        given:
+        def file = sign("a/signature.json", 1, "aaaa")
+        def removed = sign("b/signature.json", 2, "b")
+        def cache = new SignatureCache()
+        def scanner = new SignatureScanner()
+        scanner.scan(root, cache)
+
+        when: "同じ大きさで書き換え,更新日時を戻す"
+        def lastModified = Files.getLastModifiedTime(file)
+        Files.write(file, new String(Files.readAllBytes(file), "UTF-8").replace("aaaa", "zzzz").getBytes("UTF-8"))
+        Files.setLastModifiedTime(file, lastModified)
+        Files.delete(removed)
+        root.resolve("b").toFile().deleteDir()
+        def result = scanner.scan(root, cache)
+
+        then:
+        result.documents*.name == ["aaaa"]
+        cache.size() == 1
+    }
+
+    def "invalid arguments are rejected"() {
+        when:
+        new SignatureScanner("signature.json", maxDepth, parallelism)
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        maxDepth | parallelism
+        0        | 1
+        1        | 0
+    }
+}
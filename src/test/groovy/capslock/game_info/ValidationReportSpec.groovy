@@ -0,0 +1,94 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info
+
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Path
+
+/**
+ * {@link ValidationReport}の種類ごとに,不正なフィールドを記録するか読み出しを中断するかを確かめる.
+ */
+class ValidationReportSpec extends Specification {
+    static final String VALID = '{"UUID": "00000000-0000-0000-0000-000000000001", "exe": "a.exe", "name": "valid"}'
+    static final String WRONG_GAME_ID = '{"UUID": "00000000-0000-0000-0000-000000000002", "exe": "b.exe", "name": "wrong", "gameID": "one"}'
+    static final String NO_EXE = '{"UUID": "00000000-0000-0000-0000-000000000003", "name": "no exe"}'
+
+    Path file
+
+    def setup() {
+        file = Files.createTempFile("ValidationReportSpec", ".json")
+        Files.write(file, ("[" + [VALID, WRONG_GAME_ID, NO_EXE].join(",") + "]").getBytes("UTF-8"))
+    }
+
+    def cleanup() {
+        Files.deleteIfExists(file)
+    }
+
+    def "a lenient report records every problem and keeps the valid fields"() {
+        given:
+        def report = ValidationReport.lenient()
+
+        when:
+        def documents = new JSONDBReader(file, report).documentList
+
+        then:
+        documents*.name == ["valid", "wrong", "no exe"]
+        documents[1].gameID == 0
+        !report.isEmpty()
+        report.problems*.documentIndex == [1, 2]
+        report.problems*.field == [Field.GAME_ID, Field.EXE]
+    }
+
+    def "a fail fast report stops at the first problem"() {
+        given:
+        def report = ValidationReport.failFast()
+
+        when:
+        new JSONDBReader(file, report)
+
+        then:
+        def ex = thrown(IllegalArgumentException)
+        ex.message.startsWith("document 1, ")
+        report.problems.size() == 1
+    }
+
+    def "a report without problems is empty"() {
+        given:
+        Files.write(file, ("[" + VALID + "]").getBytes("UTF-8"))
+        def report = ValidationReport.failFast()
+
+        when:
+        new JSONDBReader(file, report)
+
+        then:
+        report.isEmpty()
+        report.problems.isEmpty()
+    }
+
+    def "getProblems returns a copy"() {
+        given:
+        def report = ValidationReport.lenient()
+        new JSONDBReader(file, report)
+
+        when:
+        report.problems.clear()
+
+        then:
+        report.problems.size() == 2
+    }
+}
@@ -0,0 +1,183 @@
+/*
+    Copyright (C) 2018 RISCassembler
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package capslock.game_info.server
+
+import capslock.game_info.CatalogHolder
+import capslock.game_info.GameDocument
+import org.json.JSONObject
+import spock.lang.Specification
+
+import java.nio.charset.StandardCharsets
+import java.nio.file.Paths
+
+/**
+ * {@link CatalogServer}のページ分割,ETagによる条件付き応答,エラー応答,応答のキャッシュを確かめる.
+ */
+class CatalogServerSpec extends Specification {
+    CatalogHolder holder
+    CatalogServer server
+
+    def setup() {
+        holder = new CatalogHolder((1..120).collect { i ->
+            new GameDocument()
+                    .setUUID(new UUID(0, i))
+                    .setExe(Paths.get("game${i}.exe"))
+                    .setName("ゲーム${i}")
+                    .setGameID(i)
+        })
+        server = new CatalogServer(holder, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+        server.start()
+    }
+
+    def cleanup() {
+        server.close()
+    }
+
+    Map get(String path, String ifNoneMatch = null) {
+        def connection = (HttpURLConnection) new URL("http://127.0.0.1:${server.address.port}${path}").openConnection()
+        connection.useCaches = false
+        if (ifNoneMatch != null) connection.setRequestProperty("If-None-Match", ifNoneMatch)
+        try {
+            def status = connection.responseCode
+            def stream = status < 400 ? connection.inputStream : connection.errorStream
+            def body = stream != null ? stream.getText(StandardCharsets.UTF_8.name()) : ""
+            [status: status, eTag: connection.getHeaderField("ETag"), body: body]
+        } finally {
+            connection.disconnect()
+        }
+    }
+
+    def "the game list is paginated by offset and limit"() {
+        when:
+        def response = get("/games?offset=118&limit=5")
+        def json = new JSONObject(response.body)
+
+        then:
+        response.status == 200
+        json.getInt("offset") == 118
+        json.getInt("total") == 120
+        json.getJSONArray("games").length() == 2
+        json.getJSONArray("games").getJSONObject(0).getString("name") == "ゲーム119"
+    }
+
+    def "the default limit applies and invalid limits are rejected"() {
+        expect:
+        new JSONObject(get("/games").body).getJSONArray("games").length() == CatalogServer.DEFAULT_LIMIT
+        get("/games?limit=0").status == 400
+        get("/games?limit=${CatalogServer.MAX_LIMIT + 1}").status == 400
+    }
+
+    def "games are looked up by UUID and by gameID with a field projection"() {
+        when:
+        def byUUID = get("/games/00000000-0000-0000-0000-000000000003")
+        def byID = get("/games/by-id/5?fields=" + URLEncoder.encode('{"name":true}', "UTF-8"))
+
+        then:
+        byUUID.status == 200
+        new JSONObject(byUUID.body).getInt("gameID") == 3
+        byID.status == 200
+        new JSONObject(byID.body).getString("name") == "ゲーム5"
+        !new JSONObject(byID.body).has("gameID")
+    }
+
+    def "a matching If-None-Match yields 304 until the catalog changes"() {
+        given:
+        def eTag = get("/games/by-id/1").eTag
+
+        expect:
+        eTag != null
+        get("/games/by-id/1", eTag).status == 304
+        get("/games/by-id/1", "W/" + eTag).status == 304
+        get("/games/by-id/1", '"0"').status == 200
+
+        when:
+        holder.remove(new UUID(0, 2))
+        def changed = get("/games/by-id/1", eTag)
+
+        then:
+        changed.status == 200
+        changed.eTag != eTag
+    }
+
+    def "missing resources are 404 even when If-None-Match is *"() {
+        expect:
+        get("/games/by-id/999", "*").status == 404
+        get("/other").status == 404
+        get("/games/by-id/999").eTag == null
+    }
+
+    def "malformed requests are rejected with 400"() {
+        expect:
+        get(path).status == 400
+
+        where:
+        path << ["/games/not-a-uuid", "/games/by-id/abc", "/games?fields=bad"]
+    }
+
+    def "requests that give the same response share one cache entry"() {
+        given:
+        def before = server.cachedResponseCount
+
+        when:
+        paths.each { assert get(it).status == 200 }
+
+        then:
+        server.cachedResponseCount == before + 1
+
+        where:
+        paths << [
+                ["/games?limit=10&x=1", "/games?x=2&limit=10", "/games?limit=010&offset=0"],
+                ["/games?offset=120", "/games?offset=500", "/games?offset=999999"],
+                ["/games/by-id/5", "/games/by-id/05", "/games/by-id/+5"],
+                ["/games/by-id/5?fields=" + URLEncoder.encode('{"name":true}', "UTF-8"),
+                 "/games/by-id/5?fields=" + URLEncoder.encode('{ "name" : true, "desc": false }', "UTF-8")],
+        ]
+    }
+
+    def "the cache is limited by the total size of the bodies"() {
+        given:
+        server.close()
+        server = new CatalogServer(holder, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), null, 4096)
+        server.start()
+
+        when:
+        (1..120).each { assert get("/games/by-id/${it}").status == 200 }
+
+        then:
+        server.cachedBytes <= 4096
+        server.cachedResponseCount > 0
+        server.cachedResponseCount < 120
+    }
+
+    def "the least recently used body is evicted first"() {
+        given:
+        def cache = new CatalogServer.ResponseCache(0, 10)
+        cache.put("a", new byte[4])
+        cache.put("b", new byte[4])
+
+        when:
+        cache.get("a")
+        cache.put("c", new byte[4])
+        cache.put("large", new byte[11])
+
+        then:
+        cache.get("a") != null
+        cache.get("b") == null
+        cache.get("c") != null
+        cache.get("large") == null
+        cache.sizeBytes == 8
+    }
+}